@@ -0,0 +1,79 @@
+package com.exercise.ranking.benchmarkfactory;
+
+import com.exercise.ranking.dao.ExercisePointsRow;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link ExerciseRepository} answering the queries of the ranking and of the overlap check from
+ * {@link SyntheticExercises}, without a database, so that the benchmarks only measure the service.
+ * The results that do not depend on the arguments are computed once.
+ */
+public final class StubExerciseRepository {
+
+    private StubExerciseRepository() {
+    }
+
+    /**
+     * @param data        the exercises of the users.
+     * @param windowStart the start of the ranking window the benchmark ranks.
+     * @return the repository, that saves nothing.
+     */
+    public static ExerciseRepository of(final SyntheticExercises data, final LocalDateTime windowStart) {
+        List<ExercisePointsRow> windowRows = data.pointsRowsFrom(windowStart);
+        List<Exercise> latest = data.latestStartingBefore(LocalDateTime.MAX);
+        return (ExerciseRepository) Proxy.newProxyInstance(ExerciseRepository.class.getClassLoader(),
+                new Class<?>[] {ExerciseRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "streamPointsByUsersAndStartTime":
+                            return windowRows.stream();
+                        case "findByDistinctUsersAndLatestExerciseTime":
+                            return latestOf(latest, (Set<?>) args[0]);
+                        case "findByUserId":
+                            return data.ofUser((Long) args[0]);
+                        case "findLatestStartingBefore":
+                            return latestStartingBefore(data.ofUser((Long) args[0]), (LocalDateTime) args[1]);
+                        case "save":
+                            return args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "StubExerciseRepository";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static List<Exercise> latestOf(final List<Exercise> latest, final Set<?> userIds) {
+        List<Exercise> result = new ArrayList<>();
+        for (Exercise exercise : latest) {
+            if (userIds.contains(exercise.getUserId())) {
+                result.add(exercise);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The (at most two) exercises of the overlap check, the latest ones starting before the end.
+     */
+    private static List<Exercise> latestStartingBefore(final List<Exercise> exercises, final LocalDateTime endTime) {
+        int index = Collections.binarySearch(exercises, null, (e, ignored) -> e.getStartTime().isBefore(endTime) ? -1 : 1);
+        int end = -index - 1;
+        List<Exercise> result = new ArrayList<>(2);
+        for (int i = end - 1; i >= 0 && i >= end - 2; i--) {
+            result.add(exercises.get(i));
+        }
+        return result;
+    }
+}
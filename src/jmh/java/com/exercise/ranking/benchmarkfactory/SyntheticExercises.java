@@ -0,0 +1,142 @@
+package com.exercise.ranking.benchmarkfactory;
+
+import com.exercise.ranking.dao.ExercisePointsRow;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic exercise histories for the benchmarks.
+ * <p>
+ * {@code users * exercisesPerUser} exercises are spread over the users with a Zipf distribution: a
+ * skew of 0 gives every user about {@code exercisesPerUser} exercises, and the higher the skew the
+ * more of them go to the first few users. The exercises of a user are consecutive and never
+ * overlap, spread over the {@code days} before {@code end}.
+ */
+public final class SyntheticExercises {
+
+    private final List<List<Exercise>> exercisesByUser;
+
+    private SyntheticExercises(final List<List<Exercise>> exercisesByUser) {
+        this.exercisesByUser = exercisesByUser;
+    }
+
+    /**
+     * @param users            the number of users, with ids from 1 to {@code users}.
+     * @param exercisesPerUser the average number of exercises of a user.
+     * @param skew             the Zipf exponent of the number of exercises of the users.
+     * @param end              the end of the history.
+     * @param days             the length of the history in days.
+     * @param seed             the seed of the random generator.
+     */
+    public static SyntheticExercises generate(final int users, final int exercisesPerUser, final double skew,
+            final LocalDateTime end, final int days, final long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] cumulative = zipfCumulative(users, skew);
+        int[] counts = new int[users];
+        long total = (long) users * exercisesPerUser;
+        for (long i = 0; i < total; i++) {
+            counts[userIndex(cumulative, random.nextDouble())]++;
+        }
+
+        List<List<Exercise>> exercisesByUser = new ArrayList<>(users);
+        long id = 1;
+        long historySeconds = days * 24L * 3600;
+        for (int user = 0; user < users; user++) {
+            List<Exercise> exercises = new ArrayList<>(counts[user]);
+            // each exercise gets a slot of the history of the user, and lasts at most its slot
+            long slotSeconds = counts[user] == 0 ? historySeconds : historySeconds / counts[user];
+            LocalDateTime start = end.minusSeconds(historySeconds);
+            for (int i = 0; i < counts[user]; i++) {
+                Exercise exercise = new Exercise();
+                exercise.setId(id++);
+                exercise.setUserId(user + 1L);
+                exercise.setDescription("synthetic");
+                exercise.setType(ExerciseType.values()[random.nextInt(ExerciseType.values().length)]);
+                exercise.setStartTime(start.plusSeconds(i * slotSeconds));
+                exercise.setDuration(Math.max(1L, random.nextLong(Math.max(1L, Math.min(slotSeconds, 7200L)))));
+                exercise.setCalories(random.nextBoolean() ? null : random.nextInt(100_000) / 100.0);
+                exercise.setVersion(0L);
+                exercises.add(exercise);
+            }
+            exercisesByUser.add(exercises);
+        }
+        return new SyntheticExercises(exercisesByUser);
+    }
+
+    public int users() {
+        return exercisesByUser.size();
+    }
+
+    /**
+     * @param userId the id of the user, from 1.
+     * @return the exercises of the user, in chronological order.
+     */
+    public List<Exercise> ofUser(final long userId) {
+        return exercisesByUser.get((int) (userId - 1));
+    }
+
+    /**
+     * @param from the earliest start of the returned exercises.
+     * @return the exercises starting from {@code from}, as the rows the ranking reads.
+     */
+    public List<ExercisePointsRow> pointsRowsFrom(final LocalDateTime from) {
+        List<ExercisePointsRow> rows = new ArrayList<>();
+        for (List<Exercise> exercises : exercisesByUser) {
+            for (Exercise exercise : exercises) {
+                if (!exercise.getStartTime().isBefore(from)) {
+                    rows.add(new ExercisePointsRow(exercise.getUserId(), exercise.getType(), exercise.getStartTime(), exercise.getDuration(),
+                            exercise.getCalories()));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @param before the end of the returned exercises.
+     * @return the latest exercise of every user with exercises starting before {@code before}.
+     */
+    public List<Exercise> latestStartingBefore(final LocalDateTime before) {
+        List<Exercise> latest = new ArrayList<>();
+        for (List<Exercise> exercises : exercisesByUser) {
+            for (int i = exercises.size() - 1; i >= 0; i--) {
+                if (exercises.get(i).getStartTime().isBefore(before)) {
+                    latest.add(exercises.get(i));
+                    break;
+                }
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Cumulative probability of the users in the order of their ids, the first user having the
+     * highest weight.
+     */
+    public static double[] zipfCumulative(final int users, final double skew) {
+        double[] cumulative = new double[users];
+        double sum = 0;
+        for (int i = 0; i < users; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < users; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * @return the index of the user of a uniform random number in [0, 1).
+     */
+    public static int userIndex(final double[] cumulative, final double uniform) {
+        int index = Arrays.binarySearch(cumulative, uniform);
+        return index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1);
+    }
+}
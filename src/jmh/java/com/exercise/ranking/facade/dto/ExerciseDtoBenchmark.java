@@ -0,0 +1,108 @@
+package com.exercise.ranking.facade.dto;
+
+import com.exercise.ranking.benchmarkfactory.SyntheticExercises;
+import com.exercise.ranking.model.Exercise;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of an exercise between {@link Exercise} and {@link ExerciseDTO}, and the JSON round trip
+ * of the DTO with an {@link ObjectMapper} set up like the one of the application (JSR-310 dates
+ * written as strings). Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExerciseDtoBenchmark {
+
+    private static final int EXERCISES = 1 << 10;
+
+    private Exercise[] exercises;
+
+    private ExerciseDTO[] dtos;
+
+    private byte[][] json;
+
+    private ObjectWriter writer;
+
+    private ObjectReader reader;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        writer = objectMapper.writerFor(ExerciseDTO.class);
+        reader = objectMapper.readerFor(ExerciseDTO.class);
+
+        SyntheticExercises history = SyntheticExercises.generate(EXERCISES, 1, 0.0, LocalDateTime.now(), 28, 42L);
+        List<Exercise> all = new ArrayList<>(EXERCISES);
+        for (long userId = 1; userId <= EXERCISES && all.size() < EXERCISES; userId++) {
+            all.addAll(history.ofUser(userId));
+        }
+        exercises = all.toArray(new Exercise[0]);
+        dtos = new ExerciseDTO[exercises.length];
+        json = new byte[exercises.length][];
+        for (int i = 0; i < exercises.length; i++) {
+            dtos[i] = ExerciseDTO.fromExercise(exercises[i]);
+            json[i] = writer.writeValueAsBytes(dtos[i]);
+        }
+    }
+
+    private int nextIndex() {
+        return next++ % exercises.length;
+    }
+
+    @Benchmark
+    public Exercise toExercise() {
+        return ExerciseDTO.toExercise(dtos[nextIndex()]);
+    }
+
+    @Benchmark
+    public ExerciseDTO fromExercise() {
+        return ExerciseDTO.fromExercise(exercises[nextIndex()]);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(dtos[nextIndex()]);
+    }
+
+    @Benchmark
+    public ExerciseDTO deserialize() throws IOException {
+        return reader.readValue(json[nextIndex()]);
+    }
+
+    /**
+     * A request body read into an exercise and the response written from it, as an insert does
+     * around the service.
+     */
+    @Benchmark
+    public byte[] roundTrip() throws IOException {
+        ExerciseDTO dto = reader.readValue(json[nextIndex()]);
+        return writer.writeValueAsBytes(ExerciseDTO.fromExercise(ExerciseDTO.toExercise(dto)));
+    }
+}
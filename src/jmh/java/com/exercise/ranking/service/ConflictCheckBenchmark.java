@@ -0,0 +1,111 @@
+package com.exercise.ranking.service;
+
+import com.exercise.ranking.benchmarkfactory.StubExerciseRepository;
+import com.exercise.ranking.benchmarkfactory.SyntheticExercises;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.service.exception.ConflictException;
+import com.exercise.ranking.service.index.ExerciseIntervalIndex;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overlap check of an insert, against the candidates of the database query (answered from
+ * memory) and against the in-memory timelines of the {@link ExerciseIntervalIndex}. The candidate
+ * exercises fall in a random gap of the history of a random user, drawn with the skew of the
+ * history, and a share of them overlap an existing exercise. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConflictCheckBenchmark {
+
+    private static final int CANDIDATES = 1 << 12;
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"100", "10000"})
+    public int exercisesPerUser;
+
+    @Param({"0.0", "1.2"})
+    public double skew;
+
+    @Param({"0.1"})
+    public double conflictShare;
+
+    private ExerciseService exerciseService;
+
+    private ExerciseIntervalIndex exerciseIntervalIndex;
+
+    private Exercise[] candidates;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime now = LocalDateTime.now();
+        SyntheticExercises history = SyntheticExercises.generate(users, exercisesPerUser, skew, now, 365, 42L);
+        ExerciseRepository exerciseRepository = StubExerciseRepository.of(history, now);
+        exerciseService = ServiceFactory.exerciseService(exerciseRepository);
+        exerciseIntervalIndex = new ExerciseIntervalIndex(exerciseRepository, true, users);
+
+        SplittableRandom random = new SplittableRandom(7L);
+        double[] cumulative = SyntheticExercises.zipfCumulative(users, skew);
+        candidates = new Exercise[CANDIDATES];
+        for (int i = 0; i < CANDIDATES; i++) {
+            List<Exercise> exercises;
+            do {
+                exercises = history.ofUser(SyntheticExercises.userIndex(cumulative, random.nextDouble()) + 1L);
+            } while (exercises.isEmpty());
+            Exercise existing = exercises.get(random.nextInt(exercises.size()));
+            Exercise candidate = new Exercise();
+            candidate.setUserId(existing.getUserId());
+            candidate.setDescription("candidate");
+            candidate.setType(existing.getType());
+            candidate.setDuration(1L);
+            // right at the end of an existing exercise, or inside of it
+            candidate.setStartTime(random.nextDouble() < conflictShare
+                    ? existing.getStartTime()
+                    : existing.getStartTime().plusSeconds(existing.getDuration()));
+            candidates[i] = candidate;
+            exerciseIntervalIndex.overlaps(candidate);
+        }
+    }
+
+    /**
+     * The insert up to the save, which the repository ignores.
+     */
+    @Benchmark
+    public Object insertWithDatabaseCandidates() {
+        Exercise candidate = candidates[next++ & (CANDIDATES - 1)];
+        try {
+            return exerciseService.insert(candidate);
+        } catch (ConflictException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public boolean overlapsInIndex() {
+        return exerciseIntervalIndex.overlaps(candidates[next++ & (CANDIDATES - 1)]);
+    }
+}
@@ -0,0 +1,112 @@
+package com.exercise.ranking.service;
+
+import com.exercise.ranking.benchmarkfactory.StubExerciseRepository;
+import com.exercise.ranking.benchmarkfactory.SyntheticExercises;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.service.ranking.RankingOrder;
+import com.exercise.ranking.service.ranking.ScanRankingAggregator;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ExerciseService#ranking(Collection, int, int)} on synthetic exercise histories, without
+ * the caches, over a repository that answers from memory: the aggregation of the window, the
+ * selection of the first users and the zero-point users who didn't train in the window. The
+ * sequential and parallel aggregations are compared by {@code parallelThreshold}, and the
+ * selection alone by {@link #sortRanking()}. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RankingBenchmark {
+
+    @Param({"1000", "200000"})
+    public int users;
+
+    @Param({"20"})
+    public int exercisesPerUser;
+
+    @Param({"0.0", "1.2"})
+    public double skew;
+
+    @Param({"2147483647", "0"})
+    public int parallelThreshold;
+
+    @Param({"100"})
+    public int limit;
+
+    private ExerciseService exerciseService;
+
+    private ScanRankingAggregator rankingAggregator;
+
+    private Set<Long> userIds;
+
+    private Collection<RankingUser> rankedUsers;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime windowStart = LocalDate.now().atStartOfDay().minusDays(28);
+        // the history spans two windows, so that with a skew the users with few exercises are
+        // often idle in the window, and ranked with zero points
+        SyntheticExercises history = SyntheticExercises.generate(users, exercisesPerUser, skew, windowStart.plusDays(28), 56, 42L);
+        ExerciseRepository exerciseRepository = StubExerciseRepository.of(history, windowStart);
+        rankingAggregator = ServiceFactory.scanRankingAggregator(exerciseRepository, parallelThreshold, 0);
+        exerciseService = ServiceFactory.exerciseService(exerciseRepository, rankingAggregator);
+        userIds = new HashSet<>();
+        for (long userId = 1; userId <= users; userId++) {
+            userIds.add(userId);
+        }
+        rankedUsers = rankingAggregator.aggregate(userIds, windowStart).getRankedUsers();
+    }
+
+    @TearDown
+    public void tearDown() {
+        rankingAggregator.stop();
+    }
+
+    @Benchmark
+    public List<RankingUser> rankingPage() {
+        return exerciseService.ranking(userIds, 0, limit);
+    }
+
+    /**
+     * The whole ranking, with every zero-point user.
+     */
+    @Benchmark
+    public List<RankingUser> fullRanking() {
+        return exerciseService.ranking(userIds);
+    }
+
+    @Benchmark
+    public List<RankingUser> sortRanking() {
+        return RankingOrder.top(rankedUsers, rankedUsers.size());
+    }
+
+    @Benchmark
+    public List<RankingUser> selectTop() {
+        return RankingOrder.top(rankedUsers, limit);
+    }
+}
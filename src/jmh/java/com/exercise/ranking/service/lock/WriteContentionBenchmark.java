@@ -0,0 +1,102 @@
+package com.exercise.ranking.service.lock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of concurrent writes serialized per user with the {@link UserLockStripes}, compared
+ * with a single global lock, when the users of the writes follow a Zipf distribution. A skew of 0
+ * is uniform, and the higher the skew the more writes go to the same few users. The read-check-write
+ * is simulated by {@code work} tokens of CPU. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class WriteContentionBenchmark {
+
+    @Param({"10000"})
+    public int users;
+
+    @Param({"0.0", "0.8", "1.2", "2.0"})
+    public double skew;
+
+    @Param({"64"})
+    public int stripes;
+
+    @Param({"500"})
+    public long work;
+
+    private UserLockStripes userLockStripes;
+
+    private final Object globalLock = new Object();
+
+    /**
+     * Cumulative probability of the users, in decreasing order of their weight.
+     */
+    private double[] cumulative;
+
+    @Setup
+    public void setUp() {
+        userLockStripes = new UserLockStripes(stripes);
+        cumulative = new double[users];
+        double sum = 0;
+        for (int i = 0; i < users; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < users; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    /**
+     * Random user of the writes of a thread.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private final SplittableRandom random = new SplittableRandom(Thread.currentThread().getId());
+
+        private long nextUser(final double[] cumulative) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1);
+        }
+    }
+
+    @Benchmark
+    public long stripedLocks(final Writer writer) {
+        long userId = writer.nextUser(cumulative);
+        return userLockStripes.withLock(userId, () -> {
+            Blackhole.consumeCPU(work);
+            return userId;
+        });
+    }
+
+    @Benchmark
+    public long globalLock(final Writer writer) {
+        long userId = writer.nextUser(cumulative);
+        synchronized (globalLock) {
+            Blackhole.consumeCPU(work);
+            return userId;
+        }
+    }
+}
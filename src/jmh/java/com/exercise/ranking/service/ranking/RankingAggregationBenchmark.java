@@ -0,0 +1,96 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.model.RankingUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation of a 100k exercises ranking window with boxed {@code HashMap}s, as the ranking used
+ * to do, and with the {@link UserPointsAccumulator}. Run with {@code ./gradlew jmh}, the gc profiler
+ * reports the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RankingAggregationBenchmark {
+
+    @Param({"100000"})
+    public int exercises;
+
+    @Param({"1000", "50000"})
+    public int users;
+
+    private List<Exercise> window;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        LocalDateTime windowStart = LocalDateTime.now().minusDays(28);
+        window = new ArrayList<>(exercises);
+        for (int i = 0; i < exercises; i++) {
+            Exercise exercise = new Exercise();
+            exercise.setId((long) i);
+            exercise.setUserId((long) random.nextInt(users));
+            exercise.setType(ExerciseType.values()[random.nextInt(ExerciseType.values().length)]);
+            exercise.setStartTime(windowStart.plusSeconds(random.nextInt(28 * 24 * 3600)));
+            exercise.setDuration(60L + random.nextInt(7200));
+            exercise.setCalories(random.nextBoolean() ? null : random.nextInt(100_000) / 100.0);
+            window.add(exercise);
+        }
+    }
+
+    @Benchmark
+    public List<RankingUser> boxedMaps() {
+        Map<Long, Double> exerciseMap = new HashMap<>();
+        Map<Long, LocalDateTime> latestExerciseTimes = new HashMap<>();
+        for (Exercise data : window) {
+            double points = ExercisePoints.of(data.getCalories(), data.getDuration(), data.getType());
+            if (exerciseMap.containsKey(data.getUserId())) {
+                exerciseMap.put(data.getUserId(), exerciseMap.get(data.getUserId()) + points);
+            } else {
+                exerciseMap.put(data.getUserId(), points);
+            }
+            LocalDateTime endTime = data.getStartTime().plusSeconds(data.getDuration());
+            if (!latestExerciseTimes.containsKey(data.getUserId()) || latestExerciseTimes.get(data.getUserId()).isBefore(endTime)) {
+                latestExerciseTimes.put(data.getUserId(), endTime);
+            }
+        }
+        List<RankingUser> rankedUserList = new ArrayList<>();
+        for (Map.Entry<Long, Double> m : exerciseMap.entrySet()) {
+            rankedUserList.add(new RankingUser(m.getKey(), m.getValue(), latestExerciseTimes.get(m.getKey())));
+        }
+        return rankedUserList;
+    }
+
+    @Benchmark
+    public List<RankingUser> primitiveAccumulator() {
+        UserPointsAccumulator accumulator = new UserPointsAccumulator(users);
+        for (Exercise data : window) {
+            accumulator.add(data.getUserId(), ExercisePoints.of(data.getCalories(), data.getDuration(), data.getType()),
+                    data.getStartTime(), data.getDuration());
+        }
+        return accumulator.toRankingUsers();
+    }
+}
@@ -0,0 +1,37 @@
+package com.exercise.ranking.dao;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseIdGenerator;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Takes exercise ids from the generator of the {@link Exercise} entity, for the exercises that
+ * need their id before they are persisted. The ids come from the same pool as the ids of the
+ * inserts, so the sequence is only called once per 50 ids, and are kept on insert by the
+ * {@link ExerciseIdGenerator}.
+ */
+@Component
+public class ExerciseIdAllocator {
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    public ExerciseIdAllocator(final EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * @return an exercise id that no other exercise got.
+     */
+    public Long nextId() {
+        IdentifierGenerator generator = sessionFactory.getMetamodel().entityPersister(Exercise.class).getIdentifierGenerator();
+        try (Session session = sessionFactory.openSession()) {
+            return (Long) generator.generate((SharedSessionContractImplementor) session, null);
+        }
+    }
+}
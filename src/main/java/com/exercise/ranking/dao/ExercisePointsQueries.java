@@ -0,0 +1,23 @@
+package com.exercise.ranking.dao;
+
+import com.exercise.ranking.model.RankingWindow;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Ranking queries that are evaluated by the database and return one row per user.
+ */
+public interface ExercisePointsQueries {
+
+    /**
+     * Sums the points of the exercises that started at or after the start of the window, grouped by
+     * user, and finds the end of the latest exercise of each user. The users without exercise in
+     * the window are returned in the same round trip, with the end of their latest exercise ever.
+     *
+     * @param userIds     the user ids to rank.
+     * @param windowStart the start of the ranking window.
+     * @return the ranked users and the idle users, unsorted. Users without any exercise are absent.
+     */
+    RankingWindow rankUsers(Set<Long> userIds, LocalDateTime windowStart);
+}
@@ -0,0 +1,88 @@
+package com.exercise.ranking.dao;
+
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of {@link ExercisePointsQueries} with portable SQL.
+ * <p>
+ * The points of an exercise are {@code COALESCE(calories, duration * rate)}, the rate being chosen
+ * by a CASE over the ordinal of the {@link ExerciseType} with the rates passed as parameters. The
+ * exercises of a user never overlap, so the latest exercise to end is the latest one to start (the
+ * longest one if two start together). It is picked with {@code ROW_NUMBER()} and its end is
+ * computed from its start and duration, since adding seconds to a timestamp is not portable.
+ * <p>
+ * The users without exercise in the window are found with {@code NOT EXISTS} on the
+ * (user_id, start_time) index and appended with {@code UNION ALL}, flagged by {@code in_window}.
+ */
+public class ExercisePointsQueriesImpl implements ExercisePointsQueries {
+
+    private static final String RANK_USERS = "SELECT t.user_id AS user_id, 1 AS in_window,"
+            + " SUM(COALESCE(t.calories, t.duration * " + rateCase("t.type") + ")) AS points,"
+            + " MAX(CASE WHEN t.latest = 1 THEN t.start_time END) AS latest_start_time,"
+            + " MAX(CASE WHEN t.latest = 1 THEN t.duration END) AS latest_duration"
+            + " FROM (SELECT e.user_id, e.type, e.start_time, e.duration, e.calories,"
+            + " ROW_NUMBER() OVER (PARTITION BY e.user_id ORDER BY e.start_time DESC, e.duration DESC) AS latest"
+            + " FROM exercises e WHERE e.user_id IN (:userIds) AND e.start_time >= :windowStart) t"
+            + " GROUP BY t.user_id"
+            + " UNION ALL"
+            + " SELECT i.user_id, 0, CAST(0 AS DOUBLE PRECISION), i.start_time, i.duration"
+            + " FROM (SELECT e.user_id, e.start_time, e.duration,"
+            + " ROW_NUMBER() OVER (PARTITION BY e.user_id ORDER BY e.start_time DESC, e.duration DESC) AS latest"
+            + " FROM exercises e WHERE e.user_id IN (:userIds) AND NOT EXISTS"
+            + " (SELECT 1 FROM exercises w WHERE w.user_id = e.user_id AND w.start_time >= :windowStart)) i"
+            + " WHERE i.latest = 1";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public ExercisePointsQueriesImpl(final DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @Override
+    public RankingWindow rankUsers(final Set<Long> userIds, final LocalDateTime windowStart) {
+        MapSqlParameterSource parameters = rateParameters()
+                .addValue("userIds", userIds)
+                .addValue("windowStart", windowStart);
+        List<RankingUser> rankedUsers = new ArrayList<>();
+        List<RankingUser> idleUsers = new ArrayList<>();
+        jdbcTemplate.query(RANK_USERS, parameters, rs -> {
+            RankingUser rankingUser = new RankingUser(rs.getLong("user_id"), rs.getDouble("points"),
+                    rs.getObject("latest_start_time", LocalDateTime.class).plusSeconds(rs.getLong("latest_duration")));
+            if (rs.getInt("in_window") == 1) {
+                rankedUsers.add(rankingUser);
+            } else {
+                idleUsers.add(rankingUser);
+            }
+        });
+        return new RankingWindow(rankedUsers, idleUsers);
+    }
+
+    /**
+     * CASE expression that maps the ordinal of the exercise type to the {@code :rateN} parameter.
+     */
+    static String rateCase(final String typeColumn) {
+        StringBuilder rateCase = new StringBuilder("CASE ").append(typeColumn);
+        for (ExerciseType type : ExerciseType.values()) {
+            rateCase.append(" WHEN ").append(type.ordinal()).append(" THEN CAST(:rate").append(type.ordinal()).append(" AS DOUBLE PRECISION)");
+        }
+        return rateCase.append(" END").toString();
+    }
+
+    static MapSqlParameterSource rateParameters() {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        for (ExerciseType type : ExerciseType.values()) {
+            parameters.addValue("rate" + type.ordinal(), type.getDurationToCaloriesRate());
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,57 @@
+package com.exercise.ranking.dao;
+
+import com.exercise.ranking.model.ExerciseType;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of the columns of an exercise that count toward the ranking. Created by a
+ * constructor expression, so it is never managed by the persistence context.
+ */
+public class ExercisePointsRow {
+
+    private final Long userId;
+
+    private final ExerciseType type;
+
+    private final LocalDateTime startTime;
+
+    private final Long duration;
+
+    private final Double calories;
+
+    public ExercisePointsRow(final Long userId, final ExerciseType type, final LocalDateTime startTime, final Long duration,
+            final Double calories) {
+        this.userId = userId;
+        this.type = type;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.calories = calories;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public ExerciseType getType() {
+        return type;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public Long getDuration() {
+        return duration;
+    }
+
+    public Double getCalories() {
+        return calories;
+    }
+
+    @Override
+    public String toString() {
+        return "ExercisePointsRow{" + "userId=" + userId + ", type=" + type + ", startTime=" + startTime + ", duration=" + duration
+                + ", calories=" + calories + '}';
+    }
+}
@@ -1,25 +1,76 @@
 package com.exercise.ranking.dao;
 
 import com.exercise.ranking.model.Exercise;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface ExerciseRepository extends JpaRepository<Exercise, Long> {
+public interface ExerciseRepository extends JpaRepository<Exercise, Long>, ExercisePointsQueries {
 
     List<Exercise> findByUserId(Long userId);
 
 
+    /**
+     * Finds the exercises of the user that started before the given time, latest first. Since the
+     * exercises of a user do not overlap, the first of them is the only one that can overlap a
+     * timeline ending at {@code endTime}. Served by the (user_id, start_time) index.
+     */
+    @Query(value = "SELECT e FROM Exercise e WHERE e.userId = :userId AND e.startTime < :endTime ORDER BY e.startTime DESC, e.duration DESC")
+    List<Exercise> findLatestStartingBefore(Long userId, LocalDateTime endTime, Pageable pageable);
+
+
+    List<Exercise> findByUserIdAndStartTimeGreaterThanEqualAndStartTimeLessThan(Long userId, LocalDateTime from, LocalDateTime to);
+
+
+    /**
+     * Finds the users that started exercises in the period. Served by the start_time index, like
+     * {@link #findLatestStartTime()}.
+     */
+    @Query(value = "SELECT DISTINCT e.userId FROM Exercise e WHERE e.startTime >= :from AND e.startTime < :to")
+    List<Long> findUserIdsStartedBetween(LocalDateTime from, LocalDateTime to);
+
+
+    @Query(value = "SELECT e FROM Exercise e WHERE e.userId IN (:userIds) AND e.startTime >= :from AND e.startTime < :to")
+    List<Exercise> findByUsersStartedBetween(Collection<Long> userIds, LocalDateTime from, LocalDateTime to);
+
+
+    @Query(value = "SELECT MAX(e.startTime) FROM Exercise e")
+    LocalDateTime findLatestStartTime();
+
+
     @Query(value = "SELECT * FROM exercises e WHERE e.user_id IN (:userIds) AND e.start_time >= :localDateTime", nativeQuery = true)
     List<Exercise> findByUsersAndStartTime(Set<Long> userIds, LocalDateTime localDateTime);
 
 
-    @Query(value = "SELECT DISTINCT ON (user_id) * FROM exercises e WHERE e.user_id IN (:userIds) ORDER BY user_id, start_time DESC", nativeQuery = true)
+    /**
+     * Streams only the columns that count toward the ranking, without the description and without
+     * managed entities. Must be called in a (read-only) transaction and the stream must be closed.
+     */
+    @QueryHints(value = @QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query(value = "SELECT new com.exercise.ranking.dao.ExercisePointsRow(e.userId, e.type, e.startTime, e.duration, e.calories) "
+            + "FROM Exercise e WHERE e.userId IN (:userIds) AND e.startTime >= :localDateTime")
+    Stream<ExercisePointsRow> streamPointsByUsersAndStartTime(Set<Long> userIds, LocalDateTime localDateTime);
+
+
+    /**
+     * Finds the latest exercise of each user. Portable replacement of PostgreSQL's
+     * {@code DISTINCT ON}, with {@code ROW_NUMBER()} over the (user_id, start_time) index.
+     */
+    @Query(value = "SELECT e.* FROM exercises e WHERE e.id IN (SELECT t.id FROM (SELECT l.id, ROW_NUMBER() OVER "
+            + "(PARTITION BY l.user_id ORDER BY l.start_time DESC, l.duration DESC) AS latest FROM exercises l WHERE l.user_id IN (:userIds)) t "
+            + "WHERE t.latest = 1)", nativeQuery = true)
     List<Exercise> findByDistinctUsersAndLatestExerciseTime(Set<Long> userIds);
 
 
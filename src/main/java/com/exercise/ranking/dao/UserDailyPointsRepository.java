@@ -0,0 +1,38 @@
+package com.exercise.ranking.dao;
+
+import com.exercise.ranking.model.UserDailyPoints;
+import com.exercise.ranking.model.UserDailyPointsId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+@Repository
+public interface UserDailyPointsRepository extends JpaRepository<UserDailyPoints, UserDailyPointsId> {
+
+    @Query(value = "SELECT r.userId AS userId, SUM(r.points) AS points, MAX(r.latestEnd) AS latestExerciseTime FROM UserDailyPoints r "
+            + "WHERE r.userId IN (:userIds) AND r.exerciseDay >= :firstDay GROUP BY r.userId")
+    List<UserPointsView> sumByUsersSince(Set<Long> userIds, LocalDate firstDay);
+
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM UserDailyPoints r WHERE r.exerciseDay < :firstDay")
+    int deleteBefore(LocalDate firstDay);
+
+
+    @Query(value = "SELECT r.userId FROM UserDailyPoints r WHERE r.exerciseDay = :exerciseDay")
+    List<Long> findUserIdsByDay(LocalDate exerciseDay);
+
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM UserDailyPoints r WHERE r.exerciseDay = :exerciseDay AND r.userId IN (:userIds)")
+    int deleteByDayAndUsers(LocalDate exerciseDay, Collection<Long> userIds);
+}
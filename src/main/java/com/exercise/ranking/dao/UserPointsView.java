@@ -0,0 +1,15 @@
+package com.exercise.ranking.dao;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection of the points of a user summed up by the database.
+ */
+public interface UserPointsView {
+
+    Long getUserId();
+
+    Double getPoints();
+
+    LocalDateTime getLatestExerciseTime();
+}
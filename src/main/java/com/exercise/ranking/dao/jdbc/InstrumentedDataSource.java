@@ -0,0 +1,274 @@
+package com.exercise.ranking.dao.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+
+import com.exercise.ranking.dao.jdbc.JdbcMetrics.StatementKind;
+
+/**
+ * Wraps a {@link DataSource} in dynamic proxies of its connections and statements which measure
+ * the statements in {@link JdbcMetrics}, the way datasource-proxy does.
+ * <p>
+ * The execution of a statement is timed from the call of {@code execute*} to its return, that is,
+ * until the first rows of a query. Only the types of the bind parameters are kept, for the log of
+ * the slow statements, never their values.
+ * <p>
+ * Counting the rows read needs a proxy of every result set too, which every getter of every row
+ * goes through, so it is optional. When enabled, the rows are counted as they are read and recorded
+ * when the result set or its statement is closed.
+ */
+public final class InstrumentedDataSource {
+
+    private InstrumentedDataSource() {
+    }
+
+    /**
+     * @param dataSource the data source to instrument.
+     * @param metrics    where the statements are recorded.
+     * @param countRows  whether the result sets are wrapped to count the rows read.
+     * @return a data source instrumenting the connections of {@code dataSource}.
+     */
+    public static DataSource wrap(final DataSource dataSource, final JdbcMetrics metrics, final boolean countRows) {
+        return proxy(DataSource.class, new DataSourceHandler(dataSource, metrics, countRows));
+    }
+
+    private static <T> T proxy(final Class<T> type, final Handler handler) {
+        T proxy = type.cast(Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[] {type}, handler));
+        handler.proxy = proxy;
+        return proxy;
+    }
+
+    /**
+     * Delegates to the target, with the identity of the proxy for {@code equals} and
+     * {@code hashCode}.
+     */
+    private abstract static class Handler implements InvocationHandler {
+
+        final Object target;
+
+        Object proxy;
+
+        Handler(final Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return invokeTarget(method, args);
+                }
+            }
+            return handle(method, args);
+        }
+
+        abstract Object handle(Method method, Object[] args) throws Throwable;
+
+        final Object invokeTarget(final Method method, final Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class DataSourceHandler extends Handler {
+
+        private final JdbcMetrics metrics;
+
+        private final boolean countRows;
+
+        DataSourceHandler(final DataSource target, final JdbcMetrics metrics, final boolean countRows) {
+            super(target);
+            this.metrics = metrics;
+            this.countRows = countRows;
+        }
+
+        @Override
+        Object handle(final Method method, final Object[] args) throws Throwable {
+            Object result = invokeTarget(method, args);
+            if ("getConnection".equals(method.getName())) {
+                return proxy(Connection.class, new ConnectionHandler((Connection) result, metrics, countRows));
+            }
+            return result;
+        }
+    }
+
+    private static final class ConnectionHandler extends Handler {
+
+        private final JdbcMetrics metrics;
+
+        private final boolean countRows;
+
+        ConnectionHandler(final Connection target, final JdbcMetrics metrics, final boolean countRows) {
+            super(target);
+            this.metrics = metrics;
+            this.countRows = countRows;
+        }
+
+        @Override
+        Object handle(final Method method, final Object[] args) throws Throwable {
+            Object result = invokeTarget(method, args);
+            switch (method.getName()) {
+            case "createStatement":
+                return proxy(Statement.class, new StatementHandler((Statement) result, null, metrics, countRows));
+            case "prepareStatement":
+                return proxy(PreparedStatement.class, new StatementHandler((Statement) result, (String) args[0], metrics, countRows));
+            case "prepareCall":
+                return proxy(CallableStatement.class, new StatementHandler((Statement) result, (String) args[0], metrics, countRows));
+            default:
+                return result;
+            }
+        }
+    }
+
+    private static final class StatementHandler extends Handler {
+
+        private final JdbcMetrics metrics;
+
+        private final boolean countRows;
+
+        /**
+         * The SQL of the prepared statement, or the last one added to the batch of a plain one.
+         */
+        private String sql;
+
+        /**
+         * The types of the bind parameters by index, {@code null} until one is set.
+         */
+        private List<String> parameters;
+
+        private ResultSetHandler resultSet;
+
+        StatementHandler(final Statement target, final String sql, final JdbcMetrics metrics, final boolean countRows) {
+            super(target);
+            this.sql = sql;
+            this.metrics = metrics;
+            this.countRows = countRows;
+        }
+
+        @Override
+        Object handle(final Method method, final Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameter((Integer) args[0], "setNull".equals(name) || args[1] == null ? "null" : args[1].getClass().getSimpleName());
+            } else if ("clearParameters".equals(name) && parameters != null) {
+                parameters.clear();
+            } else if ("addBatch".equals(name) && args != null) {
+                sql = (String) args[0];
+            } else if ("close".equals(name) || "getMoreResults".equals(name)) {
+                closeResultSet();
+            }
+            Object result = invokeTarget(method, args);
+            if (countRows && "getResultSet".equals(name) && result != null) {
+                return resultSet((ResultSet) result);
+            }
+            return result;
+        }
+
+        private Object execute(final Method method, final Object[] args) throws Throwable {
+            closeResultSet();
+            String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            RequestStatements.increment();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invokeTarget(method, args);
+            } finally {
+                metrics.statementExecuted(StatementKind.of(executed), executed, parameters, System.nanoTime() - start);
+            }
+            return countRows && result instanceof ResultSet ? resultSet((ResultSet) result) : result;
+        }
+
+        private void parameter(final int index, final String type) {
+            if (parameters == null) {
+                parameters = new ArrayList<>();
+            }
+            while (parameters.size() < index) {
+                parameters.add(null);
+            }
+            parameters.set(index - 1, type);
+        }
+
+        private ResultSet resultSet(final ResultSet target) {
+            if (resultSet != null && resultSet.target == target) {
+                return (ResultSet) resultSet.proxy;
+            }
+            closeResultSet();
+            resultSet = new ResultSetHandler(target, proxy, metrics);
+            return proxy(ResultSet.class, resultSet);
+        }
+
+        private void closeResultSet() {
+            if (resultSet != null) {
+                resultSet.finish();
+                resultSet = null;
+            }
+        }
+    }
+
+    private static final class ResultSetHandler extends Handler {
+
+        private final Object statement;
+
+        private final JdbcMetrics metrics;
+
+        private long rows;
+
+        private boolean finished;
+
+        ResultSetHandler(final ResultSet target, final Object statement, final JdbcMetrics metrics) {
+            super(target);
+            this.statement = statement;
+            this.metrics = metrics;
+        }
+
+        @Override
+        Object handle(final Method method, final Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "next":
+                Object next = invokeTarget(method, args);
+                if (Boolean.TRUE.equals(next)) {
+                    rows++;
+                }
+                return next;
+            case "close":
+                finish();
+                return invokeTarget(method, args);
+            case "getStatement":
+                return statement;
+            default:
+                return invokeTarget(method, args);
+            }
+        }
+
+        /**
+         * Records the rows read, once, when the result set or its statement is closed.
+         */
+        void finish() {
+            if (!finished) {
+                finished = true;
+                metrics.rowsRead(rows);
+            }
+        }
+    }
+}
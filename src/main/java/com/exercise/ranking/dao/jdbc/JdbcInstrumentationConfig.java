@@ -0,0 +1,54 @@
+package com.exercise.ranking.dao.jdbc;
+
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Wraps the data source in an {@link InstrumentedDataSource} and registers the
+ * {@link StatementCountInterceptor} on every handler.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ranking.jdbc.instrumentation.enabled", havingValue = "true", matchIfMissing = true)
+public class JdbcInstrumentationConfig implements WebMvcConfigurer {
+
+    private final StatementCountInterceptor statementCountInterceptor;
+
+    public JdbcInstrumentationConfig(final JdbcMetrics jdbcMetrics,
+            @Value("${ranking.jdbc.request-statements-warn-threshold:20}") final int warnThreshold) {
+        this.statementCountInterceptor = new StatementCountInterceptor(jdbcMetrics, warnThreshold);
+    }
+
+    @Bean
+    public static JdbcMetrics jdbcMetrics(@Value("${ranking.jdbc.slow-statement-ms:200}") final long slowStatementMillis) {
+        return new JdbcMetrics(TimeUnit.MILLISECONDS.toNanos(slowStatementMillis));
+    }
+
+    /**
+     * Wraps the data source once it is configured, so that the pool and its metrics keep seeing
+     * the pool itself through {@link DataSource#unwrap}.
+     */
+    @Bean
+    public static BeanPostProcessor instrumentedDataSourcePostProcessor(final ObjectProvider<JdbcMetrics> jdbcMetrics,
+            @Value("${ranking.jdbc.count-rows:false}") final boolean countRows) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+                return bean instanceof DataSource ? InstrumentedDataSource.wrap((DataSource) bean, jdbcMetrics.getObject(), countRows) : bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(final InterceptorRegistry registry) {
+        registry.addInterceptor(statementCountInterceptor);
+    }
+}
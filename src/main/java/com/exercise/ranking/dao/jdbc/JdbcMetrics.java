@@ -0,0 +1,141 @@
+package com.exercise.ranking.dao.jdbc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Meters of the JDBC statements, and the log of the slow ones.
+ * <ul>
+ *   <li>{@code jdbc.statement{kind}}: the execution of the statements, until the first row for the
+ *   queries, by the first keyword of the SQL (select, insert, update, delete or other).</li>
+ *   <li>{@code jdbc.statement.rows}: the rows read from a result set, when it is closed, if the
+ *   rows are counted.</li>
+ *   <li>{@code jdbc.statement.slow}: the statements that ran longer than the threshold.</li>
+ *   <li>{@code jdbc.request.statements{uri}}: the statements of an HTTP request, see {@link
+ *   StatementCountInterceptor}.</li>
+ * </ul>
+ * The data source is created before the registry, which binds the meters once it is initialized;
+ * the statements executed until then, such as the schema creation, are only logged if slow.
+ */
+public class JdbcMetrics implements MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcMetrics.class);
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final long slowNanos;
+
+    private volatile Meters meters;
+
+    /**
+     * @param slowNanos the execution time from which a statement is logged.
+     */
+    public JdbcMetrics(final long slowNanos) {
+        this.slowNanos = slowNanos;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry meterRegistry) {
+        meters = new Meters(meterRegistry);
+    }
+
+    /**
+     * Records the execution of a statement.
+     *
+     * @param kind       the kind of the statement.
+     * @param sql        the SQL of the statement.
+     * @param parameters the types of the bind parameters, for the log of the slow statements.
+     * @param nanos      the execution time.
+     */
+    void statementExecuted(final StatementKind kind, final String sql, final List<String> parameters, final long nanos) {
+        Meters m = meters;
+        if (m != null) {
+            m.statements[kind.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        }
+        if (nanos >= slowNanos) {
+            if (m != null) {
+                m.slowStatements.increment();
+            }
+            LOG.warn("Slow statement ({} ms): {} parameters: {}", TimeUnit.NANOSECONDS.toMillis(nanos), sql, parameters);
+        }
+    }
+
+    void rowsRead(final long rows) {
+        Meters m = meters;
+        if (m != null) {
+            m.rows.record(rows);
+        }
+    }
+
+    void requestFinished(final String uriTemplate, final int statements) {
+        Meters m = meters;
+        if (m != null) {
+            m.requestStatements.computeIfAbsent(uriTemplate, uri -> DistributionSummary.builder("jdbc.request.statements")
+                    .tag("uri", uri).description("JDBC statements of an HTTP request").publishPercentiles(PERCENTILES)
+                    .register(m.meterRegistry)).record(statements);
+        }
+    }
+
+    /**
+     * The kind of a statement, from the first keyword of its SQL.
+     */
+    enum StatementKind {
+        SELECT, INSERT, UPDATE, DELETE, OTHER;
+
+        static StatementKind of(final String sql) {
+            if (sql == null) {
+                return OTHER;
+            }
+            int start = 0;
+            while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+                start++;
+            }
+            for (StatementKind kind : values()) {
+                if (kind != OTHER && sql.regionMatches(true, start, kind.name(), 0, kind.name().length())) {
+                    return kind;
+                }
+            }
+            return OTHER;
+        }
+    }
+
+    private static final class Meters {
+
+        private final MeterRegistry meterRegistry;
+
+        private final Timer[] statements = new Timer[StatementKind.values().length];
+
+        private final DistributionSummary rows;
+
+        private final Counter slowStatements;
+
+        /**
+         * The statements of the requests by URI template, bounded by the number of templates.
+         */
+        private final Map<String, DistributionSummary> requestStatements = new ConcurrentHashMap<>();
+
+        private Meters(final MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            for (StatementKind kind : StatementKind.values()) {
+                statements[kind.ordinal()] = Timer.builder("jdbc.statement").tag("kind", kind.name().toLowerCase())
+                        .description("Execution of the JDBC statements").publishPercentiles(PERCENTILES)
+                        .publishPercentileHistogram().register(meterRegistry);
+            }
+            rows = DistributionSummary.builder("jdbc.statement.rows").description("Rows read from a result set")
+                    .publishPercentiles(PERCENTILES).register(meterRegistry);
+            slowStatements = Counter.builder("jdbc.statement.slow").description("Statements slower than the threshold")
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.exercise.ranking.dao.jdbc;
+
+/**
+ * Counts the statements executed by the current thread while a request is handled on it.
+ */
+final class RequestStatements {
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    private RequestStatements() {
+    }
+
+    /**
+     * Starts counting the statements of the current thread.
+     */
+    static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    /**
+     * Adds a statement, if the current thread is counting.
+     */
+    static void increment() {
+        int[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+    }
+
+    /**
+     * Stops counting the statements of the current thread.
+     *
+     * @return the statements since {@link #start()}, -1 if the thread was not counting.
+     */
+    static int finish() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return count != null ? count[0] : -1;
+    }
+}
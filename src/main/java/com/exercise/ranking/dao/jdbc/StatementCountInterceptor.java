@@ -0,0 +1,61 @@
+package com.exercise.ranking.dao.jdbc;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Counts the JDBC statements of every request, by URI template, and logs the requests with more
+ * statements than the threshold, which is the sign of an N+1 query.
+ * <p>
+ * Only the statements executed on the thread of the handler are counted.
+ */
+public class StatementCountInterceptor implements AsyncHandlerInterceptor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatementCountInterceptor.class);
+
+    private final JdbcMetrics metrics;
+
+    private final int warnThreshold;
+
+    /**
+     * @param metrics       where the statements of the requests are recorded.
+     * @param warnThreshold the statements from which a request is logged.
+     */
+    public StatementCountInterceptor(final JdbcMetrics metrics, final int warnThreshold) {
+        this.metrics = metrics;
+        this.warnThreshold = warnThreshold;
+    }
+
+    @Override
+    public boolean preHandle(final HttpServletRequest request, final HttpServletResponse response, final Object handler) {
+        RequestStatements.start();
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(final HttpServletRequest request, final HttpServletResponse response,
+            final Object handler) {
+        // the thread goes back to the container, the rest of the request is not counted
+        RequestStatements.finish();
+    }
+
+    @Override
+    public void afterCompletion(final HttpServletRequest request, final HttpServletResponse response, final Object handler,
+            final Exception ex) {
+        int statements = RequestStatements.finish();
+        if (statements < 0) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uriTemplate = pattern != null ? pattern.toString() : "UNKNOWN";
+        metrics.requestFinished(uriTemplate, statements);
+        if (statements >= warnThreshold) {
+            LOG.warn("{} {} executed {} statements", request.getMethod(), uriTemplate, statements);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.exercise.ranking.facade;
 
 import com.exercise.ranking.service.exception.ConflictException;
 import com.exercise.ranking.service.exception.NotFoundException;
+import com.exercise.ranking.service.exception.PreconditionFailedException;
+import com.exercise.ranking.service.exception.QueueFullException;
 import com.exercise.ranking.service.exception.SecurityException;
 import com.fasterxml.jackson.databind.exc.InvalidDefinitionException;
 import org.springframework.http.HttpHeaders;
@@ -44,6 +46,19 @@ public class ErrorHandler extends ResponseEntityExceptionHandler {
     return new ResponseEntity<>(new ErrorResponse(ex.getMessage()), HttpStatus.NOT_FOUND);
   }
 
+  @ExceptionHandler(PreconditionFailedException.class)
+  public final ResponseEntity<ErrorResponse> handlePreconditionFailed(final PreconditionFailedException ex,
+      final WebRequest request) {
+    return new ResponseEntity<>(new ErrorResponse(ex.getMessage()), HttpStatus.PRECONDITION_FAILED);
+  }
+
+  @ExceptionHandler(QueueFullException.class)
+  public final ResponseEntity<ErrorResponse> handleQueueFull(final QueueFullException ex,
+      final WebRequest request) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+        .body(new ErrorResponse(ex.getMessage()));
+  }
+
   @ExceptionHandler(SecurityException.class)
   public final ResponseEntity<ErrorResponse> handleSecurity(final SecurityException ex,
       final WebRequest request) {
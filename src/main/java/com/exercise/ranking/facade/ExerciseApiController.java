@@ -1,14 +1,30 @@
 package com.exercise.ranking.facade;
 
 import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.facade.dto.ExerciseBatchItemDTO;
 import com.exercise.ranking.facade.dto.ExerciseDTO;
+import com.exercise.ranking.facade.dto.IngestTicketDTO;
 import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseBatchResult;
+import com.exercise.ranking.service.exception.PreconditionFailedException;
+import com.exercise.ranking.service.ingest.AsyncExerciseIngest;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
@@ -22,8 +38,18 @@ public class ExerciseApiController {
 
   private final ExerciseService exerciseService;
 
-  public ExerciseApiController(final ExerciseService exerciseService) {
+  private final AsyncExerciseIngest asyncExerciseIngest;
+
+  private final Validator validator;
+
+  private final int maxBatchSize;
+
+  public ExerciseApiController(final ExerciseService exerciseService, final AsyncExerciseIngest asyncExerciseIngest,
+      final Validator validator, @Value("${ranking.batch.max-size:1000}") final int maxBatchSize) {
     this.exerciseService = exerciseService;
+    this.asyncExerciseIngest = asyncExerciseIngest;
+    this.validator = validator;
+    this.maxBatchSize = maxBatchSize;
   }
 
   @Operation(summary = "Insert a new exercise for a user.", description = "Persist a new exercise and generate its id.")
@@ -32,19 +58,100 @@ public class ExerciseApiController {
   public ResponseEntity<ExerciseDTO> insert(@Valid @RequestBody final ExerciseDTO dto) {
     Exercise exercise = ExerciseDTO.toExercise(dto);
     Exercise insertedExercise = exerciseService.insert(exercise);
-    return ResponseEntity.status(HttpStatus.CREATED)
+    return ResponseEntity.status(HttpStatus.CREATED).eTag(eTagOf(insertedExercise))
         .body(ExerciseDTO.fromExercise(insertedExercise));
   }
 
-  @Operation(summary = "Update an existing exercise for a user.", description = "Update an already persisted exercise. Exercise id, user id and exercise type are excluded from the update.")
-  @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Exercise updated")})
+  @Operation(summary = "Queue a new exercise for a user.", description = "Check the exercise against the in-memory exercise timelines, write it to the local write-ahead file and persist it in the background with the returned id. Only available when the asynchronous insert is enabled.")
+  @ApiResponses(value = {@ApiResponse(responseCode = "202", description = "Exercise accepted"),
+      @ApiResponse(responseCode = "503", description = "Insert queue full, retry later")})
+  @PostMapping(value = "/async", produces = {"application/json"}, consumes = {"application/json"})
+  public CompletableFuture<ResponseEntity<IngestTicketDTO>> insertAsync(@Valid @RequestBody final ExerciseDTO dto) {
+    return asyncExerciseIngest.submit(ExerciseDTO.toExercise(dto))
+        .thenApply(exerciseId -> ResponseEntity.status(HttpStatus.ACCEPTED).body(IngestTicketDTO.of(exerciseId)));
+  }
+
+  @Operation(summary = "Insert a batch of exercises.", description = "Persist the exercises that are valid and do not overlap an existing exercise or an earlier exercise of the batch, and report the result of every exercise.")
+  @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Result of every exercise of the batch")})
+  @PostMapping(value = "/batch", produces = {"application/json"}, consumes = {"application/json"})
+  public ResponseEntity<List<ExerciseBatchItemDTO>> insertAll(@RequestBody final List<ExerciseDTO> dtos) {
+    if (dtos.size() > maxBatchSize) {
+      throw new IllegalArgumentException("A batch cannot have more than " + maxBatchSize + " exercises");
+    }
+    ExerciseBatchItemDTO[] items = new ExerciseBatchItemDTO[dtos.size()];
+    List<Integer> validPositions = new ArrayList<>();
+    List<Exercise> validExercises = new ArrayList<>();
+    for (int i = 0; i < dtos.size(); i++) {
+      Set<ConstraintViolation<ExerciseDTO>> violations = validator.validate(dtos.get(i));
+      if (violations.isEmpty()) {
+        validPositions.add(i);
+        validExercises.add(ExerciseDTO.toExercise(dtos.get(i)));
+      } else {
+        List<String> details = violations.stream().map(ConstraintViolation::getMessage).collect(Collectors.toList());
+        items[i] = ExerciseBatchItemDTO.of(i, ExerciseBatchResult.rejected(ExerciseBatchResult.Status.INVALID, "Validation Failed: " + details));
+      }
+    }
+    List<ExerciseBatchResult> results = exerciseService.insertAll(validExercises);
+    for (int i = 0; i < results.size(); i++) {
+      items[validPositions.get(i)] = ExerciseBatchItemDTO.of(validPositions.get(i), results.get(i));
+    }
+    return ResponseEntity.ok(Arrays.asList(items));
+  }
+
+  @Operation(summary = "Update an existing exercise for a user.", description = "Update an already persisted exercise. Exercise id, user id and exercise type are excluded from the update. With If-Match, the exercise is only updated if it is still at the version of one of its strong ETags.")
+  @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "Exercise updated"),
+      @ApiResponse(responseCode = "412", description = "Exercise updated since the ETag of If-Match")})
   @PutMapping(value = "/{exerciseId}", produces = {"application/json"}, consumes = {"application/json"})
   public ResponseEntity<ExerciseDTO> update(
       @Parameter(description = "Id of the exercise to update", required = true) @PathVariable("exerciseId") final Long exerciseId,
+      @Parameter(description = "Strong ETags of the versions the update can be based on") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) final String ifMatch,
       @Parameter(description = "", required = true) @Valid @RequestBody final ExerciseDTO dto) {
     Exercise exercise = ExerciseDTO.toExercise(dto);
-    Exercise updateExercise = exerciseService.update(exerciseId, exercise);
-    return ResponseEntity.ok(ExerciseDTO.fromExercise(updateExercise));
+    Exercise updateExercise = exerciseService.update(exerciseId, exercise, versionsOf(ifMatch));
+    return ResponseEntity.ok().eTag(eTagOf(updateExercise)).body(ExerciseDTO.fromExercise(updateExercise));
+  }
+
+  private static String eTagOf(final Exercise exercise) {
+    return "\"" + exercise.getVersion() + "\"";
+  }
+
+  /**
+   * The versions of the ETags of an If-Match list, or {@code null} for no If-Match or {@code *}.
+   * If-Match uses the strong comparison, so a weak ETag never matches.
+   *
+   * @throws PreconditionFailedException if If-Match is malformed, or none of its ETags can match.
+   */
+  private static Set<Long> versionsOf(final String ifMatch) {
+    if (ifMatch == null || ifMatch.trim().equals("*")) {
+      return null;
+    }
+    Set<Long> versions = new HashSet<>();
+    int i = 0;
+    while (i < ifMatch.length()) {
+      char c = ifMatch.charAt(i);
+      if (c == ',' || Character.isWhitespace(c)) {
+        i++;
+        continue;
+      }
+      boolean weak = ifMatch.startsWith("W/", i);
+      int open = weak ? i + 2 : i;
+      int close = open < ifMatch.length() && ifMatch.charAt(open) == '"' ? ifMatch.indexOf('"', open + 1) : -1;
+      if (close < 0) {
+        throw new PreconditionFailedException("If-Match " + ifMatch + " is not a list of ETags");
+      }
+      if (!weak) {
+        try {
+          versions.add(Long.valueOf(ifMatch.substring(open + 1, close)));
+        } catch (NumberFormatException e) {
+          // not an ETag of an exercise, it matches no version
+        }
+      }
+      i = close + 1;
+    }
+    if (versions.isEmpty()) {
+      throw new PreconditionFailedException("If-Match " + ifMatch + " has no strong ETag of an exercise");
+    }
+    return versions;
   }
 
 }
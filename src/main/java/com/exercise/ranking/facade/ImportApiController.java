@@ -0,0 +1,49 @@
+package com.exercise.ranking.facade;
+
+import com.exercise.ranking.facade.dto.ImportJobDTO;
+import com.exercise.ranking.service.importer.ExerciseImporter;
+import com.exercise.ranking.service.importer.ImportFormat;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@Tag(name = "Import", description = "The exercise import API.")
+@RestController
+@RequestMapping("/import")
+@Secured("ROLE_ADMIN")
+public class ImportApiController {
+
+  private final ExerciseImporter exerciseImporter;
+
+  public ImportApiController(final ExerciseImporter exerciseImporter) {
+    this.exerciseImporter = exerciseImporter;
+  }
+
+  @Operation(summary = "Import the exercises of a file.", description = "Start the import of an NDJSON or CSV file of the import directory in the background. The import of a file resumes from its last checkpoint.")
+  @ApiResponses(value = {@ApiResponse(responseCode = "202", description = "Import started")})
+  @PostMapping(produces = {"application/json"})
+  public ResponseEntity<ImportJobDTO> start(
+      @Parameter(description = "Name of the file in the import directory", required = true) @RequestParam(value = "file") final String file,
+      @Parameter(description = "Format of the file", required = true) @RequestParam(value = "format") final ImportFormat format) {
+    return ResponseEntity.status(HttpStatus.ACCEPTED).body(ImportJobDTO.of(exerciseImporter.start(file, format)));
+  }
+
+  @Operation(summary = "Get the progress of an import.", description = "Lines read, exercises imported, rows rejected and rows per second of an import.")
+  @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "successful operation")})
+  @GetMapping(value = "/{jobId}", produces = {"application/json"})
+  public ResponseEntity<ImportJobDTO> get(
+      @Parameter(description = "Id of the import", required = true) @PathVariable("jobId") final String jobId) {
+    return ResponseEntity.ok(ImportJobDTO.of(exerciseImporter.get(jobId)));
+  }
+}
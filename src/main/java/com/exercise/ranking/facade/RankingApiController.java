@@ -3,6 +3,10 @@ package com.exercise.ranking.facade;
 import com.exercise.ranking.model.RankingUser;
 import com.exercise.ranking.service.ExerciseService;
 import com.exercise.ranking.facade.dto.RankingUserDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -12,12 +16,14 @@ import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Tag(name = "Ranking", description = "The Ranking API.")
 @RestController
@@ -27,17 +33,49 @@ public class RankingApiController {
 
   private final ExerciseService exerciseService;
 
-  public RankingApiController(final ExerciseService exerciseService) {
+  private final ObjectMapper objectMapper;
+
+  public RankingApiController(final ExerciseService exerciseService, final ObjectMapper objectMapper) {
     this.exerciseService = exerciseService;
+    this.objectMapper = objectMapper;
   }
 
-  @Operation(summary = "Get ranking for a set of users.", description = "Calculate the ranking for the given user ids. The calculation is based on the exercises the user has done in the last 28 days. The list is sorted in descending order by user points. ")
+  @Operation(summary = "Get ranking for a set of users.", description = "Calculate the ranking for the given user ids. The calculation is based on the exercises the user has done in the last 28 days. The list is sorted in descending order by user points. Use limit and offset to get only a page of the ranking.")
   @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "successful operation")})
   @GetMapping(produces = {"application/json"})
   public ResponseEntity<List<RankingUserDTO>> ranking(
-      @Parameter(description = "List of user ids to rank", required = true) @Valid @RequestParam(value = "userIds") final Set<Long> userIds) {
-    List<RankingUser> userRanking = exerciseService.ranking(userIds);
+      @Parameter(description = "List of user ids to rank", required = true) @Valid @RequestParam(value = "userIds") final Set<Long> userIds,
+      @Parameter(description = "Number of ranked users to skip") @RequestParam(value = "offset", defaultValue = "0") final int offset,
+      @Parameter(description = "Maximum number of ranked users to return, all of them if empty") @RequestParam(value = "limit", required = false) final Integer limit) {
+    List<RankingUser> userRanking = exerciseService.ranking(userIds, offset, limit == null ? Integer.MAX_VALUE : limit);
     return ResponseEntity.ok(
         userRanking.stream().map(RankingUserDTO::of).collect(Collectors.toList()));
   }
+
+  /**
+   * Same as {@link #ranking(Set, int, Integer)}, but writes the JSON array element by element
+   * straight from the ranked users, each one serialized as a {@link RankingUserDTO} on its own,
+   * without the list of DTOs nor a buffer of the whole response, for rankings of many users.
+   */
+  @Operation(summary = "Stream the ranking for a set of users.", description = "Same as the ranking, written incrementally for large sets of users.")
+  @ApiResponses(value = {@ApiResponse(responseCode = "200", description = "successful operation")})
+  @GetMapping(params = "stream=true", produces = {"application/json"})
+  public ResponseEntity<StreamingResponseBody> streamRanking(
+      @Parameter(description = "List of user ids to rank", required = true) @Valid @RequestParam(value = "userIds") final Set<Long> userIds,
+      @Parameter(description = "Number of ranked users to skip") @RequestParam(value = "offset", defaultValue = "0") final int offset,
+      @Parameter(description = "Maximum number of ranked users to return, all of them if empty") @RequestParam(value = "limit", required = false) final Integer limit) {
+    List<RankingUser> userRanking = exerciseService.ranking(userIds, offset, limit == null ? Integer.MAX_VALUE : limit);
+    // flushed when the buffer of the response fills up, not after every user
+    ObjectWriter writer = objectMapper.writerFor(RankingUserDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    StreamingResponseBody body = outputStream -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.writeStartArray();
+        for (RankingUser rankingUser : userRanking) {
+          writer.writeValue(generator, RankingUserDTO.of(rankingUser));
+        }
+        generator.writeEndArray();
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
 }
@@ -0,0 +1,73 @@
+package com.exercise.ranking.facade.dto;
+
+import com.exercise.ranking.model.ExerciseBatchResult;
+
+/**
+ * Data transfer object for the {@link ExerciseBatchResult} of the exercise at a position of the
+ * batch.
+ */
+public class ExerciseBatchItemDTO {
+
+  /**
+   * Position of the exercise in the batch.
+   */
+  private int index;
+
+  /**
+   * Whether the exercise was created or why it was rejected.
+   */
+  private ExerciseBatchResult.Status status;
+
+  /**
+   * The created exercise with its id, empty if it was rejected.
+   */
+  private ExerciseDTO exercise;
+
+  /**
+   * Why the exercise was rejected, empty if it was created.
+   */
+  private String message;
+
+  public static ExerciseBatchItemDTO of(final int index, final ExerciseBatchResult result) {
+    ExerciseBatchItemDTO dto = new ExerciseBatchItemDTO();
+    dto.index = index;
+    dto.status = result.getStatus();
+    if (result.getExercise() != null) {
+      dto.exercise = ExerciseDTO.fromExercise(result.getExercise());
+    }
+    dto.message = result.getMessage();
+    return dto;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public void setIndex(final int index) {
+    this.index = index;
+  }
+
+  public ExerciseBatchResult.Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(final ExerciseBatchResult.Status status) {
+    this.status = status;
+  }
+
+  public ExerciseDTO getExercise() {
+    return exercise;
+  }
+
+  public void setExercise(final ExerciseDTO exercise) {
+    this.exercise = exercise;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(final String message) {
+    this.message = message;
+  }
+}
@@ -0,0 +1,132 @@
+package com.exercise.ranking.facade.dto;
+
+import com.exercise.ranking.service.importer.ImportFormat;
+import com.exercise.ranking.service.importer.ImportJob;
+
+/**
+ * Data transfer object for the progress of an {@link ImportJob}.
+ */
+public class ImportJobDTO {
+
+  private String id;
+
+  /**
+   * Name of the imported file.
+   */
+  private String file;
+
+  private ImportFormat format;
+
+  private ImportJob.Status status;
+
+  /**
+   * Lines read from the file, including the ones of previous runs of the import.
+   */
+  private long lines;
+
+  /**
+   * Exercises persisted.
+   */
+  private long imported;
+
+  /**
+   * Rows that were invalid or overlapped another exercise, listed in the rejected rows file.
+   */
+  private long rejected;
+
+  /**
+   * Lines read per second by the current run of the import.
+   */
+  private double rowsPerSecond;
+
+  /**
+   * Why the import failed, empty otherwise.
+   */
+  private String message;
+
+  public static ImportJobDTO of(final ImportJob job) {
+    ImportJobDTO dto = new ImportJobDTO();
+    dto.id = job.getId();
+    dto.file = job.getFile().getFileName().toString();
+    dto.format = job.getFormat();
+    dto.status = job.getStatus();
+    dto.lines = job.getLines();
+    dto.imported = job.getImported();
+    dto.rejected = job.getRejected();
+    dto.rowsPerSecond = job.getRowsPerSecond();
+    dto.message = job.getMessage();
+    return dto;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void setId(final String id) {
+    this.id = id;
+  }
+
+  public String getFile() {
+    return file;
+  }
+
+  public void setFile(final String file) {
+    this.file = file;
+  }
+
+  public ImportFormat getFormat() {
+    return format;
+  }
+
+  public void setFormat(final ImportFormat format) {
+    this.format = format;
+  }
+
+  public ImportJob.Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(final ImportJob.Status status) {
+    this.status = status;
+  }
+
+  public long getLines() {
+    return lines;
+  }
+
+  public void setLines(final long lines) {
+    this.lines = lines;
+  }
+
+  public long getImported() {
+    return imported;
+  }
+
+  public void setImported(final long imported) {
+    this.imported = imported;
+  }
+
+  public long getRejected() {
+    return rejected;
+  }
+
+  public void setRejected(final long rejected) {
+    this.rejected = rejected;
+  }
+
+  public double getRowsPerSecond() {
+    return rowsPerSecond;
+  }
+
+  public void setRowsPerSecond(final double rowsPerSecond) {
+    this.rowsPerSecond = rowsPerSecond;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(final String message) {
+    this.message = message;
+  }
+}
@@ -0,0 +1,26 @@
+package com.exercise.ranking.facade.dto;
+
+/**
+ * Data transfer object for an exercise accepted by the asynchronous insert, before it is persisted.
+ */
+public class IngestTicketDTO {
+
+  /**
+   * Id the exercise is persisted with, to update it once it is persisted.
+   */
+  private Long id;
+
+  public static IngestTicketDTO of(final Long id) {
+    IngestTicketDTO dto = new IngestTicketDTO();
+    dto.id = id;
+    return dto;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(final Long id) {
+    this.id = id;
+  }
+}
@@ -0,0 +1,169 @@
+package com.exercise.ranking.logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access log written off the request threads.
+ * <p>
+ * The request threads claim a slot of a preallocated ring buffer with a compare-and-set, copy the
+ * fields of the request into it and publish the slot; nothing is formatted nor allocated on their
+ * side, and no lock is taken. When the buffer is full, the entry is dropped and counted rather than
+ * making the request wait. A daemon thread drains the published slots in order, formats them and
+ * writes them to the {@code access} logger.
+ */
+public class AccessLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger("access");
+
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Entry[] entries;
+
+    /**
+     * The sequence last published in every slot, -1 for none.
+     */
+    private final AtomicLongArray published;
+
+    private final int mask;
+
+    /**
+     * The next sequence to claim.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The next sequence to drain, only written by the drainer.
+     */
+    private volatile long tail;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final Consumer<String> sink;
+
+    private final Thread drainer;
+
+    private volatile boolean running = true;
+
+    public AccessLog(final int capacity) {
+        this(capacity, LOG::info);
+    }
+
+    /**
+     * @param capacity the number of entries of the ring buffer, rounded up to a power of two.
+     * @param sink     where the formatted entries are written, on the drainer thread.
+     */
+    public AccessLog(final int capacity, final Consumer<String> sink) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.entries = new Entry[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.sink = sink;
+        this.drainer = new Thread(this::drain, "access-log");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * Adds an entry to the log, unless the buffer is full.
+     *
+     * @param method       the HTTP method.
+     * @param uriTemplate  the URI template of the handler, or the URI if no handler matched.
+     * @param status       the response status.
+     * @param latencyNanos the time spent on the request.
+     * @param userIds      the number of user ids of the request, -1 for none.
+     * @return {@code false} if the entry was dropped.
+     */
+    public boolean record(final String method, final String uriTemplate, final int status, final long latencyNanos, final int userIds) {
+        long claim;
+        do {
+            claim = head.get();
+            if (claim - tail >= entries.length) {
+                dropped.increment();
+                return false;
+            }
+        } while (!head.compareAndSet(claim, claim + 1));
+        int slot = (int) claim & mask;
+        Entry entry = entries[slot];
+        entry.method = method;
+        entry.uriTemplate = uriTemplate;
+        entry.status = status;
+        entry.latencyNanos = latencyNanos;
+        entry.userIds = userIds;
+        published.lazySet(slot, claim);
+        return true;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the drainer once the published entries are written.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(drainer);
+        drainer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder(128);
+        while (true) {
+            boolean stopping = !running;
+            long next = tail;
+            int slot = (int) next & mask;
+            if (published.get(slot) != next) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+                continue;
+            }
+            Entry entry = entries[slot];
+            line.setLength(0);
+            line.append(entry.method).append(' ').append(entry.uriTemplate)
+                    .append(" status=").append(entry.status)
+                    .append(" latency_ms=").append(entry.latencyNanos / 1_000_000).append('.');
+            long micros = entry.latencyNanos / 1_000 % 1_000;
+            line.append(micros < 100 ? (micros < 10 ? "00" : "0") : "").append(micros);
+            if (entry.userIds >= 0) {
+                line.append(" user_ids=").append(entry.userIds);
+            }
+            // the slot is free for the producers once it is formatted
+            tail = next + 1;
+            try {
+                sink.accept(line.toString());
+            } catch (RuntimeException e) {
+                LOG.warn("Access log entry could not be written", e);
+            }
+        }
+    }
+
+    /**
+     * Mutable slot of the ring buffer, reused by every entry written to it.
+     */
+    private static final class Entry {
+
+        private String method;
+
+        private String uriTemplate;
+
+        private int status;
+
+        private long latencyNanos;
+
+        private int userIds;
+    }
+}
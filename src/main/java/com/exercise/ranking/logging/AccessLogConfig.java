@@ -0,0 +1,38 @@
+package com.exercise.ranking.logging;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Registers the {@link AccessLogInterceptor} on every handler.
+ */
+@Configuration
+@ConditionalOnProperty(name = "ranking.access-log.enabled", havingValue = "true", matchIfMissing = true)
+public class AccessLogConfig implements WebMvcConfigurer {
+
+    private final AccessLogInterceptor accessLogInterceptor;
+
+    public AccessLogConfig(final AccessLog accessLog,
+            @Value("${ranking.access-log.sampled-uri-templates:/ranking}") final String[] sampledUriTemplates,
+            @Value("${ranking.access-log.sample-rate:0.1}") final double sampleRate,
+            @Value("${ranking.access-log.slow-threshold-ms:1000}") final long slowThresholdMillis) {
+        this.accessLogInterceptor = new AccessLogInterceptor(accessLog, sampledUriTemplates, sampleRate,
+                TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis));
+    }
+
+    @Bean(destroyMethod = "stop")
+    public static AccessLog accessLog(@Value("${ranking.access-log.capacity:8192}") final int capacity) {
+        return new AccessLog(capacity);
+    }
+
+    @Override
+    public void addInterceptors(final InterceptorRegistry registry) {
+        registry.addInterceptor(accessLogInterceptor);
+    }
+}
@@ -0,0 +1,102 @@
+package com.exercise.ranking.logging;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Records every request in the {@link AccessLog}: method, URI template, status, latency and the
+ * number of {@code userIds}.
+ * <p>
+ * The requests of the sampled URI templates are only recorded with the sample rate, except the
+ * failed and the slow ones, so that the high-volume endpoints do not flood the log.
+ * <p>
+ * The error dispatch of the container, which renders a failed request on {@code /error}, is not
+ * recorded: the failed request is already recorded by its own dispatch.
+ */
+public class AccessLogInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String START_ATTRIBUTE = AccessLogInterceptor.class.getName() + ".start";
+
+    private final AccessLog accessLog;
+
+    private final Set<String> sampledUriTemplates;
+
+    private final double sampleRate;
+
+    private final long slowNanos;
+
+    /**
+     * @param accessLog           the log to record the requests in.
+     * @param sampledUriTemplates the URI templates that are sampled.
+     * @param sampleRate          the share of the requests of the sampled URI templates recorded.
+     * @param slowNanos           the latency from which the requests are always recorded.
+     */
+    public AccessLogInterceptor(final AccessLog accessLog, final String[] sampledUriTemplates, final double sampleRate,
+            final long slowNanos) {
+        this.accessLog = accessLog;
+        this.sampledUriTemplates = new HashSet<>(Arrays.asList(sampledUriTemplates));
+        this.sampleRate = sampleRate;
+        this.slowNanos = slowNanos;
+    }
+
+    @Override
+    public boolean preHandle(final HttpServletRequest request, final HttpServletResponse response, final Object handler) {
+        if (request.getDispatcherType() == DispatcherType.ERROR) {
+            return true;
+        }
+        // the dispatch of an asynchronous result goes through the interceptors again
+        if (request.getAttribute(START_ATTRIBUTE) == null) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(final HttpServletRequest request, final HttpServletResponse response, final Object handler,
+            final Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (start == null || request.getDispatcherType() == DispatcherType.ERROR) {
+            return;
+        }
+        long latencyNanos = System.nanoTime() - (Long) start;
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uriTemplate = pattern != null ? pattern.toString() : request.getRequestURI();
+        int status = ex != null && response.getStatus() < 400 ? 500 : response.getStatus();
+        if (status < 400 && latencyNanos < slowNanos && sampledUriTemplates.contains(uriTemplate)
+                && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        accessLog.record(request.getMethod(), uriTemplate, status, latencyNanos, userIdsOf(request));
+    }
+
+    /**
+     * Counts the user ids of the comma separated or repeated {@code userIds} parameter without
+     * splitting it.
+     */
+    private static int userIdsOf(final HttpServletRequest request) {
+        String[] values = request.getParameterValues("userIds");
+        if (values == null) {
+            return -1;
+        }
+        int count = 0;
+        for (String value : values) {
+            if (!value.isEmpty()) {
+                count++;
+                for (int i = 0; i < value.length(); i++) {
+                    if (value.charAt(i) == ',') {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -9,20 +9,29 @@ import java.time.LocalDateTime;
 import java.util.Objects;
 import javax.persistence.*;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
 /**
  * Exercise class represent exercise entity.
  */
 @Entity
 @Table(
-        name = "exercises", indexes = { @Index(name = "userId", columnList = "userId", unique = false) }
+        name = "exercises", indexes = { @Index(name = "userIdStartTime", columnList = "userId, startTime", unique = false),
+        @Index(name = "startTime", columnList = "startTime", unique = false) }
 )
 public class Exercise {
 
   /**
-   * Id of the exercise.
+   * Id of the exercise. Taken from a pooled sequence, so that a batch of inserts needs one sequence
+   * call per 50 ids and can be written in JDBC batches, unless it was assigned before the insert.
    */
   @Id
-  @GeneratedValue
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "exerciseIdSequence")
+  @GenericGenerator(name = "exerciseIdSequence", strategy = "com.exercise.ranking.model.ExerciseIdGenerator", parameters = {
+      @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "exercises_id_seq"),
+      @Parameter(name = SequenceStyleGenerator.INCREMENT_PARAM, value = "50")})
   private Long id;
 
   /**
@@ -57,6 +66,12 @@ public class Exercise {
    */
   private Double calories;
 
+  /**
+   * Version of the exercise, incremented by every update and checked by the update.
+   */
+  @Version
+  private Long version;
+
   public Long getId() {
     return id;
   }
@@ -113,6 +128,14 @@ public class Exercise {
     this.calories = calories;
   }
 
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(final Long version) {
+    this.version = version;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) {
@@ -136,7 +159,7 @@ public class Exercise {
   public String toString() {
     return "Exercise{" + "id=" + id + ", userId=" + userId + ", description='" + description + '\''
         + ", type=" + type + ", startTime=" + startTime + ", duration=" + duration + ", calories="
-        + calories + '}';
+        + calories + ", version=" + version + '}';
   }
 }
 
@@ -0,0 +1,59 @@
+package com.exercise.ranking.model;
+
+/**
+ * Result of the insert of one exercise of a batch.
+ */
+public class ExerciseBatchResult {
+
+  /**
+   * Outcome of the insert of one exercise of a batch.
+   */
+  public enum Status {
+    CREATED,
+    CONFLICT,
+    INVALID
+  }
+
+  private final Status status;
+
+  /**
+   * The persisted exercise, {@code null} if it was rejected.
+   */
+  private final Exercise exercise;
+
+  /**
+   * Why the exercise was rejected, {@code null} if it was created.
+   */
+  private final String message;
+
+  public ExerciseBatchResult(final Status status, final Exercise exercise, final String message) {
+    this.status = status;
+    this.exercise = exercise;
+    this.message = message;
+  }
+
+  public static ExerciseBatchResult created(final Exercise exercise) {
+    return new ExerciseBatchResult(Status.CREATED, exercise, null);
+  }
+
+  public static ExerciseBatchResult rejected(final Status status, final String message) {
+    return new ExerciseBatchResult(status, null, message);
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public Exercise getExercise() {
+    return exercise;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return "ExerciseBatchResult{" + "status=" + status + ", exercise=" + exercise + ", message='" + message + '\'' + '}';
+  }
+}
@@ -0,0 +1,22 @@
+package com.exercise.ranking.model;
+
+import java.io.Serializable;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/**
+ * Pooled sequence generator of the exercise ids that keeps the id of an exercise that was given
+ * one before it was persisted, such as the exercises of the asynchronous insert, which are
+ * acknowledged with their id before they are written.
+ */
+public class ExerciseIdGenerator extends SequenceStyleGenerator {
+
+  @Override
+  public Serializable generate(final SharedSessionContractImplementor session, final Object object) {
+    if (object instanceof Exercise && ((Exercise) object).getId() != null) {
+      return ((Exercise) object).getId();
+    }
+    return super.generate(session, object);
+  }
+}
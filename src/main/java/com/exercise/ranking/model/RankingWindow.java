@@ -0,0 +1,43 @@
+package com.exercise.ranking.model;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Users ranked over the past 28 days, and optionally the users who didn't train in the period with
+ * 0.0 points and the end date and time of their latest exercise ever.
+ */
+public class RankingWindow {
+
+  /**
+   * Users with exercises in the period, unsorted.
+   */
+  private final Collection<RankingUser> rankedUsers;
+
+  /**
+   * Users without exercises in the period, {@code null} if they were not looked up.
+   */
+  private final List<RankingUser> idleUsers;
+
+  public RankingWindow(final Collection<RankingUser> rankedUsers, final List<RankingUser> idleUsers) {
+    this.rankedUsers = rankedUsers;
+    this.idleUsers = idleUsers;
+  }
+
+  public static RankingWindow of(final Collection<RankingUser> rankedUsers) {
+    return new RankingWindow(rankedUsers, null);
+  }
+
+  public Collection<RankingUser> getRankedUsers() {
+    return rankedUsers;
+  }
+
+  public List<RankingUser> getIdleUsers() {
+    return idleUsers;
+  }
+
+  @Override
+  public String toString() {
+    return "RankingWindow{" + "rankedUsers=" + rankedUsers + ", idleUsers=" + idleUsers + '}';
+  }
+}
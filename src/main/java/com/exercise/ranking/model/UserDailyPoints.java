@@ -0,0 +1,102 @@
+package com.exercise.ranking.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+
+/**
+ * Rollup of the exercises a user started on one day, used to rank users without reading their
+ * exercises.
+ */
+@Entity
+@Table(name = "user_daily_points")
+@IdClass(UserDailyPointsId.class)
+public class UserDailyPoints {
+
+  /**
+   * User who did the exercises.
+   */
+  @Id
+  private Long userId;
+
+  /**
+   * Day when the exercises started.
+   */
+  @Id
+  private LocalDate exerciseDay;
+
+  /**
+   * Points from the exercises of the day.
+   */
+  private double points;
+
+  /**
+   * The end date and time of the latest exercise of the day.
+   */
+  private LocalDateTime latestEnd;
+
+  public UserDailyPoints() {
+  }
+
+  public UserDailyPoints(final Long userId, final LocalDate exerciseDay) {
+    this.userId = userId;
+    this.exerciseDay = exerciseDay;
+  }
+
+  /**
+   * Adds the points and the end time of an exercise of the day.
+   *
+   * @param exercisePoints the points of the exercise.
+   * @param endTime        the end date and time of the exercise.
+   */
+  public void add(final double exercisePoints, final LocalDateTime endTime) {
+    points += exercisePoints;
+    if (latestEnd == null || latestEnd.isBefore(endTime)) {
+      latestEnd = endTime;
+    }
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public LocalDate getExerciseDay() {
+    return exerciseDay;
+  }
+
+  public double getPoints() {
+    return points;
+  }
+
+  public LocalDateTime getLatestEnd() {
+    return latestEnd;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final UserDailyPoints that = (UserDailyPoints) o;
+    return userId.equals(that.userId) && exerciseDay.equals(that.exerciseDay) && (points == that.points)
+        && Objects.equals(latestEnd, that.latestEnd);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(userId, exerciseDay, points, latestEnd);
+  }
+
+  @Override
+  public String toString() {
+    return "UserDailyPoints{" + "userId=" + userId + ", exerciseDay=" + exerciseDay + ", points=" + points
+        + ", latestEnd=" + latestEnd + '}';
+  }
+}
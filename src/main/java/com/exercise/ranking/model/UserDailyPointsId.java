@@ -0,0 +1,55 @@
+package com.exercise.ranking.model;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Identifier of {@link UserDailyPoints}, the user and the day.
+ */
+public class UserDailyPointsId implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private Long userId;
+
+  private LocalDate exerciseDay;
+
+  public UserDailyPointsId() {
+  }
+
+  public UserDailyPointsId(final Long userId, final LocalDate exerciseDay) {
+    this.userId = userId;
+    this.exerciseDay = exerciseDay;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public LocalDate getExerciseDay() {
+    return exerciseDay;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    final UserDailyPointsId that = (UserDailyPointsId) o;
+    return userId.equals(that.userId) && exerciseDay.equals(that.exerciseDay);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(userId, exerciseDay);
+  }
+
+  @Override
+  public String toString() {
+    return "UserDailyPointsId{" + "userId=" + userId + ", exerciseDay=" + exerciseDay + '}';
+  }
+}
@@ -2,16 +2,32 @@ package com.exercise.ranking.service;
 
 import com.exercise.ranking.dao.ExerciseRepository;
 import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseBatchResult;
 import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+import com.exercise.ranking.service.cache.RankingCache;
+import com.exercise.ranking.service.cache.UserPointsCache;
+import com.exercise.ranking.service.event.ExerciseBatchSavedEvent;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
 import com.exercise.ranking.service.exception.ConflictException;
 import com.exercise.ranking.service.exception.NotFoundException;
+import com.exercise.ranking.service.exception.PreconditionFailedException;
 import com.exercise.ranking.service.exception.SecurityException;
+import com.exercise.ranking.service.index.ExerciseIntervalIndex;
+import com.exercise.ranking.service.lock.UserLockStripes;
+import com.exercise.ranking.service.metrics.ExerciseMetrics;
+import com.exercise.ranking.service.ranking.RankingAggregator;
+import com.exercise.ranking.service.ranking.RankingOrder;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 /**
@@ -29,14 +45,72 @@ import org.springframework.stereotype.Service;
  * Note: the past 28 days are the days between the beginning of the day that is 28 days in past and
  * the beginning of today. Let's assume that today is 24 June 2021 at 2PM, then the range will be 27
  * May 2021 00:00 until 24 June 2021 00:00.
+ * <p>
+ * The points are aggregated by the {@link RankingAggregator} selected with {@code ranking.strategy}.
+ * Every saved exercise is published as an {@link ExerciseSavedEvent}, and every write that saved
+ * exercises as one {@link ExerciseBatchSavedEvent} after them.
+ * <p>
+ * The writes of a user hold the lock of its {@link UserLockStripes stripe} from the conflict check
+ * to the save, so that two concurrent writes of the same user cannot both pass the check. The
+ * writes of users on different stripes run in parallel.
+ * <p>
+ * When the {@link ExerciseIntervalIndex} is enabled, the inserts check and reserve their timeline in
+ * the index under the same lock, so that they also see the exercises queued by the asynchronous
+ * insert and not persisted yet. A reserved timeline that cannot be saved is discarded.
+ * <p>
+ * The phases of the rankings and of the writes are timed by the {@link ExerciseMetrics}.
  */
 @Service
 public class ExerciseService {
 
+    /**
+     * The latest exercise starting before the end of the new one, and a second one in case the
+     * first is the exercise being updated.
+     */
+    private static final Pageable CONFLICT_CANDIDATES = PageRequest.of(0, 2);
+
+    /**
+     * The latest exercise starting before the first exercise of a batch.
+     */
+    private static final Pageable LATEST_BEFORE_BATCH = PageRequest.of(0, 1);
+
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+
+    private static final String CONFLICT_MESSAGE = "An existing exercise timeline for this user has a conflict with the new exercise timeline";
+
+    /**
+     * Order of non overlapping timelines by start, and by end for the zero duration ones.
+     */
+    private static final Comparator<Exercise> TIMELINE_ORDER = Comparator.comparing(Exercise::getStartTime)
+            .thenComparing(e -> e.getStartTime().plusSeconds(e.getDuration()));
+
     private final ExerciseRepository exerciseRepository;
 
-    public ExerciseService(final ExerciseRepository exerciseRepository) {
+    private final ExerciseIntervalIndex exerciseIntervalIndex;
+
+    private final RankingAggregator rankingAggregator;
+
+    private final RankingCache rankingCache;
+
+    private final UserPointsCache userPointsCache;
+
+    private final UserLockStripes userLockStripes;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ExerciseMetrics exerciseMetrics;
+
+    public ExerciseService(final ExerciseRepository exerciseRepository, final ExerciseIntervalIndex exerciseIntervalIndex,
+            final RankingAggregator rankingAggregator, final RankingCache rankingCache, final UserPointsCache userPointsCache,
+            final UserLockStripes userLockStripes, final ApplicationEventPublisher eventPublisher, final ExerciseMetrics exerciseMetrics) {
         this.exerciseRepository = exerciseRepository;
+        this.exerciseIntervalIndex = exerciseIntervalIndex;
+        this.rankingAggregator = rankingAggregator;
+        this.rankingCache = rankingCache;
+        this.userPointsCache = userPointsCache;
+        this.userLockStripes = userLockStripes;
+        this.eventPublisher = eventPublisher;
+        this.exerciseMetrics = exerciseMetrics;
     }
 
     /**
@@ -50,13 +124,135 @@ public class ExerciseService {
      * @throws ConflictException if there is an existing exercise for the exercise's period.
      */
     public Exercise insert(final Exercise exercise) throws ConflictException {
-        List<Exercise> exercisesForUserId = exerciseRepository.findByUserId(exercise.getUserId());
-        checkConflictExercises(exercisesForUserId, exercise);
-        exerciseRepository.save(exercise);
+        long start = System.nanoTime();
+        try {
+            return userLockStripes.withLock(exercise.getUserId(), () -> insertLocked(exercise));
+        } finally {
+            ExerciseMetrics.recordSince(exerciseMetrics.insert(), start);
+        }
+    }
+
+    private Exercise insertLocked(final Exercise exercise) {
+        long phaseStart = System.nanoTime();
+        boolean reserved = exerciseIntervalIndex.isEnabled();
+        try {
+            if (reserved) {
+                reserve(exercise);
+            } else {
+                checkConflictExercises(exercise);
+            }
+        } catch (ConflictException e) {
+            exerciseMetrics.insertConflicts().increment();
+            throw e;
+        }
+        phaseStart = ExerciseMetrics.recordSince(exerciseMetrics.insertConflictCheck(), phaseStart);
+        Set<Long> writtenUserIds = Collections.singleton(exercise.getUserId());
+        userPointsCache.writeStarted(writtenUserIds);
+        try {
+            try {
+                exerciseRepository.save(exercise);
+            } catch (RuntimeException e) {
+                if (reserved) {
+                    exerciseIntervalIndex.discard(exercise);
+                }
+                throw e;
+            }
+            exerciseIntervalIndex.put(exercise);
+            publishSaved(Collections.singletonList(new ExerciseSavedEvent(null, exercise)));
+        } finally {
+            userPointsCache.writeFinished(writtenUserIds);
+        }
+        ExerciseMetrics.recordSince(exerciseMetrics.insertSave(), phaseStart);
         return exercise;
     }
 
 
+    /**
+     * Persists the exercises of a batch that do not overlap an existing exercise, nor an earlier
+     * exercise of the batch.
+     * <p>
+     * The exercises are grouped by user, and the existing exercises of a user are read once for the
+     * whole period of the batch, or the exercises are checked and reserved in the
+     * {@link ExerciseIntervalIndex} when it is enabled. The accepted exercises are saved with a
+     * single {@code saveAll}, so that they are written in JDBC batches.
+     *
+     * @param exercises the exercise objects.
+     * @return the result of every exercise, in the order of the batch.
+     */
+    public List<ExerciseBatchResult> insertAll(final List<Exercise> exercises) {
+        Set<Long> userIds = exercises.stream().map(Exercise::getUserId).collect(Collectors.toSet());
+        return userLockStripes.withLocks(userIds, () -> insertAllLocked(exercises, exerciseIntervalIndex.isEnabled()));
+    }
+
+
+    /**
+     * Persists the exercises of a batch whose timelines are already reserved in the
+     * {@link ExerciseIntervalIndex}, see {@link #insertAll(List)}. They are only checked against
+     * the exercises in the database, which can only conflict with an exercise written by another
+     * instance.
+     *
+     * @param exercises the exercise objects, reserved with
+     *                  {@link ExerciseIntervalIndex#tryPut(Exercise)}.
+     * @return the result of every exercise, in the order of the batch.
+     */
+    public List<ExerciseBatchResult> insertReserved(final List<Exercise> exercises) {
+        Set<Long> userIds = exercises.stream().map(Exercise::getUserId).collect(Collectors.toSet());
+        return userLockStripes.withLocks(userIds, () -> insertAllLocked(exercises, false));
+    }
+
+    /**
+     * @param reserve whether the exercises are checked and reserved in the index rather than
+     *                checked against the database.
+     */
+    private List<ExerciseBatchResult> insertAllLocked(final List<Exercise> exercises, final boolean reserve) {
+        ExerciseBatchResult[] results = new ExerciseBatchResult[exercises.size()];
+        Map<Long, List<Integer>> positionsByUser = new LinkedHashMap<>();
+        for (int i = 0; i < exercises.size(); i++) {
+            positionsByUser.computeIfAbsent(exercises.get(i).getUserId(), userId -> new ArrayList<>()).add(i);
+        }
+        List<Exercise> accepted = new ArrayList<>();
+        int conflicts = 0;
+        for (Map.Entry<Long, List<Integer>> user : positionsByUser.entrySet()) {
+            NavigableSet<Exercise> timeline = reserve ? null : loadTimeline(user.getKey(), exercises, user.getValue());
+            for (int position : user.getValue()) {
+                Exercise exercise = exercises.get(position);
+                if (reserve ? !exerciseIntervalIndex.tryPut(exercise) : overlaps(timeline, exercise)) {
+                    results[position] = ExerciseBatchResult.rejected(ExerciseBatchResult.Status.CONFLICT, CONFLICT_MESSAGE);
+                    conflicts++;
+                } else {
+                    if (!reserve) {
+                        timeline.add(exercise);
+                    }
+                    accepted.add(exercise);
+                    results[position] = ExerciseBatchResult.created(exercise);
+                }
+            }
+        }
+        exerciseMetrics.batchConflicts().increment(conflicts);
+        Set<Long> writtenUserIds = accepted.stream().map(Exercise::getUserId).collect(Collectors.toSet());
+        userPointsCache.writeStarted(writtenUserIds);
+        try {
+            try {
+                exerciseRepository.saveAll(accepted);
+            } catch (RuntimeException e) {
+                if (reserve) {
+                    accepted.forEach(exerciseIntervalIndex::discard);
+                }
+                throw e;
+            }
+            List<ExerciseSavedEvent> events = new ArrayList<>(accepted.size());
+            for (Exercise exercise : accepted) {
+                exerciseIntervalIndex.put(exercise);
+                events.add(new ExerciseSavedEvent(null, exercise));
+            }
+            publishSaved(events);
+        } finally {
+            userPointsCache.writeFinished(writtenUserIds);
+        }
+        return Arrays.asList(results);
+    }
+
+
     /**
      * Saves the exercise for a given id. Not all fields can be updated, only description, startTime,
      * duration, calories.
@@ -74,22 +270,110 @@ public class ExerciseService {
      */
     public Exercise update(final Long exerciseId, final Exercise exercise)
             throws IllegalArgumentException, NotFoundException, SecurityException, ConflictException {
+        return update(exerciseId, exercise, (Set<Long>) null);
+    }
 
+
+    /**
+     * Saves the exercise for a given id if it is still at the expected version, see
+     * {@link #update(Long, Exercise)}.
+     * <p>
+     * The update is optimistic: the version of the exercise is checked when it is saved, without
+     * locking the row. Without an expected version, an update that lost the race against a
+     * concurrent update of another instance is applied again on the new version, up to
+     * {@value #MAX_UPDATE_ATTEMPTS} times.
+     *
+     * @param exerciseId      the id of the exercise to update.
+     * @param exercise        the exercise object.
+     * @param expectedVersion the version the update is based on, or {@code null} for any version.
+     * @return the save exercise, with its new version.
+     * @throws IllegalArgumentException    if the exercise type is different to a persisted one.
+     * @throws NotFoundException           if the given exercise id is not present in the database.
+     * @throws SecurityException           if the exercise's user is different to a persisted one.
+     * @throws ConflictException           if there is an existing exercise for the exercise's period.
+     * @throws PreconditionFailedException if the exercise is not at the expected version, or was
+     *                                     updated concurrently too many times.
+     */
+    public Exercise update(final Long exerciseId, final Exercise exercise, final Long expectedVersion)
+            throws IllegalArgumentException, NotFoundException, SecurityException, ConflictException, PreconditionFailedException {
+        return update(exerciseId, exercise, expectedVersion == null ? null : Collections.singleton(expectedVersion));
+    }
+
+
+    /**
+     * Saves the exercise for a given id if it is still at one of the expected versions, see
+     * {@link #update(Long, Exercise, Long)}.
+     *
+     * @param exerciseId       the id of the exercise to update.
+     * @param exercise         the exercise object.
+     * @param expectedVersions the versions the update can be based on, or {@code null} for any
+     *                         version.
+     * @return the save exercise, with its new version.
+     * @throws IllegalArgumentException    if the exercise type is different to a persisted one.
+     * @throws NotFoundException           if the given exercise id is not present in the database.
+     * @throws SecurityException           if the exercise's user is different to a persisted one.
+     * @throws ConflictException           if there is an existing exercise for the exercise's period.
+     * @throws PreconditionFailedException if the exercise is not at one of the expected versions, or
+     *                                     was updated concurrently too many times.
+     */
+    public Exercise update(final Long exerciseId, final Exercise exercise, final Set<Long> expectedVersions)
+            throws IllegalArgumentException, NotFoundException, SecurityException, ConflictException, PreconditionFailedException {
+        long start = System.nanoTime();
+        try {
+            return userLockStripes.withLock(exercise.getUserId(), () -> {
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        return updateLocked(exerciseId, exercise, expectedVersions);
+                    } catch (OptimisticLockingFailureException e) {
+                        if (expectedVersions != null || attempt == MAX_UPDATE_ATTEMPTS) {
+                            throw new PreconditionFailedException("Exercise with id: " + exerciseId + " was updated concurrently");
+                        }
+                    }
+                }
+            });
+        } finally {
+            ExerciseMetrics.recordSince(exerciseMetrics.update(), start);
+        }
+    }
+
+    private Exercise updateLocked(final Long exerciseId, final Exercise exercise, final Set<Long> expectedVersions) {
+        long phaseStart = System.nanoTime();
         Optional<Exercise> optionalExercise = exerciseRepository.findById(exerciseId);
+        phaseStart = ExerciseMetrics.recordSince(exerciseMetrics.updateLoad(), phaseStart);
         if (optionalExercise.isEmpty()) {
+            exerciseMetrics.notFound().increment();
             throw new NotFoundException("Exercise with id: " + exerciseId + " not found");
         }
+        if (expectedVersions != null && !expectedVersions.contains(optionalExercise.get().getVersion())) {
+            throw new PreconditionFailedException("Exercise with id: " + exerciseId + " is not at version " + expectedVersions);
+        }
         if (!(optionalExercise.get().getType().equals(exercise.getType()))) {
             throw new IllegalArgumentException("Already existing exercise Type does not match with the input");
         }
         if (!(optionalExercise.get().getUserId().equals(exercise.getUserId()))) {
             throw new SecurityException("Already existing user for this exercise does not match with the input");
         }
+        Exercise previousExercise = copyOf(optionalExercise.get());
         Exercise existingExercise = mapUpdatesToExistingExercise(optionalExercise.get(), exercise);
-        List<Exercise> exercisesForUserId = exerciseRepository.findByUserId(existingExercise.getUserId());
-        checkConflictExercises(exercisesForUserId, existingExercise);
-        exerciseRepository.save(existingExercise);
-        return existingExercise;
+        try {
+            checkConflictExercises(existingExercise);
+        } catch (ConflictException e) {
+            exerciseMetrics.updateConflicts().increment();
+            throw e;
+        }
+        phaseStart = ExerciseMetrics.recordSince(exerciseMetrics.updateConflictCheck(), phaseStart);
+        Set<Long> writtenUserIds = Collections.singleton(existingExercise.getUserId());
+        userPointsCache.writeStarted(writtenUserIds);
+        Exercise savedExercise;
+        try {
+            savedExercise = exerciseRepository.save(existingExercise);
+            exerciseIntervalIndex.put(savedExercise);
+            publishSaved(Collections.singletonList(new ExerciseSavedEvent(previousExercise, savedExercise)));
+        } finally {
+            userPointsCache.writeFinished(writtenUserIds);
+        }
+        ExerciseMetrics.recordSince(exerciseMetrics.updateSave(), phaseStart);
+        return savedExercise;
     }
 
 
@@ -105,64 +389,164 @@ public class ExerciseService {
      * exercise if points are the same.
      */
     public List<RankingUser> ranking(final Collection<Long> userIds) {
+        return ranking(userIds, 0, Integer.MAX_VALUE);
+    }
 
+
+    /**
+     * Calculates a page of the ranking for a list of users, see {@link #ranking(Collection)}.
+     * <p>
+     * Only the first {@code offset + limit} users are selected, with a bounded heap rather than a
+     * sort of all of them, and the users who didn't train in the period are only looked up when
+     * the page reaches them. The pages are cached by the {@link RankingCache}, and the points of
+     * the users by the {@link UserPointsCache}.
+     *
+     * @param userIds the list of user ids.
+     * @param offset  the number of ranked users to skip.
+     * @param limit   the maximum number of ranked users to return.
+     * @return the page, that must not be modified, of the list of {@link RankingUser} sorted in
+     * descending order by points or the end of last exercise if points are the same.
+     * @throws IllegalArgumentException if the offset or the limit is negative.
+     */
+    public List<RankingUser> ranking(final Collection<Long> userIds, final int offset, final int limit) throws IllegalArgumentException {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit cannot be negative");
+        }
+        long start = System.nanoTime();
+        exerciseMetrics.rankingUsers().record(userIds.size());
         LocalDateTime startOfToday = LocalDate.now().atStartOfDay();
-        List<Exercise> exerciseList = exerciseRepository.findByUsersAndStartTime((Set<Long>) userIds, startOfToday.minusDays(28));
-        List<RankingUser> rankedUserList = new ArrayList<>();
-        HashMap<Long, Double> exerciseMap = new HashMap<>();
-        HashMap<Long, LocalDateTime> latestExerciseTimes = new HashMap<>();
-        double points = 0;
-        boolean noCalories;
-
-        for (Exercise data : exerciseList) {
-            noCalories = false;
-            points = 0;
-            if (null == data.getCalories()) {
-                noCalories = true;
-                points = data.getDuration() * data.getType().getDurationToCaloriesRate();
-            }
-            if (exerciseMap.containsKey(data.getUserId()) && !noCalories) {
-                exerciseMap.put(data.getUserId(), exerciseMap.get(data.getUserId()) + data.getCalories());
-            } else if (exerciseMap.containsKey(data.getUserId()) && noCalories) {
-                exerciseMap.put(data.getUserId(), exerciseMap.get(data.getUserId()) + points);
-            } else if (!exerciseMap.containsKey(data.getUserId()) && !noCalories) {
-                exerciseMap.put(data.getUserId(), data.getCalories());
-            } else if (!exerciseMap.containsKey(data.getUserId()) && noCalories) {
-                exerciseMap.put(data.getUserId(), points);
-            }
-            if (latestExerciseTimes.containsKey(data.getUserId()) && latestExerciseTimes.get(data.getUserId()).isBefore(data.getStartTime().plusSeconds(data.getDuration()))) {
-                latestExerciseTimes.put(data.getUserId(), data.getStartTime().plusSeconds(data.getDuration()));
-            } else if (!(latestExerciseTimes.containsKey(data.getUserId()))) {
-                latestExerciseTimes.put(data.getUserId(), data.getStartTime().plusSeconds(data.getDuration()));
+        try {
+            return rankingCache.get(userIds, startOfToday, offset, limit, () -> rankingPage(userIds, startOfToday, offset, limit));
+        } finally {
+            ExerciseMetrics.recordSince(exerciseMetrics.ranking(), start);
+        }
+    }
+
+
+    private List<RankingUser> rankingPage(final Collection<Long> userIds, final LocalDateTime startOfToday, final int offset, final int limit) {
+        int pageEnd = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+
+        LocalDateTime windowStart = startOfToday.minusDays(28);
+        long phaseStart = System.nanoTime();
+        RankingWindow rankingWindow = userPointsCache.isEnabled()
+                ? userPointsCache.aggregate((Set<Long>) userIds, windowStart, misses -> aggregateWithIdleUsers(misses, windowStart))
+                : rankingAggregator.aggregate((Set<Long>) userIds, windowStart);
+        phaseStart = ExerciseMetrics.recordSince(exerciseMetrics.rankingAggregate(), phaseStart);
+        Collection<RankingUser> rankedUserList = rankingWindow.getRankedUsers();
+        List<RankingUser> rankedUsers = RankingOrder.top(rankedUserList, pageEnd);
+        ExerciseMetrics.recordSince(exerciseMetrics.rankingSelect(), phaseStart);
+
+        // the idle users come unordered from the database and the cache, all of them with 0 points
+        if (rankedUsers.size() < pageEnd && rankingWindow.getIdleUsers() != null) {
+            rankedUsers.addAll(RankingOrder.top(rankingWindow.getIdleUsers(), pageEnd - rankedUsers.size()));
+        } else if (rankedUsers.size() < pageEnd) {
+            Set<Long> idleUserIds = getUsersFromInputIdsWhoHaveNotExercisedInThePast28Days((Set<Long>) userIds, rankedUserList);
+            if (!idleUserIds.isEmpty()) {
+                rankedUsers.addAll(RankingOrder.top(getZeroPointsList(idleUserIds), pageEnd - rankedUsers.size()));
             }
         }
-        for (Map.Entry<Long, Double> m : exerciseMap.entrySet()) {
-            rankedUserList.add(new RankingUser(m.getKey(), m.getValue(), latestExerciseTimes.get(m.getKey())));
+        if (offset == 0 && rankedUsers.size() <= pageEnd) {
+            return rankedUsers;
         }
-        List<RankingUser> rankedUsers = rankedUserList.stream().sorted(Comparator.comparing(RankingUser::getPoints, Comparator.reverseOrder()).
-                thenComparing(RankingUser::getLatestExerciseTime, Comparator.reverseOrder())).collect(Collectors.toList());
+        return new ArrayList<>(rankedUsers.subList(Math.min(offset, rankedUsers.size()), Math.min(pageEnd, rankedUsers.size())));
+    }
+
+
+    /**
+     * Aggregates the users and always looks up their idle users, for the {@link UserPointsCache}.
+     */
+    private RankingWindow aggregateWithIdleUsers(final Set<Long> userIds, final LocalDateTime windowStart) {
+        RankingWindow rankingWindow = rankingAggregator.aggregate(userIds, windowStart);
+        if (rankingWindow.getIdleUsers() != null) {
+            return rankingWindow;
+        }
+        Set<Long> idleUserIds = getUsersFromInputIdsWhoHaveNotExercisedInThePast28Days(userIds, rankingWindow.getRankedUsers());
+        List<RankingUser> idleUsers = idleUserIds.isEmpty() ? new ArrayList<>() : getZeroPointsList(idleUserIds);
+        return new RankingWindow(rankingWindow.getRankedUsers(), idleUsers);
+    }
 
-        List<RankingUser> zeroPointUsers = getZeroPointsList(getUsersFromInputIdsWhoHaveNotExercisedInThePast28Days((Set<Long>) userIds, exerciseList));
-        rankedUsers.addAll(zeroPointUsers);
-        return rankedUsers;
+    /**
+     * Publishes the event of every saved exercise, then the event of the whole write if it saved
+     * any exercise.
+     */
+    private void publishSaved(final List<ExerciseSavedEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        events.forEach(eventPublisher::publishEvent);
+        eventPublisher.publishEvent(new ExerciseBatchSavedEvent(events));
+    }
+
+    /**
+     * Checks the exercise against the index, with the pending exercises, and reserves its timeline.
+     */
+    private void reserve(final Exercise exercise) {
+        if (!exerciseIntervalIndex.tryPut(exercise)) {
+            throw new ConflictException(CONFLICT_MESSAGE);
+        }
     }
 
+    private void checkConflictExercises(Exercise inputExercise) {
+        if (exerciseIntervalIndex.isEnabled()) {
+            if (exerciseIntervalIndex.overlaps(inputExercise)) {
+                throw new ConflictException(CONFLICT_MESSAGE);
+            }
+            return;
+        }
+        LocalDateTime endNew = inputExercise.getStartTime().plusSeconds(inputExercise.getDuration());
+        checkConflictExercises(exerciseRepository.findLatestStartingBefore(inputExercise.getUserId(), endNew, CONFLICT_CANDIDATES), inputExercise);
+    }
 
     private void checkConflictExercises(List<Exercise> existingList, Exercise inputExercise) {
         if (!existingList.isEmpty()) {
             LocalDateTime startExisting, endExisting, startNew, endNew;
             for (Exercise ex : existingList) {
+                if (ex.getId() != null && ex.getId().equals(inputExercise.getId())) {
+                    continue;
+                }
                 startExisting = ex.getStartTime();
                 endExisting = ex.getStartTime().plusSeconds(ex.getDuration());
                 startNew = inputExercise.getStartTime();
                 endNew = inputExercise.getStartTime().plusSeconds(inputExercise.getDuration());
                 if (startExisting.isBefore(endNew) && endExisting.isAfter(startNew)) {            //check for overlap
-                    throw new ConflictException("An existing exercise timeline for this user has a conflict with the new exercise timeline");
+                    throw new ConflictException(CONFLICT_MESSAGE);
                 }
             }
         }
     }
 
+    /**
+     * Reads the existing exercises of the user that can overlap the exercises of the batch at the
+     * given positions: the ones starting in the period of the batch, and the latest one starting
+     * before it.
+     */
+    private NavigableSet<Exercise> loadTimeline(final Long userId, final List<Exercise> exercises, final List<Integer> positions) {
+        LocalDateTime batchStart = LocalDateTime.MAX;
+        LocalDateTime batchEnd = LocalDateTime.MIN;
+        for (int position : positions) {
+            Exercise exercise = exercises.get(position);
+            LocalDateTime end = exercise.getStartTime().plusSeconds(exercise.getDuration());
+            batchStart = exercise.getStartTime().isBefore(batchStart) ? exercise.getStartTime() : batchStart;
+            batchEnd = end.isAfter(batchEnd) ? end : batchEnd;
+        }
+        NavigableSet<Exercise> timeline = new TreeSet<>(TIMELINE_ORDER);
+        timeline.addAll(exerciseRepository.findLatestStartingBefore(userId, batchStart, LATEST_BEFORE_BATCH));
+        timeline.addAll(exerciseRepository.findByUserIdAndStartTimeGreaterThanEqualAndStartTimeLessThan(userId, batchStart, batchEnd));
+        return timeline;
+    }
+
+    /**
+     * Checks the exercise against a non overlapping timeline, where the only possible conflict is
+     * the exercise with the greatest start before the end of the new one.
+     */
+    private static boolean overlaps(final NavigableSet<Exercise> timeline, final Exercise inputExercise) {
+        Exercise probe = new Exercise();
+        probe.setStartTime(inputExercise.getStartTime().plusSeconds(inputExercise.getDuration()));
+        probe.setDuration(0L);
+        Exercise before = timeline.lower(probe);
+        return before != null && before.getStartTime().plusSeconds(before.getDuration()).isAfter(inputExercise.getStartTime());
+    }
+
     private Exercise mapUpdatesToExistingExercise(Exercise existingExercise, Exercise inputExercise) {
 
         existingExercise.setDescription(inputExercise.getDescription());
@@ -178,16 +562,32 @@ public class ExerciseService {
     private List<RankingUser> getZeroPointsList(Set<Long> userIds) {
 
         List<RankingUser> res = new ArrayList<>();
+        long start = System.nanoTime();
         List<Exercise> resultFromDb = exerciseRepository.findByDistinctUsersAndLatestExerciseTime(userIds);
+        ExerciseMetrics.recordSince(exerciseMetrics.rankingIdleUsers(), start);
         for (Exercise exercise : resultFromDb) {
             res.add(new RankingUser(exercise.getUserId(), 0.0, exercise.getStartTime().plusSeconds(exercise.getDuration())));
         }
         return res;
     }
 
-    private Set<Long> getUsersFromInputIdsWhoHaveNotExercisedInThePast28Days(final Set<Long> userIdsFromInput, List<Exercise> exerciseListFromDb) {
-        Set<Long> userIdsFromDb = exerciseListFromDb.stream().map(Exercise::getUserId).collect(Collectors.toSet());
-        userIdsFromInput.removeAll(userIdsFromDb);
-        return userIdsFromInput;
+    private Set<Long> getUsersFromInputIdsWhoHaveNotExercisedInThePast28Days(final Set<Long> userIdsFromInput, Collection<RankingUser> rankedUsers) {
+        Set<Long> userIdsFromDb = rankedUsers.stream().map(RankingUser::getUserId).collect(Collectors.toSet());
+        Set<Long> idleUserIds = new HashSet<>(userIdsFromInput);
+        idleUserIds.removeAll(userIdsFromDb);
+        return idleUserIds;
+    }
+
+    private static Exercise copyOf(Exercise exercise) {
+        Exercise copy = new Exercise();
+        copy.setId(exercise.getId());
+        copy.setUserId(exercise.getUserId());
+        copy.setDescription(exercise.getDescription());
+        copy.setType(exercise.getType());
+        copy.setStartTime(exercise.getStartTime());
+        copy.setDuration(exercise.getDuration());
+        copy.setCalories(exercise.getCalories());
+        copy.setVersion(exercise.getVersion());
+        return copy;
     }
 }
@@ -0,0 +1,190 @@
+package com.exercise.ranking.service.cache;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache of the ranking pages, keyed by the sorted user ids, the start of the day and
+ * the page.
+ * <p>
+ * The cache is bounded by the total number of users of its keys, {@code ranking.cache.max-users},
+ * and the pages expire {@code ranking.cache.ttl-seconds} after they were computed. A reverse index
+ * from every user to the keys that contain it evicts only the pages of the user of a saved exercise.
+ * A key stays indexed as long as its page is cached or being computed: every lookup holds a
+ * reference to the key until its page is cached, the cached page holds it until it is removed, and
+ * the references are counted under the lock of the user in the index. Evicting a page that is being
+ * computed waits for it, so a page computed before a write cannot outlive the write.
+ * <p>
+ * The cache only sees the writes of this instance, the pages of the other instances stay stale for
+ * at most the time to live, so it is disabled by default and must only be enabled with
+ * {@code ranking.cache.enabled} when a single instance writes exercises. The hits and misses are
+ * published as the {@code cache.*} metrics of the {@code ranking} cache.
+ */
+@Component
+public class RankingCache {
+
+    private final boolean enabled;
+
+    private final Cache<RankingKey, List<RankingUser>> pages;
+
+    /**
+     * The keys of every user, with the number of references to the key.
+     */
+    private final Map<Long, Map<RankingKey, Integer>> keysByUser = new ConcurrentHashMap<>();
+
+    public RankingCache(@Value("${ranking.cache.enabled:false}") final boolean enabled,
+            @Value("${ranking.cache.max-users:1000000}") final long maxUsers,
+            @Value("${ranking.cache.ttl-seconds:60}") final long ttlSeconds,
+            final MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maxUsers)
+                .weigher((RankingKey key, List<RankingUser> page) -> key.userIds.length)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .executor(Runnable::run)
+                .removalListener((RankingKey key, List<RankingUser> page, RemovalCause cause) -> release(key))
+                .recordStats()
+                .build();
+        if (enabled) {
+            CaffeineCacheMetrics.monitor(meterRegistry, pages, "ranking");
+        }
+    }
+
+    /**
+     * Returns the cached page of the ranking, or computes and caches it.
+     *
+     * @param userIds      the ranked users.
+     * @param startOfToday the start of the day the ranking is computed on.
+     * @param offset       the number of ranked users to skip.
+     * @param limit        the maximum number of ranked users.
+     * @param ranking      computes the page on a miss.
+     * @return the page, that must not be modified.
+     */
+    public List<RankingUser> get(final Collection<Long> userIds, final LocalDateTime startOfToday, final int offset, final int limit,
+            final Supplier<List<RankingUser>> ranking) {
+        if (!enabled) {
+            return ranking.get();
+        }
+        RankingKey key = new RankingKey(userIds, startOfToday, offset, limit);
+        acquire(key);
+        boolean[] cached = {false};
+        try {
+            return pages.get(key, k -> {
+                List<RankingUser> page = Collections.unmodifiableList(ranking.get());
+                // the reference of the lookup is handed over to the cached page
+                cached[0] = true;
+                return page;
+            });
+        } finally {
+            if (!cached[0]) {
+                release(key);
+            }
+        }
+    }
+
+    /**
+     * Evicts the pages that contain the user of the saved exercise.
+     *
+     * @param event the saved exercise.
+     */
+    @EventListener
+    public void onExerciseSaved(final ExerciseSavedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        evict(event.getSaved());
+        Exercise previous = event.getPrevious();
+        if (previous != null && !previous.getUserId().equals(event.getSaved().getUserId())) {
+            evict(previous);
+        }
+    }
+
+    private void evict(final Exercise exercise) {
+        Map<RankingKey, Integer> keys = keysByUser.get(exercise.getUserId());
+        if (keys != null) {
+            pages.invalidateAll(new ArrayList<>(keys.keySet()));
+        }
+    }
+
+    private void acquire(final RankingKey key) {
+        for (long userId : key.userIds) {
+            keysByUser.compute(userId, (id, keys) -> {
+                Map<RankingKey, Integer> indexed = keys != null ? keys : new ConcurrentHashMap<>();
+                indexed.merge(key, 1, Integer::sum);
+                return indexed;
+            });
+        }
+    }
+
+    private void release(final RankingKey key) {
+        for (long userId : key.userIds) {
+            keysByUser.computeIfPresent(userId, (id, keys) -> {
+                keys.computeIfPresent(key, (k, references) -> references == 1 ? null : references - 1);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    /**
+     * Normalized user ids, day and page of a ranking.
+     */
+    private static final class RankingKey {
+
+        private final long[] userIds;
+
+        private final LocalDateTime startOfToday;
+
+        private final int offset;
+
+        private final int limit;
+
+        private final int hash;
+
+        private RankingKey(final Collection<Long> userIds, final LocalDateTime startOfToday, final int offset, final int limit) {
+            this.userIds = userIds.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+            this.startOfToday = startOfToday;
+            this.offset = offset;
+            this.limit = limit;
+            this.hash = 31 * (31 * (31 * Arrays.hashCode(this.userIds) + startOfToday.hashCode()) + offset) + limit;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RankingKey)) {
+                return false;
+            }
+            RankingKey other = (RankingKey) o;
+            return hash == other.hash && offset == other.offset && limit == other.limit
+                    && startOfToday.equals(other.startOfToday) && Arrays.equals(userIds, other.userIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.exercise.ranking.service.cache;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
+import com.exercise.ranking.service.ranking.ExercisePoints;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache of the ranking of every user: the points and the end of the latest exercise in the window,
+ * or the end of the latest exercise ever for the users who didn't train in the window. Rankings of
+ * overlapping sets of users share the entries, and only the users that miss are read from the
+ * database.
+ * <p>
+ * The entry of a user is updated in place when an exercise of the user is inserted, and evicted
+ * when an exercise of the user is updated, since subtracting the previous points would drift from
+ * the sum of the exercises. Entries are only valid for the window they were computed for.
+ * <p>
+ * An entry updated in place adds the points in the order of the inserts, while a loaded entry adds
+ * them in the order the query returns the exercises. Like the sums of the incremental strategy, both
+ * are the same up to the order of the additions, a relative difference of about 1e-9 at most, which
+ * can only swap users whose points are equal up to that difference.
+ * <p>
+ * The users are hashed onto {@value #STRIPES} stripes, each with a generation counting the writes
+ * started or finished on it. A loaded entry is only cached when no write of its stripe started or
+ * finished while it was read, so that an entry read before a write is never cached after the write
+ * was applied to the other entries; the writes of the other users do not prevent it.
+ * <p>
+ * The cache only sees the writes of this instance, so it is disabled unless
+ * {@code ranking.points-cache.enabled} is set, for single instance deployments. It is bounded by
+ * {@code ranking.points-cache.max-users} and entries expire {@code ranking.points-cache.ttl-seconds}
+ * after they were loaded.
+ */
+@Component
+public class UserPointsCache {
+
+    private final boolean enabled;
+
+    private final Cache<Long, UserPoints> pointsByUser;
+
+    private static final int STRIPES = 1024;
+
+    /**
+     * Number of writes started or finished, by stripe.
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    /**
+     * Number of writes started and not finished yet, by stripe.
+     */
+    private final AtomicIntegerArray writesInProgress = new AtomicIntegerArray(STRIPES);
+
+    public UserPointsCache(@Value("${ranking.points-cache.enabled:false}") final boolean enabled,
+            @Value("${ranking.points-cache.max-users:1000000}") final long maxUsers,
+            @Value("${ranking.points-cache.ttl-seconds:600}") final long ttlSeconds,
+            final MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.pointsByUser = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        if (enabled) {
+            CaffeineCacheMetrics.monitor(meterRegistry, pointsByUser, "user-points");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ranks the users from their cached entries, and loads the users that miss.
+     *
+     * @param userIds     the users to rank.
+     * @param windowStart the start of the ranking window.
+     * @param loader      ranks a subset of the users, with all of their idle users.
+     * @return the ranked users and the idle users.
+     */
+    public RankingWindow aggregate(final Set<Long> userIds, final LocalDateTime windowStart, final Function<Set<Long>, RankingWindow> loader) {
+        List<RankingUser> rankedUsers = new ArrayList<>();
+        List<RankingUser> idleUsers = new ArrayList<>();
+        Set<Long> misses = new HashSet<>();
+        Map<Long, UserPoints> cached = pointsByUser.getAllPresent(userIds);
+        for (Long userId : userIds) {
+            UserPoints userPoints = cached.get(userId);
+            if (userPoints == null || !userPoints.windowStart.equals(windowStart)) {
+                misses.add(userId);
+            } else {
+                userPoints.addTo(userId, rankedUsers, idleUsers);
+            }
+        }
+        if (misses.isEmpty()) {
+            return new RankingWindow(rankedUsers, idleUsers);
+        }
+
+        Long[] loadedUserIds = misses.toArray(new Long[0]);
+        long[] generationsBeforeLoad = new long[loadedUserIds.length];
+        for (int i = 0; i < loadedUserIds.length; i++) {
+            generationsBeforeLoad[i] = generationOf(stripeOf(loadedUserIds[i]));
+        }
+        RankingWindow loaded = loader.apply(misses);
+        Map<Long, UserPoints> loadedPoints = new HashMap<>();
+        for (RankingUser rankingUser : loaded.getRankedUsers()) {
+            rankedUsers.add(rankingUser);
+            loadedPoints.put(rankingUser.getUserId(), new UserPoints(windowStart, true, rankingUser.getPoints(), rankingUser.getLatestExerciseTime()));
+        }
+        for (RankingUser rankingUser : loaded.getIdleUsers()) {
+            idleUsers.add(rankingUser);
+            loadedPoints.put(rankingUser.getUserId(), new UserPoints(windowStart, false, 0.0, rankingUser.getLatestExerciseTime()));
+        }
+        for (int i = 0; i < loadedUserIds.length; i++) {
+            Long userId = loadedUserIds[i];
+            int stripe = stripeOf(userId);
+            if (generationsBeforeLoad[i] < 0 || generationOf(stripe) != generationsBeforeLoad[i]) {
+                continue;
+            }
+            UserPoints userPoints = loadedPoints.get(userId);
+            pointsByUser.put(userId, userPoints != null ? userPoints : new UserPoints(windowStart, false, 0.0, null));
+            // a write that started before the put may have applied its event before the entry was there
+            if (generationOf(stripe) != generationsBeforeLoad[i]) {
+                pointsByUser.invalidate(userId);
+            }
+        }
+        return new RankingWindow(rankedUsers, idleUsers);
+    }
+
+    /**
+     * Must be called before the exercises of the users are saved, and followed by
+     * {@link #writeFinished(Collection)}.
+     *
+     * @param userIds the users whose exercises are saved.
+     */
+    public void writeStarted(final Collection<Long> userIds) {
+        for (Long userId : userIds) {
+            int stripe = stripeOf(userId);
+            generations.incrementAndGet(stripe);
+            writesInProgress.incrementAndGet(stripe);
+        }
+    }
+
+    /**
+     * Must be called after the exercises are saved and their {@link ExerciseSavedEvent} published,
+     * or after the save failed.
+     *
+     * @param userIds the users given to {@link #writeStarted(Collection)}.
+     */
+    public void writeFinished(final Collection<Long> userIds) {
+        for (Long userId : userIds) {
+            int stripe = stripeOf(userId);
+            writesInProgress.decrementAndGet(stripe);
+            generations.incrementAndGet(stripe);
+        }
+    }
+
+    /**
+     * Adds an inserted exercise to the entry of its user, and evicts the entry of the user of an
+     * updated exercise.
+     *
+     * @param event the saved exercise.
+     */
+    @EventListener
+    public void onExerciseSaved(final ExerciseSavedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Exercise saved = event.getSaved();
+        if (event.getPrevious() != null) {
+            pointsByUser.invalidate(event.getPrevious().getUserId());
+            pointsByUser.invalidate(saved.getUserId());
+        } else {
+            pointsByUser.asMap().computeIfPresent(saved.getUserId(), (userId, userPoints) -> userPoints.plus(saved));
+        }
+    }
+
+    /**
+     * @return the generation of the stripe, or -1 if a write of the stripe is in progress.
+     */
+    private long generationOf(final int stripe) {
+        if (writesInProgress.get(stripe) > 0) {
+            return -1;
+        }
+        return generations.get(stripe);
+    }
+
+    private static int stripeOf(final Long userId) {
+        int h = userId.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Ranking of a user in a window.
+     */
+    private static final class UserPoints {
+
+        private final LocalDateTime windowStart;
+
+        /**
+         * Whether the user has exercises in the window.
+         */
+        private final boolean inWindow;
+
+        private final double points;
+
+        /**
+         * End of the latest exercise in the window, or ever if there is none in the window, or
+         * {@code null} if the user has no exercise.
+         */
+        private final LocalDateTime latestEnd;
+
+        private UserPoints(final LocalDateTime windowStart, final boolean inWindow, final double points, final LocalDateTime latestEnd) {
+            this.windowStart = windowStart;
+            this.inWindow = inWindow;
+            this.points = points;
+            this.latestEnd = latestEnd;
+        }
+
+        private void addTo(final Long userId, final List<RankingUser> rankedUsers, final List<RankingUser> idleUsers) {
+            if (inWindow) {
+                rankedUsers.add(new RankingUser(userId, points, latestEnd));
+            } else if (latestEnd != null) {
+                idleUsers.add(new RankingUser(userId, 0.0, latestEnd));
+            }
+        }
+
+        /**
+         * @return the entry with the inserted exercise, whose points are added after the points of
+         * the entry rather than in the order of the query of a load.
+         */
+        private UserPoints plus(final Exercise exercise) {
+            LocalDateTime end = exercise.getStartTime().plusSeconds(exercise.getDuration());
+            if (!exercise.getStartTime().isBefore(windowStart)) {
+                double exercisePoints = ExercisePoints.of(exercise.getCalories(), exercise.getDuration(), exercise.getType());
+                return inWindow
+                        ? new UserPoints(windowStart, true, points + exercisePoints, end.isAfter(latestEnd) ? end : latestEnd)
+                        : new UserPoints(windowStart, true, exercisePoints, end);
+            }
+            if (inWindow || (latestEnd != null && !end.isAfter(latestEnd))) {
+                return this;
+            }
+            return new UserPoints(windowStart, false, 0.0, end);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.exercise.ranking.service.event;
+
+import java.util.List;
+
+/**
+ * Published by {@link com.exercise.ranking.service.ExerciseService} once per write, after the
+ * {@link ExerciseSavedEvent} of every exercise it saved, so that derived data that is costly to
+ * refresh can follow the whole write at once.
+ */
+public class ExerciseBatchSavedEvent {
+
+    /**
+     * The events of the saved exercises, in the order they were published.
+     */
+    private final List<ExerciseSavedEvent> events;
+
+    public ExerciseBatchSavedEvent(final List<ExerciseSavedEvent> events) {
+        this.events = events;
+    }
+
+    public List<ExerciseSavedEvent> getEvents() {
+        return events;
+    }
+
+    @Override
+    public String toString() {
+        return "ExerciseBatchSavedEvent{" + "events=" + events + '}';
+    }
+}
@@ -0,0 +1,38 @@
+package com.exercise.ranking.service.event;
+
+import com.exercise.ranking.model.Exercise;
+
+/**
+ * Published by {@link com.exercise.ranking.service.ExerciseService} after an exercise has been
+ * inserted or updated, so that derived data (indexes, aggregates, caches) can follow the change.
+ */
+public class ExerciseSavedEvent {
+
+    /**
+     * Copy of the exercise before the update, {@code null} for an inserted exercise.
+     */
+    private final Exercise previous;
+
+    /**
+     * The persisted exercise.
+     */
+    private final Exercise saved;
+
+    public ExerciseSavedEvent(final Exercise previous, final Exercise saved) {
+        this.previous = previous;
+        this.saved = saved;
+    }
+
+    public Exercise getPrevious() {
+        return previous;
+    }
+
+    public Exercise getSaved() {
+        return saved;
+    }
+
+    @Override
+    public String toString() {
+        return "ExerciseSavedEvent{" + "previous=" + previous + ", saved=" + saved + '}';
+    }
+}
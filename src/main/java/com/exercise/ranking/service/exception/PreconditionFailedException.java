@@ -0,0 +1,9 @@
+package com.exercise.ranking.service.exception;
+
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(final String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.exercise.ranking.service.exception;
+
+public class QueueFullException extends RuntimeException {
+
+    public QueueFullException(final String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,280 @@
+package com.exercise.ranking.service.importer;
+
+import com.exercise.ranking.dao.ExerciseIdAllocator;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseBatchResult;
+import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.service.exception.NotFoundException;
+import com.exercise.ranking.service.lock.UserLockStripes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Imports the exercises of NDJSON or CSV files, for historical backfills of tens of millions of
+ * rows.
+ * <p>
+ * The files are read from {@code ranking.import.directory}, one import at a time in a background
+ * thread. The lines are parsed straight into exercises and collected in chunks of
+ * {@code ranking.import.chunk-size} rows, so the memory is bounded by the chunk. Every chunk is
+ * sorted by user and start time, split by lock stripe of the users, and every part is inserted with
+ * {@link ExerciseService#insertAll(List)}, which checks the overlaps of a user in one pass over its
+ * rows and against the database, and writes them in JDBC batches. A part only holds the lock of its
+ * stripe, so the writes of the API for the users of the other stripes go on during the import.
+ * <p>
+ * The rejected rows are appended to {@code <file>.rejected} with their line number and reason.
+ * After every chunk the byte offset of the next line is saved to {@code <file>.checkpoint}, and an
+ * import of the same file resumes from it. Delete the checkpoint to import a file again.
+ * <p>
+ * The rows of a chunk are given their id by the {@link ExerciseIdAllocator} before its first part
+ * is inserted, and the ids are saved to the checkpoint with the offset of the chunk. If the import
+ * stops while the chunk is inserted, the chunk is read again on resume with the same ids, and the
+ * rows of the parts that were committed are found by their id and skipped, so that every row is
+ * imported and reported once.
+ */
+@Service
+public class ExerciseImporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExerciseImporter.class);
+
+    private static final Comparator<ImportRow> USER_TIMELINE = Comparator.comparing((ImportRow row) -> row.exercise.getUserId())
+            .thenComparing(row -> row.exercise.getStartTime());
+
+    private final ExerciseService exerciseService;
+
+    private final ExerciseRepository exerciseRepository;
+
+    private final ExerciseIdAllocator exerciseIdAllocator;
+
+    private final UserLockStripes userLockStripes;
+
+    private final Path directory;
+
+    private final int chunkSize;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "exercise-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    public ExerciseImporter(final ExerciseService exerciseService, final ExerciseRepository exerciseRepository,
+            final ExerciseIdAllocator exerciseIdAllocator, final UserLockStripes userLockStripes,
+            @Value("${ranking.import.directory:import}") final String directory,
+            @Value("${ranking.import.chunk-size:5000}") final int chunkSize) {
+        this.exerciseService = exerciseService;
+        this.exerciseRepository = exerciseRepository;
+        this.exerciseIdAllocator = exerciseIdAllocator;
+        this.userLockStripes = userLockStripes;
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Starts the import of a file of the import directory, after the imports already started.
+     *
+     * @param fileName the name of the file in the import directory.
+     * @param format   the format of the file.
+     * @return the started import.
+     * @throws IllegalArgumentException if there is no such file in the import directory.
+     */
+    public ImportJob start(final String fileName, final ImportFormat format) throws IllegalArgumentException {
+        Path file = directory.resolve(fileName).normalize();
+        if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("No import file " + fileName + " in the import directory");
+        }
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), file, format);
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job));
+        return job;
+    }
+
+    /**
+     * Finds an import started since the application started.
+     *
+     * @param jobId the id of the import.
+     * @return the import.
+     * @throws NotFoundException if there is no import with the id.
+     */
+    public ImportJob get(final String jobId) throws NotFoundException {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new NotFoundException("Import with id: " + jobId + " not found");
+        }
+        return job;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    void run(final ImportJob job) {
+        Path file = job.getFile();
+        Path checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        Path rejectedFile = file.resolveSibling(file.getFileName() + ".rejected");
+        try {
+            ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile);
+            job.resume(checkpoint);
+            LOG.info("Importing {} from line {}", file, checkpoint.getLines() + 1);
+            try (LineChannelReader reader = new LineChannelReader(file, checkpoint.getOffset());
+                    FileChannel rejectedChannel = FileChannel.open(rejectedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // drop the rows rejected after the checkpoint, they are read again
+                rejectedChannel.truncate(checkpoint.getRejectedLength());
+                rejectedChannel.position(checkpoint.getRejectedLength());
+                Writer rejected = Channels.newWriter(rejectedChannel, StandardCharsets.UTF_8.newEncoder(), 64 * 1024);
+                // the chunk that was being inserted is read again up to the same row
+                List<Long> resumedIds = checkpoint.getChunkIds();
+                ImportCheckpoint chunkStart = checkpoint;
+                List<ImportRow> chunk = new ArrayList<>(chunkSize);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    job.lineRead();
+                    long lineNumber = job.getLines();
+                    if (line.isBlank() || (lineNumber == 1 && job.getFormat() == ImportFormat.CSV && ExerciseRowParser.isCsvHeader(line))) {
+                        continue;
+                    }
+                    try {
+                        chunk.add(new ImportRow(lineNumber, job.getFormat().parse(line)));
+                    } catch (InvalidRowException e) {
+                        reject(job, rejected, lineNumber, e.getMessage());
+                    }
+                    if (chunk.size() == (resumedIds.isEmpty() ? chunkSize : resumedIds.size())) {
+                        importChunk(job, chunk, resumedIds, chunkStart, checkpointFile, rejected);
+                        rejected.flush();
+                        chunkStart = job.checkpoint(reader.getOffset(), rejectedChannel.position());
+                        chunkStart.save(checkpointFile);
+                        resumedIds = List.of();
+                        chunk.clear();
+                    }
+                }
+                importChunk(job, chunk, resumedIds, chunkStart, checkpointFile, rejected);
+                rejected.flush();
+                job.checkpoint(reader.getOffset(), rejectedChannel.position()).save(checkpointFile);
+            }
+            job.complete();
+            LOG.info("Imported {}: {} lines, {} exercises, {} rejected, {} rows/s", file, job.getLines(), job.getImported(),
+                    job.getRejected(), Math.round(job.getRowsPerSecond()));
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Import of " + file + " failed at line " + job.getLines(), e);
+            job.fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Inserts a chunk, with the ids it was given before the import stopped if it is resumed.
+     *
+     * @param resumedIds the ids of the rows of the chunk saved to the checkpoint, empty for a new
+     *                   chunk.
+     * @param chunkStart the progress before the chunk.
+     */
+    private void importChunk(final ImportJob job, final List<ImportRow> chunk, final List<Long> resumedIds, final ImportCheckpoint chunkStart,
+            final Path checkpointFile, final Writer rejected) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<Long> committedIds = new HashSet<>();
+        if (resumedIds.isEmpty()) {
+            List<Long> ids = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                ids.add(exerciseIdAllocator.nextId());
+            }
+            // saved before the first part is committed, so that a resume finds the committed rows
+            chunkStart.withChunkIds(ids).save(checkpointFile);
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).exercise.setId(ids.get(i));
+            }
+        } else {
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).exercise.setId(resumedIds.get(i));
+            }
+            for (Exercise committed : exerciseRepository.findAllById(resumedIds.subList(0, chunk.size()))) {
+                committedIds.add(committed.getId());
+            }
+        }
+        chunk.sort(USER_TIMELINE);
+        Map<Long, List<ImportRow>> rowsByUser = new LinkedHashMap<>();
+        for (ImportRow row : chunk) {
+            if (!committedIds.contains(row.exercise.getId())) {
+                rowsByUser.computeIfAbsent(row.exercise.getUserId(), userId -> new ArrayList<>()).add(row);
+            }
+        }
+        long created = committedIds.size();
+        for (List<Long> stripe : userLockStripes.partitionByStripe(rowsByUser.keySet())) {
+            List<ImportRow> part = new ArrayList<>();
+            for (Long userId : stripe) {
+                part.addAll(rowsByUser.get(userId));
+            }
+            created += importPart(job, part, rejected);
+        }
+        job.imported(created);
+        LOG.debug("Imported {} lines of {}, {} rows/s", job.getLines(), job.getFile(), Math.round(job.getRowsPerSecond()));
+    }
+
+    /**
+     * Inserts the rows of the users of one stripe, still sorted by user and start time.
+     */
+    private long importPart(final ImportJob job, final List<ImportRow> part, final Writer rejected) throws IOException {
+        List<Exercise> exercises = new ArrayList<>(part.size());
+        for (ImportRow row : part) {
+            exercises.add(row.exercise);
+        }
+        List<ExerciseBatchResult> results = exerciseService.insertAll(exercises);
+        long created = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).getStatus() == ExerciseBatchResult.Status.CREATED) {
+                created++;
+            } else {
+                reject(job, rejected, part.get(i).lineNumber, results.get(i).getMessage());
+            }
+        }
+        return created;
+    }
+
+    private static void reject(final ImportJob job, final Writer rejected, final long lineNumber, final String reason) throws IOException {
+        job.rejected();
+        rejected.write(lineNumber + "\t" + reason + "\n");
+    }
+
+    /**
+     * A parsed line of the file.
+     */
+    private static final class ImportRow {
+
+        private final long lineNumber;
+
+        private final Exercise exercise;
+
+        private ImportRow(final long lineNumber, final Exercise exercise) {
+            this.lineNumber = lineNumber;
+            this.exercise = exercise;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.exercise.ranking.service.importer;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the lines of the import files straight into {@link Exercise}s, without a DTO nor a JSON
+ * tree per line, and validates them with the constraints of the exercise DTO.
+ * <p>
+ * The start time is an ISO offset date time and, like for the API, the local date and time are kept
+ * and the offset is dropped. The description is trimmed.
+ */
+public final class ExerciseRowParser {
+
+    private static final int CSV_COLUMNS = 6;
+
+    private ExerciseRowParser() {
+    }
+
+    /**
+     * Parses a flat JSON object with the fields {@code userId}, {@code type}, {@code description},
+     * {@code startTime}, {@code duration} and {@code calories}. Other fields are ignored.
+     *
+     * @param line the JSON object.
+     * @return the validated exercise.
+     * @throws InvalidRowException if the line is not a flat JSON object or the exercise is not valid.
+     */
+    public static Exercise parseJson(final String line) throws InvalidRowException {
+        Exercise exercise = new Exercise();
+        JsonCursor cursor = new JsonCursor(line);
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                String field = cursor.readString();
+                cursor.expect(':');
+                String value = cursor.readValue();
+                set(exercise, field, value);
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        cursor.expectEnd();
+        return validate(exercise);
+    }
+
+    /**
+     * Parses the columns {@code userId,type,description,startTime,duration,calories}. The
+     * description can be quoted, with {@code ""} for a quote, and an empty calories column is no
+     * calories.
+     *
+     * @param line the comma separated columns.
+     * @return the validated exercise.
+     * @throws InvalidRowException if the line does not have the columns or the exercise is not
+     *                             valid.
+     */
+    public static Exercise parseCsv(final String line) throws InvalidRowException {
+        List<String> columns = new ArrayList<>(CSV_COLUMNS);
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    column.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        if (quoted) {
+            throw new InvalidRowException("Unterminated quoted column");
+        }
+        columns.add(column.toString());
+        if (columns.size() != CSV_COLUMNS) {
+            throw new InvalidRowException("Expected " + CSV_COLUMNS + " columns but found " + columns.size());
+        }
+        Exercise exercise = new Exercise();
+        set(exercise, "userId", emptyToNull(columns.get(0)));
+        set(exercise, "type", emptyToNull(columns.get(1)));
+        set(exercise, "description", columns.get(2));
+        set(exercise, "startTime", emptyToNull(columns.get(3)));
+        set(exercise, "duration", emptyToNull(columns.get(4)));
+        set(exercise, "calories", emptyToNull(columns.get(5)));
+        return validate(exercise);
+    }
+
+    /**
+     * Checks if the line is the header of a CSV file.
+     */
+    public static boolean isCsvHeader(final String line) {
+        return line.startsWith("userId,");
+    }
+
+    private static void set(final Exercise exercise, final String field, final String value) {
+        try {
+            switch (field) {
+                case "userId":
+                    exercise.setUserId(value == null ? null : Long.valueOf(value.trim()));
+                    break;
+                case "type":
+                    exercise.setType(value == null ? null : ExerciseType.valueOf(value.trim()));
+                    break;
+                case "description":
+                    exercise.setDescription(value == null ? null : value.trim());
+                    break;
+                case "startTime":
+                    exercise.setStartTime(value == null ? null : OffsetDateTime.parse(value.trim()).toLocalDateTime());
+                    break;
+                case "duration":
+                    exercise.setDuration(value == null ? null : Long.valueOf(value.trim()));
+                    break;
+                case "calories":
+                    exercise.setCalories(value == null ? null : Double.valueOf(value.trim()));
+                    break;
+                default:
+                    break;
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidRowException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private static Exercise validate(final Exercise exercise) {
+        List<String> details = new ArrayList<>();
+        if (exercise.getUserId() == null) {
+            details.add("userId cannot be null or empty; ");
+        }
+        if (exercise.getType() == null) {
+            details.add("exerciseType cannot be null or empty; ");
+        }
+        if (exercise.getDescription() == null || exercise.getDescription().isEmpty()) {
+            details.add("description cannot be null or empty; ");
+        }
+        if (exercise.getStartTime() == null) {
+            details.add("startTime cannot be null or empty; ");
+        }
+        if (exercise.getDuration() == null) {
+            details.add("exercise duration cannot be null or empty; ");
+        }
+        if (!details.isEmpty()) {
+            throw new InvalidRowException("Validation Failed: " + details);
+        }
+        return exercise;
+    }
+
+    private static String emptyToNull(final String column) {
+        return column.isEmpty() ? null : column;
+    }
+
+    /**
+     * Reads the tokens of a flat JSON object.
+     */
+    private static final class JsonCursor {
+
+        private final String json;
+
+        private int position;
+
+        private JsonCursor(final String json) {
+            this.json = json;
+        }
+
+        private void expect(final char expected) {
+            if (!consume(expected)) {
+                throw new InvalidRowException("Expected '" + expected + "' at " + position);
+            }
+        }
+
+        private boolean consume(final char expected) {
+            skipWhitespace();
+            if (position < json.length() && json.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expectEnd() {
+            skipWhitespace();
+            if (position != json.length()) {
+                throw new InvalidRowException("Unexpected content at " + position);
+            }
+        }
+
+        /**
+         * Reads a string, a number, a boolean or {@code null}, which is returned as {@code null}.
+         */
+        private String readValue() {
+            skipWhitespace();
+            if (position < json.length() && json.charAt(position) == '"') {
+                return readString();
+            }
+            int start = position;
+            while (position < json.length() && ",}] \t".indexOf(json.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = json.substring(start, position);
+            if (literal.isEmpty() || literal.charAt(0) == '{' || literal.charAt(0) == '[') {
+                throw new InvalidRowException("Expected a string, a number or a literal at " + start);
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                } else if (position < json.length()) {
+                    char escaped = json.charAt(position++);
+                    switch (escaped) {
+                        case 'n':
+                            value.append('\n');
+                            break;
+                        case 't':
+                            value.append('\t');
+                            break;
+                        case 'r':
+                            value.append('\r');
+                            break;
+                        case 'b':
+                            value.append('\b');
+                            break;
+                        case 'f':
+                            value.append('\f');
+                            break;
+                        case 'u':
+                            if (position + 4 > json.length()) {
+                                throw new InvalidRowException("Invalid unicode escape at " + position);
+                            }
+                            try {
+                                value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                            } catch (NumberFormatException e) {
+                                throw new InvalidRowException("Invalid unicode escape at " + position);
+                            }
+                            position += 4;
+                            break;
+                        default:
+                            value.append(escaped);
+                            break;
+                    }
+                }
+            }
+            throw new InvalidRowException("Unterminated string");
+        }
+
+        private void skipWhitespace() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.exercise.ranking.service.importer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Progress of an import file, saved next to the file before and after every chunk. An import of the
+ * same file resumes from the last checkpoint.
+ */
+public final class ImportCheckpoint {
+
+    public static final ImportCheckpoint START = new ImportCheckpoint(0, 0, 0, 0, 0, Collections.emptyList());
+
+    /**
+     * Byte offset of the first line that is not imported yet.
+     */
+    private final long offset;
+
+    private final long lines;
+
+    private final long imported;
+
+    private final long rejected;
+
+    /**
+     * Length of the rejected rows file at the checkpoint, anything after it is written again.
+     */
+    private final long rejectedLength;
+
+    /**
+     * Ids given to the rows of the chunk starting at the offset, in the order of the file, while
+     * the chunk is being inserted. Empty once the chunk is committed.
+     */
+    private final List<Long> chunkIds;
+
+    public ImportCheckpoint(final long offset, final long lines, final long imported, final long rejected, final long rejectedLength,
+            final List<Long> chunkIds) {
+        this.offset = offset;
+        this.lines = lines;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.rejectedLength = rejectedLength;
+        this.chunkIds = chunkIds;
+    }
+
+    /**
+     * @param ids the ids given to the rows of the chunk starting at the offset.
+     * @return the same progress, with the ids of the chunk being inserted.
+     */
+    public ImportCheckpoint withChunkIds(final List<Long> ids) {
+        return new ImportCheckpoint(offset, lines, imported, rejected, rejectedLength, ids);
+    }
+
+    /**
+     * Reads the checkpoint file.
+     *
+     * @param file the checkpoint file.
+     * @return the checkpoint, or {@link #START} if the file does not exist.
+     */
+    public static ImportCheckpoint load(final Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return START;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        List<Long> chunkIds = new ArrayList<>();
+        for (String id : properties.getProperty("chunkIds", "").split(",")) {
+            if (!id.isEmpty()) {
+                chunkIds.add(Long.valueOf(id));
+            }
+        }
+        return new ImportCheckpoint(Long.parseLong(properties.getProperty("offset")), Long.parseLong(properties.getProperty("lines")),
+                Long.parseLong(properties.getProperty("imported")), Long.parseLong(properties.getProperty("rejected")),
+                Long.parseLong(properties.getProperty("rejectedLength")), chunkIds);
+    }
+
+    /**
+     * Writes the checkpoint file, replacing the previous checkpoint atomically.
+     *
+     * @param file the checkpoint file.
+     */
+    public void save(final Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("offset", Long.toString(offset));
+        properties.setProperty("lines", Long.toString(lines));
+        properties.setProperty("imported", Long.toString(imported));
+        properties.setProperty("rejected", Long.toString(rejected));
+        properties.setProperty("rejectedLength", Long.toString(rejectedLength));
+        properties.setProperty("chunkIds", chunkIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary)) {
+            properties.store(writer, null);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getRejectedLength() {
+        return rejectedLength;
+    }
+
+    public List<Long> getChunkIds() {
+        return chunkIds;
+    }
+}
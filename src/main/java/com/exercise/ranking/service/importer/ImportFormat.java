@@ -0,0 +1,39 @@
+package com.exercise.ranking.service.importer;
+
+import com.exercise.ranking.model.Exercise;
+
+/**
+ * Formats of the exercise import files, one exercise per line.
+ */
+public enum ImportFormat {
+
+    /**
+     * One JSON object per line, with the fields of the exercise DTO.
+     */
+    NDJSON {
+        @Override
+        public Exercise parse(final String line) {
+            return ExerciseRowParser.parseJson(line);
+        }
+    },
+
+    /**
+     * Comma separated {@code userId,type,description,startTime,duration,calories}, with an optional
+     * header line.
+     */
+    CSV {
+        @Override
+        public Exercise parse(final String line) {
+            return ExerciseRowParser.parseCsv(line);
+        }
+    };
+
+    /**
+     * Parses and validates one line of the file.
+     *
+     * @param line the line without its line terminator.
+     * @return the exercise, without id.
+     * @throws InvalidRowException if the line is malformed or the exercise is not valid.
+     */
+    public abstract Exercise parse(String line) throws InvalidRowException;
+}
@@ -0,0 +1,129 @@
+package com.exercise.ranking.service.importer;
+
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * State of an import of one file, updated by the import thread and read by the status requests.
+ */
+public class ImportJob {
+
+    /**
+     * Lifecycle of an import.
+     */
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String id;
+
+    private final Path file;
+
+    private final ImportFormat format;
+
+    private volatile Status status = Status.RUNNING;
+
+    /**
+     * Lines read from the file, including the ones read before the import was resumed.
+     */
+    private volatile long lines;
+
+    private volatile long imported;
+
+    private volatile long rejected;
+
+    /**
+     * Lines read by this run, for the throughput.
+     */
+    private volatile long linesThisRun;
+
+    private volatile long startNanos = System.nanoTime();
+
+    private volatile long endNanos;
+
+    private volatile String message;
+
+    public ImportJob(final String id, final Path file, final ImportFormat format) {
+        this.id = id;
+        this.file = file;
+        this.format = format;
+    }
+
+    void resume(final ImportCheckpoint checkpoint) {
+        lines = checkpoint.getLines();
+        imported = checkpoint.getImported();
+        rejected = checkpoint.getRejected();
+        startNanos = System.nanoTime();
+    }
+
+    void lineRead() {
+        lines++;
+        linesThisRun++;
+    }
+
+    void imported(final long count) {
+        imported += count;
+    }
+
+    void rejected() {
+        rejected++;
+    }
+
+    void complete() {
+        endNanos = System.nanoTime();
+        status = Status.COMPLETED;
+    }
+
+    void fail(final String failure) {
+        endNanos = System.nanoTime();
+        message = failure;
+        status = Status.FAILED;
+    }
+
+    ImportCheckpoint checkpoint(final long offset, final long rejectedLength) {
+        return new ImportCheckpoint(offset, lines, imported, rejected, rejectedLength, Collections.emptyList());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public ImportFormat getFormat() {
+        return format;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Lines read per second by this run, until now or until the end of the import.
+     */
+    public double getRowsPerSecond() {
+        long end = status == Status.RUNNING ? System.nanoTime() : endNanos;
+        double seconds = (end - startNanos) / 1e9;
+        return seconds > 0 ? linesThisRun / seconds : 0.0;
+    }
+}
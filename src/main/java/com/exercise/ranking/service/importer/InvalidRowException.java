@@ -0,0 +1,12 @@
+package com.exercise.ranking.service.importer;
+
+/**
+ * A line of an import file that is not a valid exercise.
+ */
+public class InvalidRowException extends RuntimeException {
+
+    public InvalidRowException(final String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.exercise.ranking.service.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the UTF-8 lines of a file through a buffered {@link FileChannel}, and keeps the byte offset
+ * of the next line so that a read can be resumed from it.
+ */
+public final class LineChannelReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+
+    /**
+     * The bytes read from the channel and not returned yet, between position and limit.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+    private long offset;
+
+    private boolean endOfFile;
+
+    /**
+     * Opens the file and starts reading at the given offset, that must be the start of a line.
+     *
+     * @param file   the file to read.
+     * @param offset the byte offset of the first line to read.
+     */
+    public LineChannelReader(final Path file, final long offset) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.channel.position(offset);
+        this.offset = offset;
+    }
+
+    /**
+     * Reads the next line, without its {@code \n} or {@code \r\n} terminator.
+     *
+     * @return the line, or {@code null} at the end of the file.
+     */
+    public String readLine() throws IOException {
+        int scanned = buffer.position();
+        while (true) {
+            for (int i = scanned; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return takeLine(i - buffer.position(), 1);
+                }
+            }
+            if (endOfFile) {
+                return buffer.hasRemaining() ? takeLine(buffer.remaining(), 0) : null;
+            }
+            scanned = buffer.remaining();
+            fill();
+        }
+    }
+
+    /**
+     * The byte offset of the line that the next {@link #readLine()} returns.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String takeLine(final int length, final int terminatorLength) {
+        int start = buffer.arrayOffset() + buffer.position();
+        int textLength = length > 0 && buffer.array()[start + length - 1] == '\r' ? length - 1 : length;
+        String line = new String(buffer.array(), start, textLength, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length + terminatorLength);
+        offset += length + terminatorLength;
+        return line;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer, growing it if they fill it, and reads more.
+     */
+    private void fill() throws IOException {
+        if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        if (channel.read(buffer) < 0) {
+            endOfFile = true;
+        }
+        buffer.flip();
+    }
+}
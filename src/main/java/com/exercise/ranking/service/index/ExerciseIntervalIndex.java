@@ -0,0 +1,306 @@
+package com.exercise.ranking.service.index;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of the exercise timelines of the users, used to check overlapping exercises
+ * without loading the whole exercise history of the user on every write.
+ * <p>
+ * The intervals [start, start + duration) of a user are loaded lazily on the first write for that
+ * user and kept ordered by start time, end time and id. The exercises of a user never overlap, so
+ * the end times are ordered in the same way, and the only possible conflict for a new interval is
+ * the existing interval with the greatest start before the end of the new one. A lookup is
+ * O(log n) in the number of exercises of the user.
+ * <p>
+ * The number of users kept in memory is bounded by {@code ranking.exercise-index.max-users}. The
+ * least recently used user is evicted and loaded again on its next write, except the users that
+ * are being read or written, so that two threads never work on two copies of the same user, and
+ * the users with pending exercises, which are not in the database yet and would be lost. The index
+ * can exceed its bound while all the users are pinned this way.
+ * <p>
+ * The index only sees the writes of this instance, so it is disabled by default and must only be
+ * enabled with {@code ranking.exercise-index.enabled} when a single instance writes exercises.
+ */
+@Component
+public class ExerciseIntervalIndex {
+
+    private static final Comparator<Interval> INTERVAL_ORDER = Comparator.comparing((Interval i) -> i.start)
+            .thenComparing(i -> i.end)
+            .thenComparing(i -> i.id, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final ExerciseRepository exerciseRepository;
+
+    private final boolean enabled;
+
+    private final Map<Long, UserIntervals> intervalsByUser;
+
+    public ExerciseIntervalIndex(final ExerciseRepository exerciseRepository,
+            @Value("${ranking.exercise-index.enabled:false}") final boolean enabled,
+            @Value("${ranking.exercise-index.max-users:10000}") final int maxUsers) {
+        this.exerciseRepository = exerciseRepository;
+        this.enabled = enabled;
+        this.intervalsByUser = new LeastRecentlyUsedMap(maxUsers);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks if the exercise overlaps any other exercise of its user. The exercise itself is
+     * ignored, so an updated exercise does not conflict with its previous timeline.
+     *
+     * @param exercise the exercise to check.
+     * @return true if there is an existing exercise for the exercise's period.
+     */
+    public boolean overlaps(final Exercise exercise) {
+        UserIntervals userIntervals = acquire(exercise.getUserId());
+        try {
+            synchronized (userIntervals) {
+                return userIntervals.overlaps(Interval.of(exercise));
+            }
+        } finally {
+            release(userIntervals);
+        }
+    }
+
+    /**
+     * Adds the exercise to the index if it does not overlap any other exercise of its user, in a
+     * single step for the user. An exercise without id is kept as pending until it is persisted and
+     * {@link #put(Exercise) put} again with its id.
+     *
+     * @param exercise the exercise to add.
+     * @return false if there is an existing exercise for the exercise's period.
+     */
+    public boolean tryPut(final Exercise exercise) {
+        UserIntervals userIntervals = acquire(exercise.getUserId());
+        try {
+            synchronized (userIntervals) {
+                Interval interval = Interval.of(exercise);
+                if (userIntervals.overlaps(interval)) {
+                    return false;
+                }
+                userIntervals.put(interval);
+                return true;
+            }
+        } finally {
+            release(userIntervals);
+        }
+    }
+
+    /**
+     * Removes an exercise that was added with {@link #tryPut(Exercise)} and then not persisted: its
+     * pending timeline, or the timeline of its id if it was added with its id.
+     *
+     * @param exercise the exercise that is not persisted.
+     */
+    public void discard(final Exercise exercise) {
+        UserIntervals userIntervals = acquire(exercise.getUserId());
+        try {
+            synchronized (userIntervals) {
+                if (!userIntervals.removePending(Interval.pending(exercise)) && exercise.getId() != null) {
+                    userIntervals.remove(exercise.getId());
+                }
+            }
+        } finally {
+            release(userIntervals);
+        }
+    }
+
+    /**
+     * Adds the persisted exercise to the index, replacing the previous timeline of the exercise, or
+     * its pending timeline, if it was already indexed.
+     *
+     * @param exercise the persisted exercise.
+     */
+    public void put(final Exercise exercise) {
+        if (!enabled) {
+            return;
+        }
+        UserIntervals userIntervals = acquire(exercise.getUserId());
+        try {
+            synchronized (userIntervals) {
+                userIntervals.put(Interval.of(exercise));
+            }
+        } finally {
+            release(userIntervals);
+        }
+    }
+
+    /**
+     * Returns the intervals of the user, loaded if needed, pinned until they are
+     * {@link #release(UserIntervals) released}.
+     */
+    private UserIntervals acquire(final Long userId) {
+        synchronized (intervalsByUser) {
+            UserIntervals userIntervals = intervalsByUser.get(userId);
+            if (userIntervals != null) {
+                userIntervals.users++;
+                return userIntervals;
+            }
+        }
+        UserIntervals loaded = new UserIntervals();
+        for (Exercise exercise : exerciseRepository.findByUserId(userId)) {
+            loaded.put(Interval.of(exercise));
+        }
+        synchronized (intervalsByUser) {
+            UserIntervals userIntervals = intervalsByUser.get(userId);
+            if (userIntervals == null) {
+                userIntervals = loaded;
+                // pinned before it is added, so that it is not the one evicted
+                userIntervals.users++;
+                intervalsByUser.put(userId, userIntervals);
+            } else {
+                userIntervals.users++;
+            }
+            return userIntervals;
+        }
+    }
+
+    private void release(final UserIntervals userIntervals) {
+        synchronized (intervalsByUser) {
+            userIntervals.users--;
+        }
+    }
+
+    /**
+     * The ordered intervals of one user.
+     */
+    private static final class UserIntervals {
+
+        private final NavigableSet<Interval> intervals = new TreeSet<>(INTERVAL_ORDER);
+
+        private final Map<Long, Interval> intervalsById = new HashMap<>();
+
+        /**
+         * Number of threads working on the intervals, guarded by the map of the users.
+         */
+        private int users;
+
+        /**
+         * Number of pending intervals, written under the monitor of the intervals.
+         */
+        private volatile int pending;
+
+        private boolean isPinned() {
+            return users > 0 || pending > 0;
+        }
+
+        private boolean overlaps(final Interval candidate) {
+            Iterator<Interval> before = intervals.headSet(Interval.probe(candidate.end), false).descendingIterator();
+            while (before.hasNext()) {
+                Interval existing = before.next();
+                if (candidate.id == null || !candidate.id.equals(existing.id)) {
+                    return existing.end.isAfter(candidate.start);
+                }
+            }
+            return false;
+        }
+
+        private void put(final Interval interval) {
+            if (interval.id != null) {
+                Interval previous = intervalsById.put(interval.id, interval);
+                if (previous != null) {
+                    intervals.remove(previous);
+                } else {
+                    removePending(new Interval(null, interval.start, interval.end));
+                }
+            } else {
+                pending++;
+            }
+            intervals.add(interval);
+        }
+
+        private boolean removePending(final Interval interval) {
+            if (intervals.remove(interval)) {
+                pending--;
+                return true;
+            }
+            return false;
+        }
+
+        private void remove(final Long id) {
+            Interval interval = intervalsById.remove(id);
+            if (interval != null) {
+                intervals.remove(interval);
+            }
+        }
+    }
+
+    /**
+     * Timeline [start, end) of an exercise.
+     */
+    private static final class Interval {
+
+        private final Long id;
+
+        private final LocalDateTime start;
+
+        private final LocalDateTime end;
+
+        private Interval(final Long id, final LocalDateTime start, final LocalDateTime end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+
+        private static Interval of(final Exercise exercise) {
+            return new Interval(exercise.getId(), exercise.getStartTime(),
+                    exercise.getStartTime().plusSeconds(exercise.getDuration()));
+        }
+
+        /**
+         * Timeline of the exercise while it has no id.
+         */
+        private static Interval pending(final Exercise exercise) {
+            return new Interval(null, exercise.getStartTime(), exercise.getStartTime().plusSeconds(exercise.getDuration()));
+        }
+
+        /**
+         * Interval that is ordered after every interval starting before the given time, and before
+         * every interval starting at or after it.
+         */
+        private static Interval probe(final LocalDateTime start) {
+            return new Interval(null, start, LocalDateTime.MIN);
+        }
+    }
+
+    /**
+     * Access ordered map that evicts the least recently used user that is not pinned above the
+     * maximum size.
+     */
+    private static final class LeastRecentlyUsedMap extends LinkedHashMap<Long, UserIntervals> {
+
+        private final int maxSize;
+
+        private LeastRecentlyUsedMap(final int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, UserIntervals> eldest) {
+            // also catches up on the users that were pinned at the previous insertions
+            Iterator<UserIntervals> leastRecentlyUsed = values().iterator();
+            while (size() > maxSize && leastRecentlyUsed.hasNext()) {
+                if (!leastRecentlyUsed.next().isPinned()) {
+                    leastRecentlyUsed.remove();
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.exercise.ranking.service.ingest;
+
+import com.exercise.ranking.dao.ExerciseIdAllocator;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseBatchResult;
+import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.service.exception.ConflictException;
+import com.exercise.ranking.service.exception.NotFoundException;
+import com.exercise.ranking.service.exception.QueueFullException;
+import com.exercise.ranking.service.importer.ExerciseRowParser;
+import com.exercise.ranking.service.importer.InvalidRowException;
+import com.exercise.ranking.service.importer.LineChannelReader;
+import com.exercise.ranking.service.index.ExerciseIntervalIndex;
+import com.exercise.ranking.service.lock.UserLockStripes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Optional asynchronous insert of exercises, enabled with {@code ranking.ingest.async.enabled}.
+ * <p>
+ * An exercise is checked and reserved against the {@link ExerciseIntervalIndex}, which must be
+ * enabled, under the lock of its user in the {@link UserLockStripes}, like the synchronous inserts.
+ * It is then given its id by the {@link ExerciseIdAllocator} and handed to the shard of its user.
+ * Every shard has a bounded queue and a single writer thread, which appends the queued exercises to
+ * the write-ahead file of the shard and forces it to disk, acknowledges them with their id, and then
+ * inserts them with {@link ExerciseService#insertReserved(List)} in JDBC batches. The write-ahead
+ * file is truncated once its exercises are persisted, and the exercises left in it are inserted with
+ * their id by {@link ExerciseService#insertAll(List)} when the application starts, except the ones
+ * already persisted.
+ * <p>
+ * A full queue rejects the exercise with a {@link QueueFullException}, so that the client retries
+ * later. Since every insert of this instance sees the reserved exercises, the insert of an accepted
+ * exercise can only be rejected if it overlaps an exercise written by another instance, which is
+ * logged.
+ */
+@Component
+public class AsyncExerciseIngest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncExerciseIngest.class);
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final ExerciseService exerciseService;
+
+    private final ExerciseIntervalIndex exerciseIntervalIndex;
+
+    private final ExerciseRepository exerciseRepository;
+
+    private final ExerciseIdAllocator exerciseIdAllocator;
+
+    private final UserLockStripes userLockStripes;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    private final List<Shard> shards = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    public AsyncExerciseIngest(final ExerciseService exerciseService, final ExerciseIntervalIndex exerciseIntervalIndex,
+            final ExerciseRepository exerciseRepository, final ExerciseIdAllocator exerciseIdAllocator, final UserLockStripes userLockStripes,
+            @Value("${ranking.ingest.async.enabled:false}") final boolean enabled,
+            @Value("${ranking.ingest.shards:4}") final int shardCount,
+            @Value("${ranking.ingest.queue-capacity:10000}") final int queueCapacity,
+            @Value("${ranking.ingest.batch-size:500}") final int batchSize,
+            @Value("${ranking.ingest.wal-directory:ingest-wal}") final String walDirectory) throws IOException {
+        this.exerciseService = exerciseService;
+        this.exerciseIntervalIndex = exerciseIntervalIndex;
+        this.exerciseRepository = exerciseRepository;
+        this.exerciseIdAllocator = exerciseIdAllocator;
+        this.userLockStripes = userLockStripes;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        if (!enabled) {
+            return;
+        }
+        if (!exerciseIntervalIndex.isEnabled()) {
+            throw new IllegalStateException("ranking.ingest.async.enabled requires ranking.exercise-index.enabled");
+        }
+        Path directory = Files.createDirectories(Paths.get(walDirectory));
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new Shard(i, directory.resolve("shard-" + i + ".wal"), queueCapacity));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reserves the timeline of the exercise, gives it its id and queues it for the writer of its
+     * user.
+     *
+     * @param exercise the exercise to insert.
+     * @return the id of the exercise, completed once the exercise is written to the write-ahead
+     * file.
+     * @throws NotFoundException  if the asynchronous insert is not enabled.
+     * @throws ConflictException  if there is an existing or queued exercise for the exercise's period.
+     * @throws QueueFullException if the queue of the user's shard is full, or its writer stopped.
+     */
+    public CompletableFuture<Long> submit(final Exercise exercise) throws NotFoundException, ConflictException, QueueFullException {
+        if (!enabled) {
+            throw new NotFoundException("Asynchronous insert is not enabled");
+        }
+        if (!userLockStripes.withLock(exercise.getUserId(), () -> exerciseIntervalIndex.tryPut(exercise))) {
+            throw new ConflictException("An existing exercise timeline for this user has a conflict with the new exercise timeline");
+        }
+        try {
+            exercise.setId(exerciseIdAllocator.nextId());
+        } catch (RuntimeException e) {
+            exerciseIntervalIndex.discard(exercise);
+            throw e;
+        }
+        PendingExercise pending = new PendingExercise(exercise);
+        Shard shard = shards.get(Math.floorMod(exercise.getUserId().hashCode(), shards.size()));
+        if (!running || !shard.accepting || !shard.queue.offer(pending)) {
+            exerciseIntervalIndex.discard(exercise);
+            throw new QueueFullException("The insert queue is full, retry later");
+        }
+        // the writer stopped after the check, and may have failed the queue before the offer
+        if (!shard.accepting && shard.queue.remove(pending)) {
+            exerciseIntervalIndex.discard(exercise);
+            throw new QueueFullException("The insert queue is stopped, retry later");
+        }
+        return pending.durable;
+    }
+
+    /**
+     * Inserts the exercises left in the write-ahead files and starts the writers.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() throws IOException {
+        for (Shard shard : shards) {
+            shard.recover();
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Stops accepting exercises and lets the writers drain their queues.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            if (shard.thread.isAlive()) {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(30));
+            }
+        }
+    }
+
+    /**
+     * @param reserved whether the exercises are reserved in the index, rather than recovered.
+     */
+    private void persist(final List<Exercise> exercises, final boolean reserved) {
+        List<ExerciseBatchResult> results = reserved ? exerciseService.insertReserved(exercises) : exerciseService.insertAll(exercises);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).getStatus() != ExerciseBatchResult.Status.CREATED) {
+                if (reserved) {
+                    exerciseIntervalIndex.discard(exercises.get(i));
+                }
+                LOG.warn("Dropped queued exercise {} of user {}: {}", exercises.get(i).getId(), exercises.get(i).getUserId(),
+                        results.get(i).getMessage());
+            }
+        }
+    }
+
+    /**
+     * Inserts the recovered exercises that were not persisted before the write-ahead file was
+     * truncated.
+     */
+    private void persistRecovered(final List<Exercise> exercises) {
+        Set<Long> ids = new HashSet<>();
+        for (Exercise exercise : exercises) {
+            if (exercise.getId() != null) {
+                ids.add(exercise.getId());
+            }
+        }
+        Set<Long> persisted = new HashSet<>();
+        if (!ids.isEmpty()) {
+            for (Exercise exercise : exerciseRepository.findAllById(ids)) {
+                persisted.add(exercise.getId());
+            }
+        }
+        List<Exercise> remaining = new ArrayList<>(exercises.size());
+        for (Exercise exercise : exercises) {
+            if (exercise.getId() == null || !persisted.contains(exercise.getId())) {
+                remaining.add(exercise);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            persist(remaining, false);
+        }
+    }
+
+    /**
+     * The id of the exercise, a tab and the exercise, see {@link #toJson(Exercise)}.
+     */
+    static String toWalLine(final Exercise exercise) {
+        return exercise.getId() + "\t" + toJson(exercise);
+    }
+
+    /**
+     * Reads a line of {@link #toWalLine(Exercise)}, or a line of JSON without id.
+     */
+    static Exercise fromWalLine(final String line) throws InvalidRowException {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            return ExerciseRowParser.parseJson(line);
+        }
+        Exercise exercise = ExerciseRowParser.parseJson(line.substring(tab + 1));
+        try {
+            exercise.setId(Long.valueOf(line.substring(0, tab)));
+        } catch (NumberFormatException e) {
+            throw new InvalidRowException("Invalid id: " + line.substring(0, tab));
+        }
+        return exercise;
+    }
+
+    /**
+     * One line of JSON with the fields read by {@link ExerciseRowParser#parseJson(String)}.
+     */
+    static String toJson(final Exercise exercise) {
+        StringBuilder json = new StringBuilder(128)
+                .append("{\"userId\":").append(exercise.getUserId())
+                .append(",\"type\":\"").append(exercise.getType().name())
+                .append("\",\"description\":");
+        appendString(json, exercise.getDescription());
+        return json.append(",\"startTime\":\"").append(exercise.getStartTime().atOffset(ZoneOffset.UTC))
+                .append("\",\"duration\":").append(exercise.getDuration())
+                .append(",\"calories\":").append(exercise.getCalories())
+                .append("}\n").toString();
+    }
+
+    private static void appendString(final StringBuilder json, final String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Queue, write-ahead file and writer thread of a subset of the users.
+     */
+    private final class Shard implements Runnable {
+
+        private final Path walFile;
+
+        private final BlockingQueue<PendingExercise> queue;
+
+        private final Thread thread;
+
+        /**
+         * Whether the writer takes exercises, false once it stopped for good.
+         */
+        private volatile boolean accepting = true;
+
+        private Shard(final int number, final Path walFile, final int queueCapacity) {
+            this.walFile = walFile;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.thread = new Thread(this, "exercise-ingest-" + number);
+            this.thread.setDaemon(true);
+        }
+
+        private void recover() throws IOException {
+            if (!Files.exists(walFile) || Files.size(walFile) == 0) {
+                return;
+            }
+            List<Exercise> exercises = new ArrayList<>();
+            try (LineChannelReader reader = new LineChannelReader(walFile, 0)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        exercises.add(fromWalLine(line));
+                    } catch (InvalidRowException e) {
+                        // the last line may be torn by a crash, it was never acknowledged
+                        LOG.warn("Skipped unreadable line of {}: {}", walFile, e.getMessage());
+                    }
+                    if (exercises.size() == batchSize) {
+                        persistRecovered(exercises);
+                        exercises.clear();
+                    }
+                }
+            }
+            if (!exercises.isEmpty()) {
+                persistRecovered(exercises);
+            }
+            try (FileChannel wal = FileChannel.open(walFile, StandardOpenOption.WRITE)) {
+                wal.truncate(0);
+                wal.force(true);
+            }
+            LOG.info("Recovered the queued exercises of {}", walFile);
+        }
+
+        @Override
+        public void run() {
+            List<PendingExercise> batch = new ArrayList<>(batchSize);
+            try (FileChannel wal = FileChannel.open(walFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                while (running || !queue.isEmpty()) {
+                    PendingExercise first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    if (append(wal, batch)) {
+                        flush(wal, batch);
+                    }
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                LOG.error("Cannot open " + walFile + ", the writer of the shard stopped", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.error("The writer of " + walFile + " stopped", e);
+            } finally {
+                rejectQueued();
+            }
+        }
+
+        /**
+         * Stops accepting exercises and fails the queued ones, which are not in the write-ahead
+         * file yet. The batch being flushed is acknowledged already and recovered on the next start.
+         */
+        private void rejectQueued() {
+            accepting = false;
+            List<PendingExercise> rejected = new ArrayList<>();
+            queue.drainTo(rejected);
+            for (PendingExercise pending : rejected) {
+                exerciseIntervalIndex.discard(pending.exercise);
+                pending.durable.completeExceptionally(new QueueFullException("The insert queue is stopped, retry later"));
+            }
+        }
+
+        /**
+         * Writes the batch to the write-ahead file and forces it to disk, then acknowledges it.
+         */
+        private boolean append(final FileChannel wal, final List<PendingExercise> batch) {
+            StringBuilder lines = new StringBuilder(batch.size() * 160);
+            for (PendingExercise pending : batch) {
+                lines.append(toWalLine(pending.exercise));
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    wal.write(buffer);
+                }
+                wal.force(false);
+            } catch (IOException e) {
+                for (PendingExercise pending : batch) {
+                    exerciseIntervalIndex.discard(pending.exercise);
+                    pending.durable.completeExceptionally(e);
+                }
+                return false;
+            }
+            for (PendingExercise pending : batch) {
+                pending.durable.complete(pending.exercise.getId());
+            }
+            return true;
+        }
+
+        /**
+         * Inserts the batch, retrying while the database fails, and truncates the write-ahead file.
+         */
+        private void flush(final FileChannel wal, final List<PendingExercise> batch) throws InterruptedException {
+            List<Exercise> exercises = new ArrayList<>(batch.size());
+            for (PendingExercise pending : batch) {
+                exercises.add(pending.exercise);
+            }
+            while (true) {
+                try {
+                    persist(exercises, true);
+                    break;
+                } catch (RuntimeException e) {
+                    LOG.warn("Insert of {} queued exercises failed, retrying", exercises.size(), e);
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                }
+            }
+            try {
+                wal.truncate(0);
+            } catch (IOException e) {
+                // the persisted exercises stay in the file, they are skipped by their id if it is
+                // recovered, and the truncate is tried again after the next batch
+                LOG.error("Cannot truncate " + walFile, e);
+            }
+        }
+    }
+
+    /**
+     * An accepted exercise and its acknowledgement.
+     */
+    private static final class PendingExercise {
+
+        private final Exercise exercise;
+
+        private final CompletableFuture<Long> durable = new CompletableFuture<>();
+
+        private PendingExercise(final Exercise exercise) {
+            this.exercise = exercise;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.exercise.ranking.service.lock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fixed set of locks that the users are hashed onto, to serialize the read-check-write of the
+ * exercises of a user without a global lock. Writes of users on different stripes run in parallel.
+ * <p>
+ * The number of stripes is {@code ranking.write-lock.stripes}. The locks only serialize the writes
+ * of this instance.
+ */
+@Component
+public class UserLockStripes {
+
+    private final ReentrantLock[] locks;
+
+    public UserLockStripes(@Value("${ranking.write-lock.stripes:64}") final int stripes) {
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs the action holding the lock of the user.
+     *
+     * @param userId the user whose exercises are written.
+     * @param action the read-check-write of the exercises.
+     * @return the result of the action.
+     */
+    public <T> T withLock(final Long userId, final Supplier<T> action) {
+        ReentrantLock lock = locks[stripeOf(userId)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the action holding the locks of all the users, taken in stripe order so that two
+     * actions on overlapping users cannot deadlock.
+     *
+     * @param userIds the users whose exercises are written.
+     * @param action  the read-check-write of the exercises.
+     * @return the result of the action.
+     */
+    public <T> T withLocks(final Collection<Long> userIds, final Supplier<T> action) {
+        boolean[] stripes = new boolean[locks.length];
+        for (Long userId : userIds) {
+            stripes[stripeOf(userId)] = true;
+        }
+        int locked = 0;
+        try {
+            for (; locked < locks.length; locked++) {
+                if (stripes[locked]) {
+                    locks[locked].lock();
+                }
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                if (stripes[i]) {
+                    locks[i].unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Groups the users by stripe, so that a long running job can lock one stripe at a time instead
+     * of holding the locks of all its users.
+     *
+     * @param userIds the users to group.
+     * @return the non-empty groups of users sharing a stripe, in stripe order.
+     */
+    public List<List<Long>> partitionByStripe(final Collection<Long> userIds) {
+        List<List<Long>> byStripe = new ArrayList<>(locks.length);
+        for (int i = 0; i < locks.length; i++) {
+            byStripe.add(new ArrayList<>());
+        }
+        for (Long userId : userIds) {
+            byStripe.get(stripeOf(userId)).add(userId);
+        }
+        byStripe.removeIf(List::isEmpty);
+        return byStripe;
+    }
+
+    private int stripeOf(final Long userId) {
+        int h = userId.hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), locks.length);
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.exercise.ranking.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters of the exercise writes and of the rankings, registered once so that recording does not
+ * look up nor allocate anything: the callers take {@link System#nanoTime()} around a phase and
+ * record the elapsed nanoseconds.
+ * <p>
+ * The timers publish the 50th, 95th and 99th percentiles and a percentile histogram, for {@code
+ * /actuator/metrics} and for {@code histogram_quantile} over {@code /actuator/prometheus}. The
+ * phases of an operation are the {@code phase} tag of its {@code .phase} timer:
+ * <ul>
+ *   <li>{@code exercise.ranking.phase}: {@code query} (until the rows are streamed, scan strategy
+ *   only), {@code aggregate} (the aggregation with its query, or the points cache), {@code select}
+ *   (the sort or the top selection) and {@code idle-users} (the zero-point users query).</li>
+ *   <li>{@code exercise.insert.phase}: {@code conflict-check} and {@code save}.</li>
+ *   <li>{@code exercise.update.phase}: {@code load}, {@code conflict-check} and {@code save}.</li>
+ * </ul>
+ */
+@Component
+public class ExerciseMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final Timer ranking;
+
+    private final Timer rankingQuery;
+
+    private final Timer rankingAggregate;
+
+    private final Timer rankingSelect;
+
+    private final Timer rankingIdleUsers;
+
+    private final DistributionSummary rankingUsers;
+
+    private final DistributionSummary rankingRows;
+
+    private final Timer insert;
+
+    private final Timer insertConflictCheck;
+
+    private final Timer insertSave;
+
+    private final Timer update;
+
+    private final Timer updateLoad;
+
+    private final Timer updateConflictCheck;
+
+    private final Timer updateSave;
+
+    private final Counter insertConflicts;
+
+    private final Counter updateConflicts;
+
+    private final Counter batchConflicts;
+
+    private final Counter notFound;
+
+    public ExerciseMetrics(final MeterRegistry meterRegistry) {
+        ranking = timer(meterRegistry, "exercise.ranking", "Rankings, including the ones served by the cache");
+        rankingQuery = phase(meterRegistry, "exercise.ranking.phase", "query");
+        rankingAggregate = phase(meterRegistry, "exercise.ranking.phase", "aggregate");
+        rankingSelect = phase(meterRegistry, "exercise.ranking.phase", "select");
+        rankingIdleUsers = phase(meterRegistry, "exercise.ranking.phase", "idle-users");
+        rankingUsers = summary(meterRegistry, "exercise.ranking.users", "Users of a ranking");
+        rankingRows = summary(meterRegistry, "exercise.ranking.rows", "Exercise rows fetched by a ranking, scan strategy only");
+        insert = timer(meterRegistry, "exercise.insert", "Inserts, including the wait for the lock of the user");
+        insertConflictCheck = phase(meterRegistry, "exercise.insert.phase", "conflict-check");
+        insertSave = phase(meterRegistry, "exercise.insert.phase", "save");
+        update = timer(meterRegistry, "exercise.update", "Updates, including the wait for the lock of the user and the retries");
+        updateLoad = phase(meterRegistry, "exercise.update.phase", "load");
+        updateConflictCheck = phase(meterRegistry, "exercise.update.phase", "conflict-check");
+        updateSave = phase(meterRegistry, "exercise.update.phase", "save");
+        insertConflicts = conflicts(meterRegistry, "insert");
+        updateConflicts = conflicts(meterRegistry, "update");
+        batchConflicts = conflicts(meterRegistry, "batch");
+        notFound = Counter.builder("exercise.not-found").description("Updates of an exercise that does not exist").register(meterRegistry);
+    }
+
+    private static Timer timer(final MeterRegistry meterRegistry, final String name, final String description) {
+        return Timer.builder(name).description(description).publishPercentiles(PERCENTILES).publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Timer phase(final MeterRegistry meterRegistry, final String name, final String phase) {
+        return Timer.builder(name).tag("phase", phase).publishPercentiles(PERCENTILES).publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static DistributionSummary summary(final MeterRegistry meterRegistry, final String name, final String description) {
+        return DistributionSummary.builder(name).description(description).publishPercentiles(PERCENTILES).publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static Counter conflicts(final MeterRegistry meterRegistry, final String operation) {
+        return Counter.builder("exercise.conflicts").tag("operation", operation)
+                .description("Exercises rejected because they overlap an existing exercise").register(meterRegistry);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}.
+     *
+     * @param timer      the timer of the operation or the phase.
+     * @param startNanos the {@link System#nanoTime()} at the start.
+     * @return the current {@link System#nanoTime()}, the start of the next phase.
+     */
+    public static long recordSince(final Timer timer, final long startNanos) {
+        long now = System.nanoTime();
+        timer.record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public Timer ranking() {
+        return ranking;
+    }
+
+    public Timer rankingQuery() {
+        return rankingQuery;
+    }
+
+    public Timer rankingAggregate() {
+        return rankingAggregate;
+    }
+
+    public Timer rankingSelect() {
+        return rankingSelect;
+    }
+
+    public Timer rankingIdleUsers() {
+        return rankingIdleUsers;
+    }
+
+    public DistributionSummary rankingUsers() {
+        return rankingUsers;
+    }
+
+    public DistributionSummary rankingRows() {
+        return rankingRows;
+    }
+
+    public Timer insert() {
+        return insert;
+    }
+
+    public Timer insertConflictCheck() {
+        return insertConflictCheck;
+    }
+
+    public Timer insertSave() {
+        return insertSave;
+    }
+
+    public Timer update() {
+        return update;
+    }
+
+    public Timer updateLoad() {
+        return updateLoad;
+    }
+
+    public Timer updateConflictCheck() {
+        return updateConflictCheck;
+    }
+
+    public Timer updateSave() {
+        return updateSave;
+    }
+
+    public Counter insertConflicts() {
+        return insertConflicts;
+    }
+
+    public Counter updateConflicts() {
+        return updateConflicts;
+    }
+
+    public Counter batchConflicts() {
+        return batchConflicts;
+    }
+
+    public Counter notFound() {
+        return notFound;
+    }
+}
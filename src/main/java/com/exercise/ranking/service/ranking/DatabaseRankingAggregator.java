@@ -0,0 +1,31 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.RankingWindow;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Strategy that lets the database evaluate the points and group them by user, so one row per user
+ * is read instead of one row per exercise. The idle users are found by the same query, so a ranking
+ * costs a single round trip. See {@link com.exercise.ranking.dao.ExercisePointsQueries}.
+ */
+@Component
+@ConditionalOnProperty(name = "ranking.strategy", havingValue = "database")
+public class DatabaseRankingAggregator implements RankingAggregator {
+
+    private final ExerciseRepository exerciseRepository;
+
+    public DatabaseRankingAggregator(final ExerciseRepository exerciseRepository) {
+        this.exerciseRepository = exerciseRepository;
+    }
+
+    @Override
+    public RankingWindow aggregate(final Set<Long> userIds, final LocalDateTime windowStart) {
+        return exerciseRepository.rankUsers(userIds, windowStart);
+    }
+}
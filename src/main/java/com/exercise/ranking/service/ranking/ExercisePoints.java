@@ -0,0 +1,20 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.model.ExerciseType;
+
+/**
+ * Number of points of an exercise, equal to the burned calories, or the duration of exercise
+ * multiplied to the coefficient from the exercise's type if the calories are empty.
+ */
+public final class ExercisePoints {
+
+    private ExercisePoints() {
+    }
+
+    public static double of(final Double calories, final Long duration, final ExerciseType type) {
+        if (null == calories) {
+            return duration * type.getDurationToCaloriesRate();
+        }
+        return calories;
+    }
+}
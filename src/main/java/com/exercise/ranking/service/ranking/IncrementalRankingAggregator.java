@@ -0,0 +1,310 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Strategy that keeps a rolling aggregate of the ranking window per user in memory, so a ranking
+ * costs one lookup per user and no read of exercises.
+ * <p>
+ * The exercises of a user are grouped in daily buckets by the day they started. A bucket holds the
+ * points and the end time of each of its exercises, together with their sum and the latest end. An
+ * inserted or updated exercise only changes the bucket(s) of its old and new start day. Buckets
+ * that left the window are ignored by the ranking and dropped every midnight.
+ * <p>
+ * A user is loaded from the window exercises the first time it is ranked, and is kept up to date by
+ * the {@link ExerciseSavedEvent} from then on. Since the aggregate only follows the writes of this
+ * instance, the strategy must only be selected when a single instance writes exercises.
+ * <p>
+ * The number of users kept in memory is bounded by {@code ranking.incremental.max-users}, and the
+ * users without exercises left in the window are dropped every midnight. A dropped user is loaded
+ * again the next time it is ranked, so the bound must be above the number of users of a ranking
+ * for the rankings not to read the exercises again.
+ */
+@Component
+@ConditionalOnProperty(name = "ranking.strategy", havingValue = "incremental")
+public class IncrementalRankingAggregator implements RankingAggregator {
+
+    private static final int WINDOW_DAYS = 28;
+
+    private final ExerciseRepository exerciseRepository;
+
+    private final Map<Long, UserWindow> windowsByUser;
+
+    private final Object loadLock = new Object();
+
+    public IncrementalRankingAggregator(final ExerciseRepository exerciseRepository,
+            @Value("${ranking.incremental.max-users:1000000}") final long maxUsers) {
+        this.exerciseRepository = exerciseRepository;
+        this.windowsByUser = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .executor(Runnable::run)
+                .<Long, UserWindow>build()
+                .asMap();
+    }
+
+    @Override
+    public RankingWindow aggregate(final Set<Long> userIds, final LocalDateTime windowStart) {
+        Map<Long, UserWindow> windows = load(userIds, windowStart);
+        LocalDate firstDay = windowStart.toLocalDate();
+        List<RankingUser> rankedUserList = new ArrayList<>();
+        for (Long userId : userIds) {
+            UserWindow window = windows.get(userId);
+            RankingUser rankingUser;
+            synchronized (window) {
+                rankingUser = window.rankingUser(userId, firstDay);
+            }
+            if (rankingUser != null) {
+                rankedUserList.add(rankingUser);
+            }
+        }
+        return RankingWindow.of(rankedUserList);
+    }
+
+    /**
+     * Moves the points of the saved exercise from its previous bucket to its current one.
+     *
+     * @param event the saved exercise.
+     */
+    @EventListener
+    public void onExerciseSaved(final ExerciseSavedEvent event) {
+        Exercise saved = event.getSaved();
+        UserWindow window = windowsByUser.get(saved.getUserId());
+        if (window == null) {
+            return;
+        }
+        synchronized (window) {
+            window.put(saved.getId(), saved.getStartTime(), ExercisePoints.of(saved.getCalories(), saved.getDuration(), saved.getType()),
+                    saved.getStartTime().plusSeconds(saved.getDuration()), true);
+        }
+    }
+
+    /**
+     * Drops the buckets of the days that left the ranking window, and the users left without any
+     * bucket.
+     */
+    @Scheduled(cron = "0 0 0 * * *")
+    public void evictExpiredDays() {
+        LocalDate firstDay = LocalDate.now().minusDays(WINDOW_DAYS);
+        for (Map.Entry<Long, UserWindow> entry : windowsByUser.entrySet()) {
+            UserWindow window = entry.getValue();
+            synchronized (window) {
+                window.evictBefore(firstDay);
+                // a window that is still loading is kept, its buckets are not read yet
+                if (window.ready && window.buckets.isEmpty()) {
+                    windowsByUser.remove(entry.getKey(), window);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the users that are not aggregated yet, one load at a time. Their windows are registered
+     * before the exercises are read, so that exercises saved concurrently are not missed. An
+     * exercise that was saved during the read is taken from the event rather than from the possibly
+     * stale read.
+     * <p>
+     * The windows are returned rather than looked up again by the ranking, since a window may be
+     * evicted in between. An evicted window is only read by the rankings that already hold it.
+     *
+     * @return the window of every user.
+     */
+    private Map<Long, UserWindow> load(final Set<Long> userIds, final LocalDateTime windowStart) {
+        Map<Long, UserWindow> windows = loadedWindows(userIds);
+        if (windows != null) {
+            return windows;
+        }
+        synchronized (loadLock) {
+            windows = new HashMap<>();
+            Map<Long, UserWindow> loading = new HashMap<>();
+            for (Long userId : userIds) {
+                UserWindow created = new UserWindow();
+                UserWindow existing = windowsByUser.putIfAbsent(userId, created);
+                if (existing == null) {
+                    loading.put(userId, created);
+                    windows.put(userId, created);
+                } else {
+                    windows.put(userId, existing);
+                }
+            }
+            if (loading.isEmpty()) {
+                return windows;
+            }
+            try {
+                for (Exercise exercise : exerciseRepository.findByUsersAndStartTime(new HashSet<>(loading.keySet()), windowStart)) {
+                    UserWindow window = loading.get(exercise.getUserId());
+                    synchronized (window) {
+                        window.put(exercise.getId(), exercise.getStartTime(),
+                                ExercisePoints.of(exercise.getCalories(), exercise.getDuration(), exercise.getType()),
+                                exercise.getStartTime().plusSeconds(exercise.getDuration()), false);
+                    }
+                }
+            } catch (RuntimeException e) {
+                loading.forEach(windowsByUser::remove);
+                throw e;
+            }
+            for (UserWindow window : loading.values()) {
+                synchronized (window) {
+                    window.loaded();
+                }
+            }
+            return windows;
+        }
+    }
+
+    /**
+     * @return the windows of the users, or {@code null} if one of them is not loaded.
+     */
+    private Map<Long, UserWindow> loadedWindows(final Set<Long> userIds) {
+        Map<Long, UserWindow> windows = new HashMap<>();
+        for (Long userId : userIds) {
+            UserWindow window = windowsByUser.get(userId);
+            if (window == null || !window.ready) {
+                return null;
+            }
+            windows.put(userId, window);
+        }
+        return windows;
+    }
+
+    /**
+     * Daily buckets of one user.
+     */
+    private static final class UserWindow {
+
+        private final TreeMap<LocalDate, DayBucket> buckets = new TreeMap<>();
+
+        private final Map<Long, LocalDate> dayByExercise = new HashMap<>();
+
+        /**
+         * Exercises saved while the window is loading, {@code null} once loaded.
+         */
+        private Set<Long> savedWhileLoading = new HashSet<>();
+
+        private volatile boolean ready;
+
+        private void put(final Long exerciseId, final LocalDateTime startTime, final double points, final LocalDateTime endTime,
+                final boolean saved) {
+            if (savedWhileLoading != null) {
+                if (saved) {
+                    savedWhileLoading.add(exerciseId);
+                } else if (savedWhileLoading.contains(exerciseId)) {
+                    return;
+                }
+            }
+            LocalDate previousDay = dayByExercise.remove(exerciseId);
+            if (previousDay != null) {
+                DayBucket previousBucket = buckets.get(previousDay);
+                if (previousBucket != null && previousBucket.remove(exerciseId)) {
+                    buckets.remove(previousDay);
+                }
+            }
+            LocalDate day = startTime.toLocalDate();
+            dayByExercise.put(exerciseId, day);
+            buckets.computeIfAbsent(day, d -> new DayBucket()).put(exerciseId, points, endTime);
+        }
+
+        private void loaded() {
+            savedWhileLoading = null;
+            ready = true;
+        }
+
+        private RankingUser rankingUser(final Long userId, final LocalDate firstDay) {
+            double points = 0;
+            LocalDateTime latestExerciseTime = null;
+            for (DayBucket bucket : buckets.tailMap(firstDay, true).values()) {
+                points += bucket.points;
+                if (latestExerciseTime == null || latestExerciseTime.isBefore(bucket.latestEndTime)) {
+                    latestExerciseTime = bucket.latestEndTime;
+                }
+            }
+            return latestExerciseTime == null ? null : new RankingUser(userId, points, latestExerciseTime);
+        }
+
+        private void evictBefore(final LocalDate firstDay) {
+            Map<LocalDate, DayBucket> expired = buckets.headMap(firstDay, false);
+            for (DayBucket bucket : expired.values()) {
+                bucket.exercises.keySet().forEach(dayByExercise::remove);
+            }
+            expired.clear();
+        }
+    }
+
+    /**
+     * Points and end times of the exercises of one user that started on one day.
+     */
+    private static final class DayBucket {
+
+        private final Map<Long, Contribution> exercises = new HashMap<>();
+
+        private double points;
+
+        private LocalDateTime latestEndTime;
+
+        private void put(final Long exerciseId, final double exercisePoints, final LocalDateTime endTime) {
+            exercises.put(exerciseId, new Contribution(exercisePoints, endTime));
+            summarize();
+        }
+
+        /**
+         * Removes the exercise from the bucket.
+         *
+         * @return true if the bucket is empty.
+         */
+        private boolean remove(final Long exerciseId) {
+            exercises.remove(exerciseId);
+            summarize();
+            return exercises.isEmpty();
+        }
+
+        /**
+         * Recomputes the sum from the exercises of the day rather than subtracting the previous
+         * points, so that no rounding error accumulates over updates.
+         */
+        private void summarize() {
+            points = 0;
+            latestEndTime = null;
+            for (Contribution contribution : exercises.values()) {
+                points += contribution.points;
+                if (latestEndTime == null || latestEndTime.isBefore(contribution.endTime)) {
+                    latestEndTime = contribution.endTime;
+                }
+            }
+        }
+    }
+
+    /**
+     * Points and end time of one exercise.
+     */
+    private static final class Contribution {
+
+        private final double points;
+
+        private final LocalDateTime endTime;
+
+        private Contribution(final double points, final LocalDateTime endTime) {
+            this.points = points;
+            this.endTime = endTime;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.dao.ExercisePointsRow;
+import com.exercise.ranking.model.RankingUser;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Sums the points of the rows of a ranking window on several cores, for rankings of many users.
+ * <p>
+ * The users are split by a hash of their id into partitions, each with a {@link
+ * UserPointsAccumulator} of its own, so no map is shared between threads. The rows are read on the
+ * calling thread in chunks, bucketed by partition, and every partition adds its bucket while the
+ * next chunk is read. A partition adds the rows of a user in the order they were read, so the sums
+ * are the same as the ones of a single accumulator. The users are left unsorted, as the rankings
+ * order only the page they return with {@link RankingOrder#top(java.util.Collection, int)}.
+ */
+public final class PartitionedPointsAggregator {
+
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private final ForkJoinPool pool;
+
+    private final int partitions;
+
+    /**
+     * @param pool       the pool the partitions are aggregated in.
+     * @param partitions the number of partitions, usually the parallelism of the pool.
+     */
+    public PartitionedPointsAggregator(final ForkJoinPool pool, final int partitions) {
+        this.pool = pool;
+        this.partitions = partitions;
+    }
+
+    /**
+     * Aggregates the rows per user.
+     *
+     * @param rows          the rows of the window, consumed on the calling thread.
+     * @param expectedUsers the expected number of distinct users.
+     * @return the ranking users, unsorted.
+     */
+    public List<RankingUser> aggregate(final Iterator<ExercisePointsRow> rows, final int expectedUsers) {
+        UserPointsAccumulator[] accumulators = new UserPointsAccumulator[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            accumulators[partition] = new UserPointsAccumulator(expectedUsers / partitions + 1);
+        }
+        List<List<ExercisePointsRow>> buckets = newBuckets();
+        ForkJoinTask<?> pending = null;
+        int buffered = 0;
+        while (rows.hasNext()) {
+            ExercisePointsRow row = rows.next();
+            buckets.get(partitionOf(row.getUserId())).add(row);
+            if (++buffered == CHUNK_SIZE) {
+                pending = addChunk(accumulators, buckets, pending);
+                buckets = newBuckets();
+                buffered = 0;
+            }
+        }
+        addChunk(accumulators, buckets, pending).join();
+
+        List<RankingUser> rankingUsers = new ArrayList<>(expectedUsers);
+        for (UserPointsAccumulator accumulator : accumulators) {
+            rankingUsers.addAll(accumulator.toRankingUsers());
+        }
+        return rankingUsers;
+    }
+
+    /**
+     * Adds the buckets of a chunk once the previous chunk is added, as the rows of a user must be
+     * added in order.
+     */
+    private ForkJoinTask<?> addChunk(final UserPointsAccumulator[] accumulators, final List<List<ExercisePointsRow>> buckets,
+            final ForkJoinTask<?> previous) {
+        if (previous != null) {
+            previous.join();
+        }
+        return pool.submit(() -> {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(partitions);
+            for (int partition = 0; partition < partitions; partition++) {
+                UserPointsAccumulator accumulator = accumulators[partition];
+                List<ExercisePointsRow> bucket = buckets.get(partition);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    for (ExercisePointsRow row : bucket) {
+                        accumulator.add(row.getUserId(), ExercisePoints.of(row.getCalories(), row.getDuration(), row.getType()),
+                                row.getStartTime(), row.getDuration());
+                    }
+                }));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        });
+    }
+
+    private List<List<ExercisePointsRow>> newBuckets() {
+        List<List<ExercisePointsRow>> buckets = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            buckets.add(new ArrayList<>(2 * CHUNK_SIZE / partitions));
+        }
+        return buckets;
+    }
+
+    private int partitionOf(final long userId) {
+        // not the hash of the accumulator, so that the users of a partition spread over its table
+        long h = userId * 0xC2B2AE3D27D4EB4FL;
+        return (int) ((h >>> 33) % partitions);
+    }
+}
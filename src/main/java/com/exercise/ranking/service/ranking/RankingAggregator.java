@@ -0,0 +1,24 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Strategy that sums the points and finds the end of the latest exercise of the users who
+ * exercised in the ranking window. The strategy is selected with {@code ranking.strategy}.
+ */
+public interface RankingAggregator {
+
+    /**
+     * Aggregates the exercises that started at or after the start of the window.
+     *
+     * @param userIds     the user ids to rank.
+     * @param windowStart the start of the ranking window.
+     * @return the unsorted {@link RankingUser} of every given user with at least one exercise in
+     *     the window, and the idle users if the strategy looks them up in the same query.
+     */
+    RankingWindow aggregate(Set<Long> userIds, LocalDateTime windowStart);
+}
@@ -0,0 +1,67 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.model.RankingUser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Order of the ranking, by points in descending order and by the end of the latest exercise in
+ * descending order when the points are the same. Users with the same points and end are ordered by
+ * id, so that the order does not depend on the order the users were aggregated in.
+ */
+public final class RankingOrder {
+
+    public static final Comparator<RankingUser> RANKING = Comparator.comparing(RankingUser::getPoints, Comparator.reverseOrder())
+            .thenComparing(RankingUser::getLatestExerciseTime, Comparator.reverseOrder())
+            .thenComparing(RankingUser::getUserId);
+
+    // below this size, Arrays.parallelSort sorts sequentially anyway
+    private static final int PARALLEL_SORT_MIN_SIZE = 1 << 13;
+
+    private RankingOrder() {
+    }
+
+    /**
+     * Selects the first {@code k} users of the ranking with a bounded heap, in O(n log k), instead
+     * of sorting all of them. When all of them are selected, large rankings are sorted with a
+     * parallel merge sort.
+     *
+     * @param rankingUsers the unsorted users.
+     * @param k            the number of users to select.
+     * @return the first {@code k} users (or all of them if there are fewer) in ranking order.
+     */
+    public static List<RankingUser> top(final Collection<RankingUser> rankingUsers, final int k) {
+        if (k >= rankingUsers.size() && rankingUsers.size() >= PARALLEL_SORT_MIN_SIZE) {
+            RankingUser[] sorted = rankingUsers.toArray(new RankingUser[0]);
+            Arrays.parallelSort(sorted, RANKING);
+            return new ArrayList<>(Arrays.asList(sorted));
+        }
+        if (k >= rankingUsers.size()) {
+            List<RankingUser> sorted = new ArrayList<>(rankingUsers);
+            sorted.sort(RANKING);
+            return sorted;
+        }
+        List<RankingUser> selected = new ArrayList<>(k);
+        if (k == 0) {
+            return selected;
+        }
+        // the head of the heap is the last of the selected users
+        PriorityQueue<RankingUser> heap = new PriorityQueue<>(k, RANKING.reversed());
+        for (RankingUser rankingUser : rankingUsers) {
+            if (heap.size() < k) {
+                heap.add(rankingUser);
+            } else if (RANKING.compare(rankingUser, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(rankingUser);
+            }
+        }
+        selected.addAll(heap);
+        selected.sort(RANKING);
+        return selected;
+    }
+}
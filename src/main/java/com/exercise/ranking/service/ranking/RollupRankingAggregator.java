@@ -0,0 +1,38 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.dao.UserDailyPointsRepository;
+import com.exercise.ranking.dao.UserPointsView;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Strategy that sums the {@code user_daily_points} rollup of the window, at most one row per user
+ * and day, instead of the exercises. See {@link com.exercise.ranking.service.rollup.DailyPointsRollup}.
+ */
+@Component
+@ConditionalOnProperty(name = "ranking.strategy", havingValue = "rollup")
+public class RollupRankingAggregator implements RankingAggregator {
+
+    private final UserDailyPointsRepository userDailyPointsRepository;
+
+    public RollupRankingAggregator(final UserDailyPointsRepository userDailyPointsRepository) {
+        this.userDailyPointsRepository = userDailyPointsRepository;
+    }
+
+    @Override
+    public RankingWindow aggregate(final Set<Long> userIds, final LocalDateTime windowStart) {
+        List<RankingUser> rankedUserList = new ArrayList<>();
+        for (UserPointsView view : userDailyPointsRepository.sumByUsersSince(userIds, windowStart.toLocalDate())) {
+            rankedUserList.add(new RankingUser(view.getUserId(), view.getPoints(), view.getLatestExerciseTime()));
+        }
+        return RankingWindow.of(rankedUserList);
+    }
+}
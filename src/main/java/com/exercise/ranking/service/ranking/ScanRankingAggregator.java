@@ -0,0 +1,124 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.dao.ExercisePointsRow;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+import com.exercise.ranking.service.metrics.ExerciseMetrics;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Default strategy, streams the exercises of the window from the database on every ranking and sums
+ * them up in a {@link UserPointsAccumulator}. Only the ranked columns are read, as
+ * {@link ExercisePointsRow}s in a read-only transaction.
+ * <p>
+ * Rankings of at least {@code ranking.parallel.threshold} users are summed up on several cores by a
+ * {@link PartitionedPointsAggregator}, with the same result. The time until the rows are streamed
+ * and the number of rows are recorded by the {@link ExerciseMetrics}.
+ */
+@Component
+@ConditionalOnProperty(name = "ranking.strategy", havingValue = "scan", matchIfMissing = true)
+public class ScanRankingAggregator implements RankingAggregator {
+
+    private final ExerciseRepository exerciseRepository;
+
+    private final int parallelThreshold;
+
+    private final ForkJoinPool pool;
+
+    private final PartitionedPointsAggregator partitionedAggregator;
+
+    private final ExerciseMetrics exerciseMetrics;
+
+    /**
+     * @param parallelThreshold the number of users from which the ranking is summed up in
+     *                          parallel, {@link Integer#MAX_VALUE} to never do it.
+     * @param partitions        the number of partitions and threads of the parallel aggregation, 0
+     *                          for the number of processors.
+     */
+    public ScanRankingAggregator(final ExerciseRepository exerciseRepository,
+            @Value("${ranking.parallel.threshold:50000}") final int parallelThreshold,
+            @Value("${ranking.parallel.partitions:0}") final int partitions, final ExerciseMetrics exerciseMetrics) {
+        this.exerciseRepository = exerciseRepository;
+        this.exerciseMetrics = exerciseMetrics;
+        this.parallelThreshold = parallelThreshold;
+        if (parallelThreshold == Integer.MAX_VALUE) {
+            this.pool = null;
+            this.partitionedAggregator = null;
+        } else {
+            int parallelism = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+            this.pool = new ForkJoinPool(parallelism);
+            this.partitionedAggregator = new PartitionedPointsAggregator(pool, parallelism);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public RankingWindow aggregate(final Set<Long> userIds, final LocalDateTime windowStart) {
+
+        long start = System.nanoTime();
+        if (partitionedAggregator != null && userIds.size() >= parallelThreshold) {
+            try (Stream<ExercisePointsRow> rows = exerciseRepository.streamPointsByUsersAndStartTime(userIds, windowStart)) {
+                ExerciseMetrics.recordSince(exerciseMetrics.rankingQuery(), start);
+                CountingIterator iterator = new CountingIterator(rows.iterator());
+                RankingWindow rankingWindow = RankingWindow.of(partitionedAggregator.aggregate(iterator, userIds.size()));
+                exerciseMetrics.rankingRows().record(iterator.count);
+                return rankingWindow;
+            }
+        }
+        UserPointsAccumulator accumulator = new UserPointsAccumulator(userIds.size());
+        long count = 0;
+        try (Stream<ExercisePointsRow> rows = exerciseRepository.streamPointsByUsersAndStartTime(userIds, windowStart)) {
+            ExerciseMetrics.recordSince(exerciseMetrics.rankingQuery(), start);
+            Iterator<ExercisePointsRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                ExercisePointsRow data = iterator.next();
+                accumulator.add(data.getUserId(), ExercisePoints.of(data.getCalories(), data.getDuration(), data.getType()),
+                        data.getStartTime(), data.getDuration());
+                count++;
+            }
+        }
+        exerciseMetrics.rankingRows().record(count);
+        return RankingWindow.of(accumulator.toRankingUsers());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static final class CountingIterator implements Iterator<ExercisePointsRow> {
+
+        private final Iterator<ExercisePointsRow> rows;
+
+        private long count;
+
+        CountingIterator(final Iterator<ExercisePointsRow> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rows.hasNext();
+        }
+
+        @Override
+        public ExercisePointsRow next() {
+            count++;
+            return rows.next();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.exercise.ranking.service.ranking;
+
+import com.exercise.ranking.model.RankingUser;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sums the points and keeps the end of the latest exercise per user, without allocating per added
+ * exercise.
+ * <p>
+ * Open addressing hash table keyed by the primitive user id with linear probing. The points are
+ * kept as {@code double} and the latest end as epoch seconds and nanoseconds (UTC), in parallel
+ * arrays. The points of a user are added in the order of the calls, so the sums are the same as the
+ * ones of a {@code Map<Long, Double>} filled in the same order. {@link RankingUser} objects are only
+ * created by {@link #toRankingUsers()}.
+ */
+public final class UserPointsAccumulator {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] userIds;
+
+    private boolean[] used;
+
+    private double[] points;
+
+    private long[] latestEndSeconds;
+
+    private int[] latestEndNanos;
+
+    private int size;
+
+    private int mask;
+
+    /**
+     * Creates an accumulator that does not need to grow up to the given number of users.
+     *
+     * @param expectedUsers the expected number of distinct users.
+     */
+    public UserPointsAccumulator(final int expectedUsers) {
+        allocate(tableSizeFor(expectedUsers));
+    }
+
+    /**
+     * Adds the points and the end time of an exercise of the user.
+     *
+     * @param userId         the user who did the exercise.
+     * @param exercisePoints the points of the exercise.
+     * @param endSeconds     the end of the exercise, in seconds since the epoch (UTC).
+     * @param endNanos       the nanoseconds of the end of the exercise.
+     */
+    public void add(final long userId, final double exercisePoints, final long endSeconds, final int endNanos) {
+        int slot = slotOf(userId);
+        if (!used[slot]) {
+            used[slot] = true;
+            userIds[slot] = userId;
+            points[slot] = exercisePoints;
+            latestEndSeconds[slot] = endSeconds;
+            latestEndNanos[slot] = endNanos;
+            if (++size > userIds.length * LOAD_FACTOR) {
+                grow();
+            }
+            return;
+        }
+        points[slot] += exercisePoints;
+        if (latestEndSeconds[slot] < endSeconds || (latestEndSeconds[slot] == endSeconds && latestEndNanos[slot] < endNanos)) {
+            latestEndSeconds[slot] = endSeconds;
+            latestEndNanos[slot] = endNanos;
+        }
+    }
+
+    /**
+     * Adds an exercise of the user.
+     *
+     * @param userId         the user who did the exercise.
+     * @param exercisePoints the points of the exercise.
+     * @param startTime      the start of the exercise.
+     * @param duration       the duration of the exercise in seconds.
+     */
+    public void add(final long userId, final double exercisePoints, final LocalDateTime startTime, final long duration) {
+        add(userId, exercisePoints, startTime.toEpochSecond(ZoneOffset.UTC) + duration, startTime.getNano());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates the {@link RankingUser} of every user that was added, in no particular order.
+     *
+     * @return the unsorted ranking users.
+     */
+    public List<RankingUser> toRankingUsers() {
+        List<RankingUser> rankingUsers = new ArrayList<>(size);
+        for (int slot = 0; slot < userIds.length; slot++) {
+            if (used[slot]) {
+                rankingUsers.add(new RankingUser(userIds[slot], points[slot],
+                        LocalDateTime.ofEpochSecond(latestEndSeconds[slot], latestEndNanos[slot], ZoneOffset.UTC)));
+            }
+        }
+        return rankingUsers;
+    }
+
+    private int slotOf(final long userId) {
+        int slot = hash(userId) & mask;
+        while (used[slot] && userIds[slot] != userId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldUserIds = userIds;
+        boolean[] oldUsed = used;
+        double[] oldPoints = points;
+        long[] oldSeconds = latestEndSeconds;
+        int[] oldNanos = latestEndNanos;
+        allocate(oldUserIds.length * 2);
+        for (int i = 0; i < oldUserIds.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slotOf(oldUserIds[i]);
+                used[slot] = true;
+                userIds[slot] = oldUserIds[i];
+                points[slot] = oldPoints[i];
+                latestEndSeconds[slot] = oldSeconds[i];
+                latestEndNanos[slot] = oldNanos[i];
+            }
+        }
+    }
+
+    private void allocate(final int tableSize) {
+        userIds = new long[tableSize];
+        used = new boolean[tableSize];
+        points = new double[tableSize];
+        latestEndSeconds = new long[tableSize];
+        latestEndNanos = new int[tableSize];
+        mask = tableSize - 1;
+    }
+
+    private static int tableSizeFor(final int expectedUsers) {
+        int tableSize = 16;
+        while (tableSize * LOAD_FACTOR < expectedUsers && tableSize < (1 << 30)) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    private static int hash(final long userId) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,194 @@
+package com.exercise.ranking.service.rollup;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.dao.UserDailyPointsRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.UserDailyPoints;
+import com.exercise.ranking.service.event.ExerciseBatchSavedEvent;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
+import com.exercise.ranking.service.lock.UserLockStripes;
+import com.exercise.ranking.service.ranking.ExercisePoints;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintains the {@code user_daily_points} rollup, one row per user and day the user started
+ * exercises on, with the sum of their points and the end of the latest one.
+ * <p>
+ * Once per write, the rows of the old and new start days of the saved exercises are recomputed
+ * from the exercises of those users and days, with one read and one transaction per day. The
+ * exercises are already persisted at that point, so a refresh that fails does not fail the write:
+ * its rows are refreshed again by a scheduled retry. A scheduled job drops the rows that left the
+ * ranking window and rebuilds the rows of the window from the {@code exercises} table, which also
+ * repairs any row missed otherwise. The rollup is rebuilt when the application starts as well.
+ * <p>
+ * The saved events are published while the writer holds the locks of its users, and a day is
+ * rebuilt or retried one stripe of users at a time under the lock of that stripe, so a rebuild
+ * never overwrites the row refreshed by a concurrent write with the exercises it read before that
+ * write.
+ */
+@Component
+@ConditionalOnProperty(name = "ranking.strategy", havingValue = "rollup")
+public class DailyPointsRollup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DailyPointsRollup.class);
+
+    private static final int WINDOW_DAYS = 28;
+
+    private static final int REBUILD_CHUNK = 1000;
+
+    private final ExerciseRepository exerciseRepository;
+
+    private final UserDailyPointsRepository userDailyPointsRepository;
+
+    private final UserLockStripes userLockStripes;
+
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Users whose rows of a day could not be refreshed after a write, by day.
+     */
+    private final ConcurrentMap<LocalDate, Set<Long>> failedUsersByDay = new ConcurrentHashMap<>();
+
+    public DailyPointsRollup(final ExerciseRepository exerciseRepository, final UserDailyPointsRepository userDailyPointsRepository,
+            final UserLockStripes userLockStripes, final PlatformTransactionManager transactionManager) {
+        this.exerciseRepository = exerciseRepository;
+        this.userDailyPointsRepository = userDailyPointsRepository;
+        this.userLockStripes = userLockStripes;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Recomputes the rows of the days the saved exercises started on, before and after the updates,
+     * once per user and day.
+     *
+     * @param event the saved exercises of one write.
+     */
+    @EventListener
+    public void onExercisesSaved(final ExerciseBatchSavedEvent event) {
+        Map<LocalDate, Set<Long>> usersByDay = new TreeMap<>();
+        for (ExerciseSavedEvent saved : event.getEvents()) {
+            addDay(usersByDay, saved.getSaved());
+            if (saved.getPrevious() != null) {
+                addDay(usersByDay, saved.getPrevious());
+            }
+        }
+        usersByDay.forEach(this::refresh);
+    }
+
+    /**
+     * Refreshes again the rows of the writes whose refresh failed.
+     */
+    @Scheduled(fixedDelayString = "${ranking.rollup.retry-delay-ms:60000}")
+    public void retryFailedRefreshes() {
+        for (LocalDate day : new ArrayList<>(failedUsersByDay.keySet())) {
+            Set<Long> userIds = failedUsersByDay.remove(day);
+            if (userIds == null) {
+                continue;
+            }
+            for (List<Long> stripe : userLockStripes.partitionByStripe(userIds)) {
+                userLockStripes.withLocks(stripe, () -> {
+                    refresh(day, stripe);
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Drops the rows that left the ranking window and rebuilds the others from the exercises.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${ranking.rollup.repair-cron:0 30 0 * * *}")
+    public void repair() {
+        LocalDate firstDay = LocalDate.now().minusDays(WINDOW_DAYS);
+        int expired = userDailyPointsRepository.deleteBefore(firstDay);
+        LocalDateTime latestStartTime = exerciseRepository.findLatestStartTime();
+        LocalDate lastDay = latestStartTime == null ? LocalDate.now() : latestStartTime.toLocalDate();
+        long start = System.currentTimeMillis();
+        for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            rebuild(day);
+        }
+        LOG.info("Rebuilt user_daily_points from {} to {} in {} ms, dropped {} expired rows", firstDay, lastDay,
+                System.currentTimeMillis() - start, expired);
+    }
+
+    /**
+     * Rebuilds the rows of the users on the day, or keeps the users to retry them if it fails.
+     */
+    private void refresh(final LocalDate day, final Collection<Long> userIds) {
+        List<Long> users = new ArrayList<>(userIds);
+        for (int from = 0; from < users.size(); from += REBUILD_CHUNK) {
+            List<Long> chunk = users.subList(from, Math.min(from + REBUILD_CHUNK, users.size()));
+            try {
+                rebuild(day, chunk);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not refresh user_daily_points of {} users on {}, retrying later", chunk.size(), day, e);
+                failedUsersByDay.merge(day, new HashSet<>(chunk), (failed, added) -> {
+                    Set<Long> merged = new HashSet<>(failed);
+                    merged.addAll(added);
+                    return merged;
+                });
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the rows of the users that started exercises on the day or that have a row for it.
+     * The users whose first exercise of the day is saved meanwhile get their row from the refresh.
+     */
+    private void rebuild(final LocalDate day) {
+        Set<Long> userIds = new HashSet<>(exerciseRepository.findUserIdsStartedBetween(day.atStartOfDay(), day.plusDays(1).atStartOfDay()));
+        userIds.addAll(userDailyPointsRepository.findUserIdsByDay(day));
+        for (List<Long> stripe : userLockStripes.partitionByStripe(userIds)) {
+            for (int from = 0; from < stripe.size(); from += REBUILD_CHUNK) {
+                List<Long> chunk = stripe.subList(from, Math.min(from + REBUILD_CHUNK, stripe.size()));
+                userLockStripes.withLocks(chunk, () -> {
+                    rebuild(day, chunk);
+                    return null;
+                });
+            }
+        }
+    }
+
+    private void rebuild(final LocalDate day, final List<Long> userIds) {
+        Map<Long, UserDailyPoints> pointsByUser = new HashMap<>();
+        for (Exercise exercise : exerciseRepository.findByUsersStartedBetween(userIds, day.atStartOfDay(), day.plusDays(1).atStartOfDay())) {
+            add(pointsByUser.computeIfAbsent(exercise.getUserId(), userId -> new UserDailyPoints(userId, day)), exercise);
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            userDailyPointsRepository.deleteByDayAndUsers(day, userIds);
+            userDailyPointsRepository.saveAll(pointsByUser.values());
+        });
+    }
+
+    private static void addDay(final Map<LocalDate, Set<Long>> usersByDay, final Exercise exercise) {
+        usersByDay.computeIfAbsent(exercise.getStartTime().toLocalDate(), day -> new HashSet<>()).add(exercise.getUserId());
+    }
+
+    private static void add(final UserDailyPoints dailyPoints, final Exercise exercise) {
+        dailyPoints.add(ExercisePoints.of(exercise.getCalories(), exercise.getDuration(), exercise.getType()),
+                exercise.getStartTime().plusSeconds(exercise.getDuration()));
+    }
+}
@@ -0,0 +1,134 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.logging.AccessLog;
+import com.exercise.ranking.logging.AccessLogInterceptor;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.DispatcherType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessLogTest {
+
+    @Test
+    public void shouldWriteEveryEntryRecordedConcurrently() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AccessLog accessLog = new AccessLog(1 << 16, lines::add);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicLong recorded = new AtomicLong();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        if (accessLog.record("GET", "/ranking", 200, 1_234_567L, i)) {
+                            recorded.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        accessLog.stop();
+
+        assertEquals(recorded.get() + accessLog.getDropped(), 40_000L);
+        assertEquals(recorded.get(), lines.size());
+        assertTrue(lines.get(0).startsWith("GET /ranking status=200 latency_ms=1.234 user_ids="), lines.get(0));
+    }
+
+    @Test
+    public void shouldDropEntriesWhenTheBufferIsFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AccessLog accessLog = new AccessLog(4, line -> {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lines.add(line);
+        });
+        int recorded = 0;
+        for (int i = 0; i < 20; i++) {
+            recorded += accessLog.record("POST", "/exercise", 201, 1_000L, -1) ? 1 : 0;
+        }
+        blocked.countDown();
+        accessLog.stop();
+
+        assertTrue(accessLog.getDropped() > 0);
+        assertEquals(20, recorded + accessLog.getDropped());
+        assertEquals(recorded, lines.size());
+        assertEquals("POST /exercise status=201 latency_ms=0.001", lines.get(0));
+    }
+
+    @Test
+    public void shouldSampleOnlyTheSuccessfulRequestsOfTheSampledTemplates() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AccessLog accessLog = new AccessLog(64, lines::add);
+        AccessLogInterceptor interceptor = new AccessLogInterceptor(accessLog, new String[] {"/ranking"}, 0.0, TimeUnit.SECONDS.toNanos(1));
+
+        handle(interceptor, "GET", "/ranking", 200, "1,2,3");
+        handle(interceptor, "GET", "/ranking", 400, "1,2,3");
+        handle(interceptor, "PUT", "/exercise/{exerciseId}", 200, null);
+        accessLog.stop();
+
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("GET /ranking status=400 "), lines.get(0));
+        assertTrue(lines.get(0).endsWith(" user_ids=3"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("PUT /exercise/{exerciseId} status=200 "), lines.get(1));
+    }
+
+    @Test
+    public void shouldRecordAFailedRequestOnceWithoutItsErrorDispatch() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AccessLog accessLog = new AccessLog(64, lines::add);
+        AccessLogInterceptor interceptor = new AccessLogInterceptor(accessLog, new String[0], 0.0, TimeUnit.SECONDS.toNanos(1));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/exercise");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/exercise");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, new Object());
+        interceptor.afterCompletion(request, response, new Object(), new IllegalStateException("unhandled"));
+        // the container forwards the same request to /error
+        request.setDispatcherType(DispatcherType.ERROR);
+        request.setRequestURI("/error");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/error");
+        response.setStatus(500);
+        interceptor.preHandle(request, response, new Object());
+        interceptor.afterCompletion(request, response, new Object(), null);
+        accessLog.stop();
+
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).startsWith("POST /exercise status=500 "), lines.get(0));
+    }
+
+    private static void handle(final AccessLogInterceptor interceptor, final String method, final String uriTemplate, final int status,
+            final String userIds) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uriTemplate);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, uriTemplate);
+        if (userIds != null) {
+            request.addParameter("userIds", userIds);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        interceptor.preHandle(request, response, new Object());
+        response.setStatus(status);
+        interceptor.afterCompletion(request, response, new Object(), null);
+    }
+}
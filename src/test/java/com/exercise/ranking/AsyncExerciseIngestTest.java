@@ -0,0 +1,170 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.ExerciseIdAllocator;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseBatchResult;
+import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.service.exception.ConflictException;
+import com.exercise.ranking.service.exception.QueueFullException;
+import com.exercise.ranking.service.index.ExerciseIntervalIndex;
+import com.exercise.ranking.service.ingest.AsyncExerciseIngest;
+import com.exercise.ranking.service.lock.UserLockStripes;
+import com.exercise.ranking.testfactory.ExerciseFactory;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AsyncExerciseIngestTest {
+
+    @TempDir
+    Path walDirectory;
+
+    private final ExerciseService exerciseService = mock(ExerciseService.class);
+
+    private final ExerciseRepository exerciseRepository = mock(ExerciseRepository.class);
+
+    private AsyncExerciseIngest asyncExerciseIngest;
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        asyncExerciseIngest.stop();
+    }
+
+    @Test
+    public void shouldAcknowledgeAfterTheWriteAheadFileAndInsertInBatches() throws Exception {
+        asyncExerciseIngest = newIngest();
+        Exercise exercise = ExerciseFactory.getExercises().get(0);
+        Exercise overlapping = ExerciseFactory.getExercises().get(0);
+        overlapping.setStartTime(exercise.getStartTime().plusSeconds(30));
+
+        asyncExerciseIngest.start();
+        Long exerciseId = asyncExerciseIngest.submit(exercise).get(5, TimeUnit.SECONDS);
+        Assertions.assertThrows(ConflictException.class, () -> asyncExerciseIngest.submit(overlapping));
+
+        assertEquals(100L, exerciseId);
+        verify(exerciseService, timeout(5000)).insertReserved(argThat(exercises -> exercises.size() == 1 && exercises.get(0) == exercise
+                && exercises.get(0).getId() == 100L));
+    }
+
+    @Test
+    public void shouldInsertTheExercisesLeftInTheWriteAheadFile() throws Exception {
+        asyncExerciseIngest = newIngest();
+        Path walFile = walDirectory.resolve("shard-0.wal");
+        Files.write(walFile, ("7\t{\"userId\":1,\"type\":\"RUNNING\",\"description\":\"des1\",\"startTime\":\"2022-04-13T17:09:42.411Z\","
+                + "\"duration\":60,\"calories\":null}\n"
+                + "8\t{\"userId\":1,\"type\":\"RUNNING\",\"description\":\"des2\",\"startTime\":\"2022-04-13T18:09:42.411Z\","
+                + "\"duration\":60,\"calories\":null}\n{\"userId\":1,\"ty").getBytes(StandardCharsets.UTF_8));
+        Exercise persisted = new Exercise();
+        persisted.setId(7L);
+        when(exerciseRepository.findAllById(any())).thenReturn(Collections.singletonList(persisted));
+
+        asyncExerciseIngest.start();
+
+        verify(exerciseService).insertAll(argThat(exercises -> exercises.size() == 1 && exercises.get(0).getId() == 8L
+                && exercises.get(0).getStartTime().equals(LocalDateTime.parse("2022-04-13T18:09:42.411"))));
+        assertEquals(0, Files.size(walFile));
+    }
+
+    @Test
+    public void shouldRejectExercisesOnceTheWriterOfTheShardStopped() throws Exception {
+        asyncExerciseIngest = newIngest();
+        when(exerciseService.insertReserved(any())).thenThrow(new AssertionError("writer failure"));
+        List<Exercise> exercises = ExerciseFactory.getExercises();
+
+        asyncExerciseIngest.start();
+        asyncExerciseIngest.submit(exercises.get(0)).get(5, TimeUnit.SECONDS);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                asyncExerciseIngest.submit(exercises.get(1)).get(5, TimeUnit.SECONDS);
+            } catch (QueueFullException | ExecutionException e) {
+                break;
+            }
+            Assertions.assertTrue(System.nanoTime() < deadline, "the writer did not stop");
+            exercises.get(1).setStartTime(exercises.get(1).getStartTime().plusHours(1));
+            exercises.get(1).setId(null);
+        }
+    }
+
+    @Test
+    public void shouldRejectTheInsertsOverlappingAQueuedExercise() throws Exception {
+        UserLockStripes userLockStripes = new UserLockStripes(16);
+        ExerciseIntervalIndex exerciseIntervalIndex = new ExerciseIntervalIndex(exerciseRepository, true, 100);
+        ExerciseService indexedService = ServiceFactory.exerciseService(exerciseRepository, exerciseIntervalIndex, userLockStripes);
+        asyncExerciseIngest = newIngest(indexedService, exerciseIntervalIndex, userLockStripes);
+        when(exerciseRepository.findByUserId(any())).thenReturn(Collections.emptyList());
+        AtomicLong ids = new AtomicLong(1);
+        when(exerciseRepository.save(any())).thenAnswer(invocation -> {
+            Exercise saved = invocation.getArgument(0);
+            saved.setId(ids.getAndIncrement());
+            return saved;
+        });
+        when(exerciseRepository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<Exercise> saved = invocation.getArgument(0);
+            saved.forEach(e -> e.setId(e.getId() == null ? ids.getAndIncrement() : e.getId()));
+            return saved;
+        });
+        Exercise queued = ExerciseFactory.getExercises().get(0);
+        Exercise overlapping = ExerciseFactory.getExercises().get(0);
+        overlapping.setStartTime(queued.getStartTime().plusSeconds(30));
+        Exercise overlappingInBatch = ExerciseFactory.getExercises().get(0);
+        overlappingInBatch.setStartTime(queued.getStartTime().minusSeconds(30));
+        Exercise after = ExerciseFactory.getExercises().get(0);
+        after.setStartTime(queued.getStartTime().plusHours(1));
+
+        // the writer is not started, the exercise stays queued and not persisted
+        asyncExerciseIngest.submit(queued);
+        Assertions.assertThrows(ConflictException.class, () -> indexedService.insert(overlapping));
+        List<ExerciseBatchResult> results = indexedService.insertAll(List.of(overlappingInBatch, after));
+
+        assertEquals(ExerciseBatchResult.Status.CONFLICT, results.get(0).getStatus());
+        assertEquals(ExerciseBatchResult.Status.CREATED, results.get(1).getStatus());
+        asyncExerciseIngest.start();
+        verify(exerciseRepository, timeout(5000)).saveAll(argThat((Iterable<Exercise> saved) -> saved.iterator().hasNext() && saved.iterator().next() == queued));
+        Assertions.assertFalse(exerciseIntervalIndex.tryPut(overlapping));
+    }
+
+    private AsyncExerciseIngest newIngest() throws Exception {
+        when(exerciseService.insertReserved(any())).thenAnswer(invocation -> {
+            List<Exercise> exercises = invocation.getArgument(0);
+            return exercises.stream().map(ExerciseBatchResult::created).collect(Collectors.toList());
+        });
+        when(exerciseService.insertAll(any())).thenAnswer(invocation -> {
+            List<Exercise> exercises = invocation.getArgument(0);
+            return exercises.stream().map(ExerciseBatchResult::created).collect(Collectors.toList());
+        });
+        return newIngest(exerciseService, new ExerciseIntervalIndex(exerciseRepository, true, 100), new UserLockStripes(16));
+    }
+
+    private AsyncExerciseIngest newIngest(final ExerciseService exerciseService, final ExerciseIntervalIndex exerciseIntervalIndex,
+            final UserLockStripes userLockStripes) throws Exception {
+        AtomicLong ids = new AtomicLong(100);
+        ExerciseIdAllocator exerciseIdAllocator = mock(ExerciseIdAllocator.class);
+        when(exerciseIdAllocator.nextId()).thenAnswer(invocation -> ids.getAndIncrement());
+        return new AsyncExerciseIngest(exerciseService, exerciseIntervalIndex, exerciseRepository, exerciseIdAllocator, userLockStripes,
+                true, 1, 10, 50, walDirectory.toString());
+    }
+}
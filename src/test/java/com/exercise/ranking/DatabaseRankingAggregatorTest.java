@@ -0,0 +1,79 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+import com.exercise.ranking.service.ranking.DatabaseRankingAggregator;
+import com.exercise.ranking.testfactory.RankingFactory;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Equivalence of the aggregation in SQL with the aggregation in Java, and of its idle users with the
+ * latest exercise query, on H2.
+ */
+@DataJpaTest
+class DatabaseRankingAggregatorTest {
+
+    private static final int USERS = 60;
+
+    @Autowired
+    private ExerciseRepository exerciseRepository;
+
+    @Test
+    public void shouldAggregateLikeTheScanOfTheWindow() {
+        Random random = new Random(20210527L);
+        LocalDateTime windowStart = LocalDate.now().atStartOfDay().minusDays(28);
+        List<Exercise> exercises = new ArrayList<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            // consecutive, non overlapping exercises from 40 days ago, some users stop before the window
+            LocalDateTime startTime = windowStart.minusDays(12).plusSeconds(random.nextInt(24 * 3600));
+            int count = random.nextInt(40);
+            for (int i = 0; i < count; i++) {
+                Exercise exercise = new Exercise();
+                exercise.setUserId(userId);
+                exercise.setDescription("random");
+                exercise.setType(ExerciseType.values()[random.nextInt(ExerciseType.values().length)]);
+                exercise.setStartTime(startTime);
+                exercise.setDuration((long) random.nextInt(7200));
+                exercise.setCalories(random.nextBoolean() ? null : random.nextInt(100_000) / 100.0);
+                exercises.add(exercise);
+                startTime = startTime.plusSeconds(exercise.getDuration() + random.nextInt(2 * 24 * 3600));
+            }
+        }
+        exerciseRepository.saveAll(exercises);
+        exerciseRepository.flush();
+
+        Set<Long> userIds = new HashSet<>();
+        for (long userId = 1; userId <= USERS + 5; userId++) {
+            userIds.add(userId);
+        }
+        Collection<RankingUser> expected = ServiceFactory.scanRankingAggregator(exerciseRepository).aggregate(userIds, windowStart).getRankedUsers();
+        RankingWindow rankingWindow = new DatabaseRankingAggregator(exerciseRepository).aggregate(userIds, windowStart);
+        RankingFactory.assertSameRanking(expected, rankingWindow.getRankedUsers());
+
+        Set<Long> idleUserIds = new HashSet<>(userIds);
+        expected.forEach(rankingUser -> idleUserIds.remove(rankingUser.getUserId()));
+        assertTrue(!idleUserIds.isEmpty());
+        List<RankingUser> expectedIdleUsers = exerciseRepository.findByDistinctUsersAndLatestExerciseTime(idleUserIds).stream()
+                .map(e -> new RankingUser(e.getUserId(), 0.0, e.getStartTime().plusSeconds(e.getDuration())))
+                .collect(Collectors.toList());
+        RankingFactory.assertSameRanking(expectedIdleUsers, rankingWindow.getIdleUsers());
+    }
+}
@@ -0,0 +1,274 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.testfactory.LoadGenerator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Capacity check of the whole application: boots it against a file-backed H2 database seeded with
+ * {@code loadtest.users * loadtest.exercises-per-user} exercises, and sends it a mix of inserts,
+ * updates and rankings at a fixed arrival rate (open model), whatever the latency of the previous
+ * requests. The latency of a request is measured from the time it was scheduled at, so a server
+ * that falls behind is not hidden by a generator that slows down with it. Prints the throughput
+ * and the HDR latency histogram of every endpoint, and the latencies of the failed requests apart.
+ * <p>
+ * The database is seeded once and reused as long as the seeding parameters are the same; the first
+ * run at full scale (1M users, 50 exercises each) takes a while. Run with
+ * {@code ./gradlew loadTest -Dloadtest.users=1000000 -Dloadtest.exercises-per-user=50 -Dloadtest.rate=1000}.
+ * <ul>
+ *   <li>{@code loadtest.users}, {@code loadtest.exercises-per-user}: the seeded volume.</li>
+ *   <li>{@code loadtest.directory}: the directory of the database files.</li>
+ *   <li>{@code loadtest.rate}: the requests per second.</li>
+ *   <li>{@code loadtest.warm-up-seconds}, {@code loadtest.seconds}: the duration of the run.</li>
+ *   <li>{@code loadtest.mix}: the weights of the endpoints, e.g. {@code insert:20,update:10,ranking:70}.</li>
+ *   <li>{@code loadtest.ranking-sizes}: the sizes of the ranked user sets, drawn uniformly.</li>
+ *   <li>{@code loadtest.profile}: the Spring profiles of the application, e.g. {@code tuned}.</li>
+ * </ul>
+ */
+@Tag("loadtest")
+class EndToEndLoadTest {
+
+    private static final int USERS = Integer.getInteger("loadtest.users", 100_000);
+
+    private static final int EXERCISES_PER_USER = Integer.getInteger("loadtest.exercises-per-user", 20);
+
+    private static final Path DIRECTORY = Paths.get(System.getProperty("loadtest.directory", "build/loadtest"));
+
+    private static final int RATE = Integer.getInteger("loadtest.rate", 500);
+
+    private static final int WARM_UP_SECONDS = Integer.getInteger("loadtest.warm-up-seconds", 30);
+
+    private static final int SECONDS = Integer.getInteger("loadtest.seconds", 120);
+
+    private static final String MIX = System.getProperty("loadtest.mix", "insert:20,update:10,ranking:70");
+
+    private static final int[] RANKING_SIZES = parseSizes(System.getProperty("loadtest.ranking-sizes", "10,100,1000"));
+
+    private static final String PROFILE = System.getProperty("loadtest.profile", "default");
+
+    private static final int SEED_CHUNK = 1_000_000;
+
+    private static final long HISTORY_SECONDS = 365L * 24 * 3600;
+
+    private static final int ID_ALLOCATION_SIZE = 50;
+
+    private enum Endpoint {
+        INSERT, UPDATE, RANKING
+    }
+
+    /**
+     * The seeded history, from which the id, user, type and period of every seeded exercise are
+     * known: exercise {@code x} (from 1) belongs to user {@code (x - 1) % users + 1} and is its
+     * {@code (x - 1) / users}-th exercise, at the start of its slot of the history.
+     */
+    private LocalDateTime historyStart;
+
+    private long slotSeconds;
+
+    // the inserts go after the history, one period each
+    private final AtomicLong nextInsert = new AtomicLong();
+
+    private final Map<Endpoint, LoadGenerator.Latencies> latencies = new EnumMap<>(Endpoint.class);
+
+    @Test
+    public void capacity() throws Exception {
+        Files.createDirectories(DIRECTORY);
+        try (ConfigurableApplicationContext context = LoadGenerator.boot(PROFILE,
+                "spring.datasource.url=jdbc:h2:file:" + DIRECTORY.toAbsolutePath().resolve("ranking"),
+                "spring.datasource.username=sa",
+                "spring.jpa.hibernate.ddl-auto=update",
+                "server.max-http-header-size=64KB")) {
+            seed(context.getBean(DataSource.class));
+            URI base = LoadGenerator.baseUri(context);
+            HttpClient httpClient = LoadGenerator.httpClient();
+            Endpoint[] mix = parseMix(MIX);
+
+            run(httpClient, base, mix, WARM_UP_SECONDS);
+            for (Endpoint endpoint : Endpoint.values()) {
+                latencies.get(endpoint).reset();
+            }
+            run(httpClient, base, mix, SECONDS);
+            report();
+        }
+    }
+
+    /**
+     * Sends the requests at the rate for the duration, and waits for the ones in flight.
+     */
+    private void run(final HttpClient httpClient, final URI base, final Endpoint[] mix, final int seconds) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+        long requests = (long) RATE * seconds;
+        AtomicLong inFlight = new AtomicLong();
+        long start = System.nanoTime();
+        for (long i = 0; i < requests; i++) {
+            long scheduled = start + i * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Endpoint endpoint = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+            inFlight.incrementAndGet();
+            httpClient.sendAsync(request(base, endpoint), HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+                latencies.get(endpoint).record(response, ex, System.nanoTime() - scheduled);
+                inFlight.decrementAndGet();
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private HttpRequest request(final URI base, final Endpoint endpoint) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (endpoint) {
+            case INSERT: {
+                long insert = nextInsert.getAndIncrement();
+                long userId = insert % USERS + 1;
+                LocalDateTime startTime = historyStart.plusSeconds(HISTORY_SECONDS + (insert / USERS) * 3600);
+                return LoadGenerator.request(base.resolve("/exercise")).header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body(userId, ExerciseType.RUNNING, startTime))).build();
+            }
+            case UPDATE: {
+                long x = 1 + random.nextLong((long) USERS * EXERCISES_PER_USER);
+                long userId = (x - 1) % USERS + 1;
+                LocalDateTime startTime = historyStart.plusSeconds(((x - 1) / USERS) * slotSeconds);
+                return LoadGenerator.request(base.resolve("/exercise/" + x)).header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(body(userId, typeOf(x), startTime))).build();
+            }
+            default: {
+                int size = RANKING_SIZES[random.nextInt(RANKING_SIZES.length)];
+                StringBuilder userIds = new StringBuilder();
+                for (int i = 0; i < size; i++) {
+                    userIds.append(i == 0 ? "" : ",").append(1 + random.nextInt(USERS));
+                }
+                return LoadGenerator.request(base.resolve("/ranking?userIds=" + userIds + "&limit=100")).GET().build();
+            }
+        }
+    }
+
+    private static String body(final long userId, final ExerciseType type, final LocalDateTime startTime) {
+        // at most an hour, shorter than a slot of the history
+        return LoadGenerator.exerciseJson(userId, "load test", type, startTime, 60 + ThreadLocalRandom.current().nextInt(3540));
+    }
+
+    private static ExerciseType typeOf(final long x) {
+        return ExerciseType.values()[(int) (x % ExerciseType.values().length)];
+    }
+
+    /**
+     * Seeds the history with INSERT ... SELECT over a generated range, chunk by chunk, unless the
+     * database already holds the history of the same parameters.
+     */
+    private void seed(final DataSource dataSource) throws IOException {
+        Path seedFile = DIRECTORY.resolve("seed.properties");
+        Properties seed = new Properties();
+        if (Files.exists(seedFile)) {
+            try (InputStream in = Files.newInputStream(seedFile)) {
+                seed.load(in);
+            }
+        }
+        slotSeconds = HISTORY_SECONDS / EXERCISES_PER_USER;
+        long total = (long) USERS * EXERCISES_PER_USER;
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        if (String.valueOf(USERS).equals(seed.getProperty("users"))
+                && String.valueOf(EXERCISES_PER_USER).equals(seed.getProperty("exercisesPerUser"))) {
+            historyStart = LocalDateTime.parse(seed.getProperty("historyStart"));
+            // the inserts of the previous runs are after the history
+            jdbcTemplate.update("DELETE FROM exercises WHERE id > ?", total);
+            restartSequence(jdbcTemplate, total);
+            return;
+        }
+        historyStart = LocalDate.now().atStartOfDay().minusSeconds(HISTORY_SECONDS);
+        jdbcTemplate.update("DELETE FROM exercises");
+        for (long from = 1; from <= total; from += SEED_CHUNK) {
+            long to = Math.min(total, from + SEED_CHUNK - 1);
+            jdbcTemplate.update("INSERT INTO exercises (id, user_id, description, type, start_time, duration, calories, version) "
+                    + "SELECT X, MOD(X - 1, ?) + 1, 'seeded', MOD(X, ?), DATEADD('SECOND', ((X - 1) / ?) * ?, ?), "
+                    + "60 + MOD(X * 7919, 3540), CASEWHEN(MOD(X, 2) = 0, NULL, MOD(X * 31, 100000) / 100.0), 0 "
+                    + "FROM SYSTEM_RANGE(?, ?)",
+                    USERS, ExerciseType.values().length, USERS, slotSeconds, Timestamp.valueOf(historyStart), from, to);
+            System.out.printf("seeded %d of %d exercises%n", to, total);
+        }
+        seed.setProperty("users", String.valueOf(USERS));
+        seed.setProperty("exercisesPerUser", String.valueOf(EXERCISES_PER_USER));
+        seed.setProperty("historyStart", historyStart.toString());
+        try (OutputStream out = Files.newOutputStream(seedFile)) {
+            seed.store(out, "seeded history of the load test");
+        }
+        restartSequence(jdbcTemplate, total);
+    }
+
+    /**
+     * The generated ids must not collide with the seeded ones. The pooled optimizer of the id
+     * generator hands out the allocation size of ids below the value of the sequence.
+     */
+    private static void restartSequence(final JdbcTemplate jdbcTemplate, final long after) {
+        jdbcTemplate.execute("ALTER SEQUENCE exercises_id_seq RESTART WITH " + (after + ID_ALLOCATION_SIZE + 1));
+    }
+
+    private void report() {
+        System.out.printf("profile=%s users=%d exercises=%d rate=%d req/s seconds=%d%n",
+                PROFILE, USERS, (long) USERS * EXERCISES_PER_USER, RATE, SECONDS);
+        for (Endpoint endpoint : Endpoint.values()) {
+            System.out.printf("%s: %s%n", endpoint, latencies.get(endpoint).summary(SECONDS));
+            latencies.get(endpoint).print(System.out);
+        }
+    }
+
+    private Endpoint[] parseMix(final String mix) {
+        int total = 0;
+        Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.trim().split(":");
+            Endpoint endpoint = Endpoint.valueOf(weight[0].trim().toUpperCase());
+            weights.put(endpoint, Integer.parseInt(weight[1].trim()));
+            total += weights.get(endpoint);
+        }
+        Endpoint[] drawn = new Endpoint[total];
+        int i = 0;
+        for (Map.Entry<Endpoint, Integer> weight : weights.entrySet()) {
+            for (int j = 0; j < weight.getValue(); j++) {
+                drawn[i++] = weight.getKey();
+            }
+        }
+        for (Endpoint endpoint : Endpoint.values()) {
+            latencies.put(endpoint, new LoadGenerator.Latencies());
+        }
+        return drawn;
+    }
+
+    private static int[] parseSizes(final String sizes) {
+        String[] values = sizes.split(",");
+        int[] parsed = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            parsed[i] = Integer.parseInt(values[i].trim());
+        }
+        return parsed;
+    }
+}
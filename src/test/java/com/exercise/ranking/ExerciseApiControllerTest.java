@@ -0,0 +1,73 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.facade.ExerciseApiController;
+import com.exercise.ranking.facade.dto.ExerciseDTO;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.service.exception.PreconditionFailedException;
+import com.exercise.ranking.service.ingest.AsyncExerciseIngest;
+import com.exercise.ranking.testfactory.ExerciseFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Set;
+import javax.validation.Validator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExerciseApiControllerTest {
+
+    private final ExerciseService exerciseService = mock(ExerciseService.class);
+
+    private final ExerciseApiController exerciseApiController = new ExerciseApiController(exerciseService, mock(AsyncExerciseIngest.class),
+            mock(Validator.class), 1000);
+
+    private final ExerciseDTO dto = ExerciseFactory.getExerciseDTO().get(0);
+
+    @BeforeEach
+    public void setUp() {
+        when(exerciseService.update(anyLong(), any(), (Set<Long>) any())).thenAnswer(invocation -> {
+            Exercise updated = invocation.getArgument(1);
+            updated.setVersion(3L);
+            return updated;
+        });
+    }
+
+    @Test
+    public void shouldUpdateAtAnyVersionOfTheIfMatchList() {
+        ResponseEntity<ExerciseDTO> response = exerciseApiController.update(1L, "\"1\", W/\"4\",\"2\"", dto);
+
+        verify(exerciseService).update(eq(1L), any(), eq(Set.of(1L, 2L)));
+        assertEquals("\"3\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    public void shouldUpdateAtAnyVersionWithoutIfMatchOrWithAStar() {
+        exerciseApiController.update(1L, null, dto);
+        exerciseApiController.update(1L, " * ", dto);
+
+        verify(exerciseService, times(2)).update(eq(1L), any(), (Set<Long>) isNull());
+    }
+
+    @Test
+    public void shouldFailThePreconditionOfAWeakOrMalformedIfMatch() {
+        assertThrows(PreconditionFailedException.class, () -> exerciseApiController.update(1L, "W/\"1\"", dto));
+        assertThrows(PreconditionFailedException.class, () -> exerciseApiController.update(1L, "W/\"1\", W/\"2\"", dto));
+        assertThrows(PreconditionFailedException.class, () -> exerciseApiController.update(1L, "1", dto));
+        assertThrows(PreconditionFailedException.class, () -> exerciseApiController.update(1L, "\"1", dto));
+        assertThrows(PreconditionFailedException.class, () -> exerciseApiController.update(1L, "\"abc\"", dto));
+
+        verify(exerciseService, never()).update(anyLong(), any(), (Set<Long>) any());
+    }
+}
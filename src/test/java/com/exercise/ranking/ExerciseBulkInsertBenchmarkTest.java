@@ -0,0 +1,120 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the bulk insert throughput on H2 of the exercises, with a pooled sequence and JDBC
+ * batching, with the same rows given one sequence value per insert, as a bare
+ * {@code @GeneratedValue} does. The latter are written with plain JDBC to a table of their own, so
+ * that the benchmark adds no entity to the persistence unit of the application.
+ * <p>
+ * Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+class ExerciseBulkInsertBenchmarkTest {
+
+    private static final LocalDateTime LOAD_START = LocalDateTime.parse("2021-01-01T06:00:00");
+
+    private static final String INSERT_SEQUENCE_PER_ROW = "INSERT INTO sequence_per_row_exercises "
+            + "(id, user_id, description, type, start_time, duration, calories) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @BeforeEach
+    public void createSequencePerRowTable() {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS sequence_per_row_exercises_seq");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sequence_per_row_exercises (id BIGINT PRIMARY KEY, user_id BIGINT, "
+                + "description VARCHAR(255), type INTEGER, start_time TIMESTAMP, duration BIGINT, calories DOUBLE)");
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1_000, 10_000, 100_000})
+    public void bulkInsertThroughput(final int rows) {
+        // warm up both mappings before measuring
+        insertSequencePerRow(1_000, -1L);
+        persistPooled(1_000, -1L);
+
+        double sequencePerRow = insertSequencePerRow(rows, 1L);
+        double pooled = persistPooled(rows, 2L);
+        System.out.printf("rows=%d sequence per row: %.0f inserts/s pooled: %.0f inserts/s (x%.1f)%n",
+                rows, sequencePerRow, pooled, pooled / sequencePerRow);
+    }
+
+    /**
+     * Persists the entities in the test transaction, flushing and clearing the persistence context
+     * every JDBC batch like a bulk load does.
+     *
+     * @return the inserts per second.
+     */
+    private double persistPooled(final int rows, final long userId) {
+        EntityManager entityManager = testEntityManager.getEntityManager();
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            entityManager.persist(pooled(userId, i));
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return rows / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Inserts the rows in JDBC batches after a sequence call per row, in the test transaction.
+     *
+     * @return the inserts per second.
+     */
+    private double insertSequencePerRow(final int rows, final long userId) {
+        long start = System.nanoTime();
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < rows; i++) {
+            Long id = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR sequence_per_row_exercises_seq", Long.class);
+            batch.add(new Object[] {id, userId, "bulk", ExerciseType.RUNNING.ordinal(), Timestamp.valueOf(LOAD_START.plusHours(i)), 1800L, 250.0});
+            if (batch.size() == batchSize) {
+                jdbcTemplate.batchUpdate(INSERT_SEQUENCE_PER_ROW, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SEQUENCE_PER_ROW, batch);
+        }
+        return rows / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static Exercise pooled(final long userId, final int i) {
+        Exercise exercise = new Exercise();
+        exercise.setUserId(userId);
+        exercise.setDescription("bulk");
+        exercise.setType(ExerciseType.RUNNING);
+        exercise.setStartTime(LOAD_START.plusHours(i));
+        exercise.setDuration(1800L);
+        exercise.setCalories(250.0);
+        return exercise;
+    }
+}
@@ -0,0 +1,194 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.ExerciseIdAllocator;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseBatchResult;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.service.importer.ExerciseImporter;
+import com.exercise.ranking.service.importer.ExerciseRowParser;
+import com.exercise.ranking.service.importer.ImportFormat;
+import com.exercise.ranking.service.importer.ImportJob;
+import com.exercise.ranking.service.importer.InvalidRowException;
+import com.exercise.ranking.service.importer.LineChannelReader;
+import com.exercise.ranking.service.lock.UserLockStripes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExerciseImportTest {
+
+    private final ExerciseRepository exerciseRepository = mock(ExerciseRepository.class);
+
+    private final ExerciseIdAllocator exerciseIdAllocator = mock(ExerciseIdAllocator.class);
+
+    private final AtomicLong ids = new AtomicLong(1);
+
+    @Test
+    public void shouldParseJsonLine() {
+        Exercise exercise = ExerciseRowParser.parseJson("{\"userId\": 7, \"type\": \"SWIMMING\", \"description\": \" pool \\\"50m\\\" \", "
+                + "\"startTime\": \"2021-06-24T14:00:00.000000+02\", \"duration\": 1800, \"calories\": null, \"source\": \"watch\"}");
+
+        assertEquals(7L, exercise.getUserId());
+        assertEquals(ExerciseType.SWIMMING, exercise.getType());
+        assertEquals("pool \"50m\"", exercise.getDescription());
+        assertEquals(LocalDateTime.parse("2021-06-24T14:00:00"), exercise.getStartTime());
+        assertEquals(1800L, exercise.getDuration());
+        assertNull(exercise.getCalories());
+    }
+
+    @Test
+    public void shouldParseCsvLine() {
+        Exercise exercise = ExerciseRowParser.parseCsv("7,RUNNING,\"park, \"\"long\"\" loop\",2021-06-24T14:00:00Z,3600,512.5");
+
+        assertEquals(7L, exercise.getUserId());
+        assertEquals(ExerciseType.RUNNING, exercise.getType());
+        assertEquals("park, \"long\" loop", exercise.getDescription());
+        assertEquals(LocalDateTime.parse("2021-06-24T14:00:00"), exercise.getStartTime());
+        assertEquals(3600L, exercise.getDuration());
+        assertEquals(512.5, exercise.getCalories());
+    }
+
+    @Test
+    public void shouldRejectRowsLikeTheExerciseConstraints() {
+        Exception exception = Assertions.assertThrows(InvalidRowException.class,
+                () -> ExerciseRowParser.parseCsv("7,RUNNING, ,2021-06-24T14:00:00Z,,"));
+
+        assertTrue(exception.getMessage().contains("description cannot be null or empty"));
+        assertTrue(exception.getMessage().contains("exercise duration cannot be null or empty"));
+        Assertions.assertThrows(InvalidRowException.class, () -> ExerciseRowParser.parseJson("{\"userId\": 7, \"type\": \"YOGA\"}"));
+        Assertions.assertThrows(InvalidRowException.class, () -> ExerciseRowParser.parseJson("{\"userId\": 7"));
+    }
+
+    @Test
+    public void shouldResumeReadingLinesFromOffset(@TempDir final Path directory) throws IOException {
+        Path file = directory.resolve("exercises.ndjson");
+        Files.write(file, "first\r\nsecond \u00fc\n\nthird".getBytes(StandardCharsets.UTF_8));
+
+        long offset;
+        try (LineChannelReader reader = new LineChannelReader(file, 0)) {
+            assertEquals("first", reader.readLine());
+            offset = reader.getOffset();
+        }
+        try (LineChannelReader reader = new LineChannelReader(file, offset)) {
+            assertEquals("second \u00fc", reader.readLine());
+            assertEquals("", reader.readLine());
+            assertEquals("third", reader.readLine());
+            assertNull(reader.readLine());
+            assertEquals(Files.size(file), reader.getOffset());
+        }
+    }
+
+    @Test
+    public void shouldInsertEveryChunkOneLockStripeAtATime(@TempDir final Path directory) throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            lines.append(1 + i % 16).append(",RUNNING,park,2021-06-").append(10 + i / 16).append("T14:00:00Z,600,\n");
+        }
+        Files.write(directory.resolve("exercises.csv"), lines.toString().getBytes(StandardCharsets.UTF_8));
+        UserLockStripes userLockStripes = new UserLockStripes(4);
+        ExerciseService exerciseService = mock(ExerciseService.class);
+        List<Set<Long>> insertedUsers = new ArrayList<>();
+        when(exerciseService.insertAll(any())).thenAnswer(invocation -> {
+            List<Exercise> exercises = invocation.getArgument(0);
+            insertedUsers.add(exercises.stream().map(Exercise::getUserId).collect(Collectors.toSet()));
+            return exercises.stream().map(ExerciseBatchResult::created).collect(Collectors.toList());
+        });
+
+        ImportJob job = runImport(exerciseService, userLockStripes, directory);
+
+        assertEquals(ImportJob.Status.COMPLETED, job.getStatus(), job.getMessage());
+        assertEquals(40, job.getImported());
+        Set<Long> allUsers = new HashSet<>();
+        for (Set<Long> users : insertedUsers) {
+            assertEquals(1, userLockStripes.partitionByStripe(users).size());
+            assertTrue(allUsers.addAll(users));
+        }
+        assertEquals(userLockStripes.partitionByStripe(allUsers).size(), insertedUsers.size());
+    }
+
+    @Test
+    public void shouldImportEveryRowOnceWhenResumedAfterACommittedPart(@TempDir final Path directory) throws Exception {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            // the zero duration rows do not overlap themselves if they are inserted again
+            lines.append(1 + i % 4).append(",RUNNING,park,2021-06-").append(10 + i / 4).append("T14:00:00Z,").append(i % 3 == 0 ? 0 : 600)
+                    .append(",\n");
+        }
+        Files.write(directory.resolve("exercises.csv"), lines.toString().getBytes(StandardCharsets.UTF_8));
+        Map<Long, Exercise> persisted = new ConcurrentHashMap<>();
+        List<Long> insertedTwice = new ArrayList<>();
+        when(exerciseRepository.findAllById(any())).thenAnswer(invocation -> {
+            Collection<Long> requested = invocation.getArgument(0);
+            return requested.stream().filter(persisted::containsKey).map(persisted::get).collect(Collectors.toList());
+        });
+        AtomicInteger inserts = new AtomicInteger();
+        ExerciseService exerciseService = mock(ExerciseService.class);
+        when(exerciseService.insertAll(any())).thenAnswer(invocation -> {
+            List<Exercise> exercises = invocation.getArgument(0);
+            for (Exercise exercise : exercises) {
+                if (persisted.put(exercise.getId(), exercise) != null) {
+                    insertedTwice.add(exercise.getId());
+                }
+            }
+            if (inserts.incrementAndGet() == 2) {
+                throw new IllegalStateException("stopped after the commit of the second part");
+            }
+            return exercises.stream().map(ExerciseBatchResult::created).collect(Collectors.toList());
+        });
+        UserLockStripes userLockStripes = new UserLockStripes(4);
+
+        ImportJob stopped = runImport(exerciseService, userLockStripes, directory);
+        ImportJob resumed = runImport(exerciseService, userLockStripes, directory);
+
+        assertEquals(ImportJob.Status.FAILED, stopped.getStatus());
+        assertEquals(ImportJob.Status.COMPLETED, resumed.getStatus(), resumed.getMessage());
+        assertTrue(insertedTwice.isEmpty(), "inserted twice: " + insertedTwice);
+        assertEquals(12, persisted.size());
+        assertEquals(12, resumed.getImported());
+        assertEquals(0, resumed.getRejected());
+        assertEquals(0, Files.size(directory.resolve("exercises.csv.rejected")));
+    }
+
+    private ImportJob runImport(final ExerciseService exerciseService, final UserLockStripes userLockStripes, final Path directory)
+            throws Exception {
+        when(exerciseIdAllocator.nextId()).thenAnswer(invocation -> ids.getAndIncrement());
+        ExerciseImporter exerciseImporter = new ExerciseImporter(exerciseService, exerciseRepository, exerciseIdAllocator, userLockStripes,
+                directory.toString(), 100);
+        try {
+            ImportJob job = exerciseImporter.start("exercises.csv", ImportFormat.CSV);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (job.getStatus() == ImportJob.Status.RUNNING && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            return job;
+        } finally {
+            exerciseImporter.shutdown();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the insert latency of a user with a growing exercise history, when the overlap check
+ * loads the whole history of the user (before) and when it only reads the exercises returned by the
+ * range query (after).
+ * <p>
+ * Both paths run in the transaction of the test, so the persistence context is flushed and cleared
+ * before every measurement. Otherwise the entities loaded by the full history would stay managed,
+ * and the dirty check of the auto-flush before every query would slow down the other path.
+ * <p>
+ * Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+class ExerciseInsertBenchmarkTest {
+
+    private static final int INSERTS = 50;
+
+    private static final LocalDateTime HISTORY_START = LocalDateTime.parse("2015-01-01T06:00:00");
+
+    @Autowired
+    private ExerciseRepository exerciseRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, 1_000, 100_000})
+    public void insertLatency(final int historySize) {
+        ExerciseService exerciseService = ServiceFactory.exerciseService(exerciseRepository);
+        seedHistory(1L, historySize);
+        seedHistory(2L, historySize);
+
+        LocalDateTime after = HISTORY_START.plusHours(historySize);
+        long[] before = new long[INSERTS];
+        long[] range = new long[INSERTS];
+        for (int i = 0; i < INSERTS; i++) {
+            Exercise full = exercise(1L, after.plusHours(i));
+            detachAll();
+            long start = System.nanoTime();
+            checkAgainstFullHistory(full);
+            exerciseRepository.save(full);
+            before[i] = System.nanoTime() - start;
+
+            Exercise candidate = exercise(2L, after.plusHours(i));
+            detachAll();
+            start = System.nanoTime();
+            exerciseService.insert(candidate);
+            range[i] = System.nanoTime() - start;
+        }
+        System.out.printf("history=%d before: %s after: %s%n", historySize, percentiles(before), percentiles(range));
+    }
+
+    /**
+     * Writes the pending inserts and detaches every entity, outside of the measured time.
+     */
+    private void detachAll() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private void checkAgainstFullHistory(final Exercise exercise) {
+        LocalDateTime endNew = exercise.getStartTime().plusSeconds(exercise.getDuration());
+        for (Exercise existing : exerciseRepository.findByUserId(exercise.getUserId())) {
+            if (existing.getStartTime().isBefore(endNew)
+                    && existing.getStartTime().plusSeconds(existing.getDuration()).isAfter(exercise.getStartTime())) {
+                throw new IllegalStateException("Benchmark data overlaps");
+            }
+        }
+    }
+
+    private void seedHistory(final long userId, final int historySize) {
+        List<Object[]> rows = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            rows.add(new Object[] {userId * 10_000_000L + i, userId, "seeded", ExerciseType.RUNNING.ordinal(),
+                Timestamp.valueOf(HISTORY_START.plusHours(i)), 1800L, 250.0, 0L});
+        }
+        new JdbcTemplate(dataSource).batchUpdate(
+                "INSERT INTO exercises (id, user_id, description, type, start_time, duration, calories, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    private static Exercise exercise(final long userId, final LocalDateTime startTime) {
+        Exercise exercise = new Exercise();
+        exercise.setUserId(userId);
+        exercise.setDescription("benchmark");
+        exercise.setType(ExerciseType.RUNNING);
+        exercise.setStartTime(startTime);
+        exercise.setDuration(1800L);
+        exercise.setCalories(250.0);
+        return exercise;
+    }
+
+    private static String percentiles(final long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50=%.3fms p99=%.3fms", sorted[sorted.length / 2] / 1e6, sorted[sorted.length * 99 / 100] / 1e6);
+    }
+}
@@ -0,0 +1,110 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.service.index.ExerciseIntervalIndex;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExerciseIntervalIndexTest {
+
+    private static final LocalDateTime START = LocalDateTime.parse("2022-04-13T17:00:00");
+
+    private final ExerciseRepository exerciseRepository = mock(ExerciseRepository.class);
+
+    private final ExerciseIntervalIndex exerciseIntervalIndex = new ExerciseIntervalIndex(exerciseRepository, true, 1);
+
+    @Test
+    public void shouldOnlyOverlapTheIntervalsThatShareTime() {
+        when(exerciseRepository.findByUserId(1L)).thenReturn(Arrays.asList(
+                exercise(1L, 1L, START, 60L), exercise(2L, 1L, START.plusSeconds(120), 60L)));
+
+        assertFalse(exerciseIntervalIndex.overlaps(exercise(null, 1L, START.minusSeconds(60), 60L)));
+        assertFalse(exerciseIntervalIndex.overlaps(exercise(null, 1L, START.plusSeconds(60), 60L)));
+        assertFalse(exerciseIntervalIndex.overlaps(exercise(null, 1L, START.plusSeconds(180), 60L)));
+        assertTrue(exerciseIntervalIndex.overlaps(exercise(null, 1L, START.plusSeconds(30), 60L)));
+        assertTrue(exerciseIntervalIndex.overlaps(exercise(null, 1L, START.plusSeconds(150), 10L)));
+        assertTrue(exerciseIntervalIndex.overlaps(exercise(null, 1L, START.minusSeconds(10), 300L)));
+        verify(exerciseRepository, times(1)).findByUserId(1L);
+    }
+
+    @Test
+    public void shouldMoveTheTimelineOfAnUpdatedExercise() {
+        when(exerciseRepository.findByUserId(1L)).thenReturn(Arrays.asList(
+                exercise(1L, 1L, START, 60L), exercise(2L, 1L, START.plusSeconds(120), 60L)));
+
+        Exercise updated = exercise(1L, 1L, START.plusSeconds(30), 60L);
+        assertFalse(exerciseIntervalIndex.overlaps(updated));
+        exerciseIntervalIndex.put(updated);
+
+        assertFalse(exerciseIntervalIndex.overlaps(exercise(null, 1L, START.minusSeconds(30), 60L)));
+        assertTrue(exerciseIntervalIndex.overlaps(exercise(null, 1L, START.plusSeconds(80), 20L)));
+        assertTrue(exerciseIntervalIndex.overlaps(exercise(2L, 1L, START.plusSeconds(60), 60L)));
+    }
+
+    @Test
+    public void shouldFreeTheTimelineOfADiscardedExercise() {
+        when(exerciseRepository.findByUserId(any())).thenReturn(Collections.emptyList());
+        Exercise pending = exercise(1L, START);
+
+        assertTrue(exerciseIntervalIndex.tryPut(pending));
+        assertFalse(exerciseIntervalIndex.tryPut(exercise(1L, START)));
+        exerciseIntervalIndex.discard(pending);
+
+        assertTrue(exerciseIntervalIndex.tryPut(exercise(1L, START)));
+    }
+
+    @Test
+    public void shouldNotEvictUsersWithPendingExercises() {
+        when(exerciseRepository.findByUserId(any())).thenReturn(Collections.emptyList());
+        Exercise pending = exercise(1L, START);
+
+        assertTrue(exerciseIntervalIndex.tryPut(pending));
+        assertFalse(exerciseIntervalIndex.overlaps(exercise(2L, START)));
+        assertFalse(exerciseIntervalIndex.overlaps(exercise(3L, START)));
+
+        assertFalse(exerciseIntervalIndex.tryPut(exercise(1L, START.plusSeconds(30))));
+        verify(exerciseRepository, times(1)).findByUserId(1L);
+    }
+
+    @Test
+    public void shouldEvictUsersOnceTheirExercisesArePersisted() {
+        when(exerciseRepository.findByUserId(any())).thenReturn(Collections.emptyList());
+        Exercise pending = exercise(1L, START);
+
+        assertTrue(exerciseIntervalIndex.tryPut(pending));
+        pending.setId(10L);
+        exerciseIntervalIndex.put(pending);
+        assertFalse(exerciseIntervalIndex.overlaps(exercise(2L, START)));
+        assertFalse(exerciseIntervalIndex.overlaps(exercise(1L, START.plusHours(1))));
+
+        verify(exerciseRepository, times(2)).findByUserId(1L);
+    }
+
+    private static Exercise exercise(final Long userId, final LocalDateTime startTime) {
+        return exercise(null, userId, startTime, 60L);
+    }
+
+    private static Exercise exercise(final Long id, final Long userId, final LocalDateTime startTime, final long duration) {
+        Exercise exercise = new Exercise();
+        exercise.setId(id);
+        exercise.setUserId(userId);
+        exercise.setType(ExerciseType.RUNNING);
+        exercise.setDescription("des");
+        exercise.setStartTime(startTime);
+        exercise.setDuration(duration);
+        return exercise;
+    }
+}
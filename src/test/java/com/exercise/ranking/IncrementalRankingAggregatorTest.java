@@ -0,0 +1,138 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
+import com.exercise.ranking.service.ranking.IncrementalRankingAggregator;
+import com.exercise.ranking.service.ranking.ScanRankingAggregator;
+import com.exercise.ranking.testfactory.ExerciseFactory;
+import com.exercise.ranking.testfactory.RankingFactory;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Randomized equivalence of the incremental aggregate with the scan of the window exercises, under
+ * a mix of inserts, updates and rankings.
+ */
+class IncrementalRankingAggregatorTest {
+
+    private static final int USERS = 40;
+
+    private final List<Exercise> table = new ArrayList<>();
+
+    private final Random random = new Random(20210624L);
+
+    private long nextId = 1;
+
+    @Test
+    public void shouldAggregateLikeTheScanOfTheWindow() {
+        assertSameRankingsAsTheScan(1_000_000);
+    }
+
+    @Test
+    public void shouldAggregateLikeTheScanOfTheWindowWhenUsersAreEvicted() {
+        assertSameRankingsAsTheScan(USERS / 4);
+    }
+
+    @Test
+    public void shouldDropTheUsersWithoutExercisesLeftInTheWindow() {
+        ExerciseRepository exerciseRepository = mock(ExerciseRepository.class);
+        when(exerciseRepository.findByUsersAndStartTime(any(), any())).thenReturn(Collections.emptyList());
+        IncrementalRankingAggregator incremental = new IncrementalRankingAggregator(exerciseRepository, 1_000_000);
+        LocalDateTime windowStart = LocalDate.now().atStartOfDay().minusDays(28);
+
+        incremental.aggregate(Set.of(1L), windowStart);
+        incremental.aggregate(Set.of(1L), windowStart);
+        verify(exerciseRepository, times(1)).findByUsersAndStartTime(any(), any());
+
+        incremental.evictExpiredDays();
+        incremental.aggregate(Set.of(1L), windowStart);
+        verify(exerciseRepository, times(2)).findByUsersAndStartTime(any(), any());
+    }
+
+    private void assertSameRankingsAsTheScan(final long maxUsers) {
+        ExerciseRepository exerciseRepository = mock(ExerciseRepository.class);
+        when(exerciseRepository.findByUsersAndStartTime(any(), any())).thenAnswer(invocation -> {
+            Set<Long> userIds = invocation.getArgument(0);
+            LocalDateTime windowStart = invocation.getArgument(1);
+            return table.stream()
+                    .filter(e -> userIds.contains(e.getUserId()) && !e.getStartTime().isBefore(windowStart))
+                    .map(ExerciseFactory::copyOf)
+                    .collect(Collectors.toList());
+        });
+        when(exerciseRepository.streamPointsByUsersAndStartTime(any(), any())).thenAnswer(invocation -> {
+            Set<Long> userIds = invocation.getArgument(0);
+            LocalDateTime windowStart = invocation.getArgument(1);
+            return ExerciseFactory.toPointsRows(table.stream()
+                    .filter(e -> userIds.contains(e.getUserId()) && !e.getStartTime().isBefore(windowStart))
+                    .collect(Collectors.toList())).stream();
+        });
+        ScanRankingAggregator scan = ServiceFactory.scanRankingAggregator(exerciseRepository);
+        IncrementalRankingAggregator incremental = new IncrementalRankingAggregator(exerciseRepository, maxUsers);
+        LocalDateTime windowStart = LocalDate.now().atStartOfDay().minusDays(28);
+
+        for (int i = 0; i < 2_000; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 5 || table.isEmpty()) {
+                Exercise inserted = randomExercise(nextId++, 1L + random.nextInt(USERS));
+                table.add(inserted);
+                incremental.onExerciseSaved(new ExerciseSavedEvent(null, ExerciseFactory.copyOf(inserted)));
+            } else if (operation < 8) {
+                Exercise existing = table.get(random.nextInt(table.size()));
+                Exercise previous = ExerciseFactory.copyOf(existing);
+                Exercise updated = randomExercise(existing.getId(), existing.getUserId());
+                existing.setStartTime(updated.getStartTime());
+                existing.setDuration(updated.getDuration());
+                existing.setCalories(updated.getCalories());
+                incremental.onExerciseSaved(new ExerciseSavedEvent(previous, ExerciseFactory.copyOf(existing)));
+            } else {
+                Set<Long> userIds = randomUserIds();
+                RankingFactory.assertSameRanking(scan.aggregate(new HashSet<>(userIds), windowStart).getRankedUsers(), incremental.aggregate(userIds, windowStart).getRankedUsers());
+            }
+        }
+        Set<Long> allUserIds = new HashSet<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            allUserIds.add(userId);
+        }
+        RankingFactory.assertSameRanking(scan.aggregate(new HashSet<>(allUserIds), windowStart).getRankedUsers(), incremental.aggregate(allUserIds, windowStart).getRankedUsers());
+    }
+
+
+    private Set<Long> randomUserIds() {
+        Set<Long> userIds = new HashSet<>();
+        int size = 1 + random.nextInt(USERS / 2);
+        while (userIds.size() < size) {
+            userIds.add(1L + random.nextInt(USERS));
+        }
+        return userIds;
+    }
+
+    private Exercise randomExercise(final long id, final long userId) {
+        Exercise exercise = new Exercise();
+        exercise.setId(id);
+        exercise.setUserId(userId);
+        exercise.setDescription("random");
+        exercise.setType(ExerciseType.values()[random.nextInt(ExerciseType.values().length)]);
+        exercise.setStartTime(LocalDate.now().atStartOfDay().minusDays(35).plusSeconds(random.nextInt(40 * 24 * 3600)));
+        exercise.setDuration(60L + random.nextInt(7200));
+        exercise.setCalories(random.nextBoolean() ? null : random.nextInt(100_000) / 100.0);
+        return exercise;
+    }
+}
@@ -0,0 +1,149 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.jdbc.InstrumentedDataSource;
+import com.exercise.ranking.dao.jdbc.JdbcMetrics;
+import com.exercise.ranking.dao.jdbc.StatementCountInterceptor;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JdbcInstrumentationTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void shouldMeasureTheStatementsOfARequest() throws Exception {
+        JdbcMetrics metrics = new JdbcMetrics(0);
+        metrics.bindTo(meterRegistry);
+        DataSource dataSource = InstrumentedDataSource.wrap(h2("jdbc-request"), metrics, true);
+        StatementCountInterceptor interceptor = new StatementCountInterceptor(metrics, 20);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ranking");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/ranking");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        interceptor.preHandle(request, response, new Object());
+        int read = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            createTable(connection);
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO exercise (user_id, description) VALUES (?, ?)")) {
+                for (long userId = 1; userId <= 3; userId++) {
+                    insert.setLong(1, userId);
+                    insert.setNull(2, Types.VARCHAR);
+                    insert.executeUpdate();
+                }
+            }
+            try (PreparedStatement select = connection.prepareStatement("SELECT user_id FROM exercise WHERE user_id > ?")) {
+                select.setLong(1, 0L);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    assertSame(select, resultSet.getStatement());
+                    while (resultSet.next()) {
+                        read++;
+                    }
+                }
+            }
+        }
+        interceptor.afterCompletion(request, response, new Object(), null);
+
+        assertEquals(3, read);
+        assertEquals(1, meterRegistry.get("jdbc.statement").tag("kind", "other").timer().count());
+        assertEquals(3, meterRegistry.get("jdbc.statement").tag("kind", "insert").timer().count());
+        assertEquals(1, meterRegistry.get("jdbc.statement").tag("kind", "select").timer().count());
+        assertEquals(5.0, meterRegistry.get("jdbc.statement.slow").counter().count());
+        DistributionSummary rows = meterRegistry.get("jdbc.statement.rows").summary();
+        assertEquals(1, rows.count());
+        assertEquals(3.0, rows.totalAmount());
+        DistributionSummary statements = meterRegistry.get("jdbc.request.statements").tag("uri", "/ranking").summary();
+        assertEquals(1, statements.count());
+        assertEquals(5.0, statements.totalAmount());
+    }
+
+    @Test
+    public void shouldRecordTheRowsWhenOnlyTheStatementIsClosed() throws Exception {
+        JdbcMetrics metrics = new JdbcMetrics(TimeUnit.MINUTES.toNanos(1));
+        metrics.bindTo(meterRegistry);
+        DataSource dataSource = InstrumentedDataSource.wrap(h2("jdbc-statement-close"), metrics, true);
+
+        try (Connection connection = dataSource.getConnection()) {
+            createTable(connection);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("INSERT INTO exercise (user_id) VALUES (1), (2)");
+                assertTrue(statement.execute("SELECT user_id FROM exercise"));
+                ResultSet resultSet = statement.getResultSet();
+                assertTrue(resultSet.next());
+                assertTrue(resultSet.next());
+                assertFalse(resultSet.next());
+            }
+        }
+
+        DistributionSummary rows = meterRegistry.get("jdbc.statement.rows").summary();
+        assertEquals(1, rows.count());
+        assertEquals(2.0, rows.totalAmount());
+        assertEquals(0.0, meterRegistry.get("jdbc.statement.slow").counter().count());
+        assertTrue(meterRegistry.find("jdbc.request.statements").summaries().isEmpty());
+    }
+
+    @Test
+    public void shouldNotWrapTheResultSetsWithoutCountingTheRows() throws Exception {
+        JdbcMetrics metrics = new JdbcMetrics(TimeUnit.MINUTES.toNanos(1));
+        metrics.bindTo(meterRegistry);
+        DataSource dataSource = InstrumentedDataSource.wrap(h2("jdbc-no-rows"), metrics, false);
+
+        try (Connection connection = dataSource.getConnection()) {
+            createTable(connection);
+            try (PreparedStatement select = connection.prepareStatement("SELECT user_id FROM exercise");
+                    ResultSet resultSet = select.executeQuery()) {
+                assertFalse(Proxy.isProxyClass(resultSet.getClass()));
+                assertFalse(resultSet.next());
+            }
+        }
+
+        assertEquals(1, meterRegistry.get("jdbc.statement").tag("kind", "select").timer().count());
+        assertEquals(0, meterRegistry.get("jdbc.statement.rows").summary().count());
+    }
+
+    @Test
+    public void shouldRecordTheStatementsOfAUriInOneSummary() throws Exception {
+        JdbcMetrics metrics = new JdbcMetrics(TimeUnit.MINUTES.toNanos(1));
+        metrics.bindTo(meterRegistry);
+        StatementCountInterceptor interceptor = new StatementCountInterceptor(metrics, 20);
+
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/ranking");
+            request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/ranking");
+            interceptor.preHandle(request, new MockHttpServletResponse(), new Object());
+            interceptor.afterCompletion(request, new MockHttpServletResponse(), new Object(), null);
+        }
+
+        assertEquals(1, meterRegistry.find("jdbc.request.statements").summaries().size());
+        assertEquals(3, meterRegistry.get("jdbc.request.statements").tag("uri", "/ranking").summary().count());
+    }
+
+    private static DataSource h2(final String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static void createTable(final Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE exercise (user_id BIGINT NOT NULL, description VARCHAR(255))");
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.ExercisePointsRow;
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.service.ranking.ExercisePoints;
+import com.exercise.ranking.service.ranking.PartitionedPointsAggregator;
+import com.exercise.ranking.service.ranking.RankingOrder;
+import com.exercise.ranking.service.ranking.ScanRankingAggregator;
+import com.exercise.ranking.service.ranking.UserPointsAccumulator;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Equivalence of the partitioned aggregation with the sequential one, down to the bits of the sums
+ * and the order of the users with the same points and end.
+ */
+class PartitionedPointsAggregatorTest {
+
+    private static final int USERS = 20_000;
+
+    private static final LocalDateTime WINDOW_START = LocalDate.now().atStartOfDay().minusDays(28);
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    private ScanRankingAggregator parallel;
+
+    @AfterEach
+    public void tearDown() {
+        pool.shutdown();
+        if (parallel != null) {
+            parallel.stop();
+        }
+    }
+
+    @Test
+    public void shouldAggregateLikeOneAccumulator() {
+        List<ExercisePointsRow> rows = randomRows(new Random(20210708L), 100_000);
+
+        UserPointsAccumulator accumulator = new UserPointsAccumulator(USERS);
+        for (ExercisePointsRow row : rows) {
+            accumulator.add(row.getUserId(), ExercisePoints.of(row.getCalories(), row.getDuration(), row.getType()),
+                    row.getStartTime(), row.getDuration());
+        }
+        List<RankingUser> expected = accumulator.toRankingUsers();
+        expected.sort(RankingOrder.RANKING);
+
+        for (int partitions : new int[] {1, 3, 4, 16}) {
+            List<RankingUser> actual = new PartitionedPointsAggregator(pool, partitions).aggregate(rows.iterator(), USERS);
+            actual.sort(RankingOrder.RANKING);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void shouldRankLikeTheSequentialScan() {
+        List<ExercisePointsRow> rows = randomRows(new Random(20210709L), 60_000);
+        ExerciseRepository exerciseRepository = mock(ExerciseRepository.class);
+        when(exerciseRepository.streamPointsByUsersAndStartTime(any(), any())).thenAnswer(invocation -> rows.stream());
+        Set<Long> userIds = new HashSet<>();
+        for (long userId = 1; userId <= USERS + 100; userId++) {
+            userIds.add(userId);
+        }
+
+        ScanRankingAggregator sequential = ServiceFactory.scanRankingAggregator(exerciseRepository);
+        parallel = ServiceFactory.scanRankingAggregator(exerciseRepository, 0, 4);
+
+        List<RankingUser> expected = RankingOrder.top(sequential.aggregate(userIds, WINDOW_START).getRankedUsers(), userIds.size());
+        List<RankingUser> actual = RankingOrder.top(parallel.aggregate(userIds, WINDOW_START).getRankedUsers(), userIds.size());
+        assertEquals(expected, actual);
+        assertEquals(expected.subList(0, 100), RankingOrder.top(parallel.aggregate(userIds, WINDOW_START).getRankedUsers(), 100));
+    }
+
+    /**
+     * Rows in random user order, with many users that have the same points and end.
+     */
+    private static List<ExercisePointsRow> randomRows(final Random random, final int count) {
+        List<ExercisePointsRow> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long userId = 1L + random.nextInt(USERS);
+            if (random.nextInt(4) == 0) {
+                rows.add(new ExercisePointsRow(userId, ExerciseType.RUNNING, WINDOW_START.plusDays(1), 1800L, 250.0));
+            } else {
+                rows.add(new ExercisePointsRow(userId, ExerciseType.values()[random.nextInt(ExerciseType.values().length)],
+                        WINDOW_START.plusSeconds(random.nextInt(28 * 24 * 3600)).plusNanos(random.nextInt(1000) * 1000L),
+                        60L + random.nextInt(7200), random.nextBoolean() ? null : random.nextInt(100_000) / 100.0));
+            }
+        }
+        return rows;
+    }
+}
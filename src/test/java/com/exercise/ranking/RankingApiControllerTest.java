@@ -0,0 +1,60 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.facade.RankingApiController;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.service.ExerciseService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RankingApiControllerTest {
+
+    private final ExerciseService exerciseService = mock(ExerciseService.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final RankingApiController rankingApiController = new RankingApiController(exerciseService, objectMapper);
+
+    @Test
+    public void shouldStreamTheSameJsonAsTheRanking() throws Exception {
+        LocalDateTime latest = LocalDateTime.parse("2022-04-13T17:09:42.411");
+        when(exerciseService.ranking(any(), eq(1), eq(2))).thenReturn(Arrays.asList(
+                new RankingUser(2L, 62.4, latest), new RankingUser(3L, 0.0, latest.minusDays(40))));
+        Set<Long> userIds = new HashSet<>(Arrays.asList(1L, 2L, 3L));
+
+        String expected = objectMapper.writeValueAsString(rankingApiController.ranking(userIds, 1, 2).getBody());
+        ResponseEntity<StreamingResponseBody> response = rankingApiController.streamRanking(userIds, 1, 2);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        response.getBody().writeTo(outputStream);
+
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertEquals("[{\"userId\":2,\"points\":62.4},{\"userId\":3,\"points\":0.0}]", expected);
+        assertEquals(expected, new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void shouldStreamAnEmptyRanking() throws Exception {
+        when(exerciseService.ranking(any(), eq(0), eq(Integer.MAX_VALUE))).thenReturn(Collections.emptyList());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        rankingApiController.streamRanking(Collections.singleton(1L), 0, null).getBody().writeTo(outputStream);
+
+        assertEquals("[]", new String(outputStream.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,87 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.service.cache.RankingCache;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RankingCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RankingCache rankingCache = new RankingCache(true, 1000, 60, meterRegistry);
+
+    private final LocalDateTime startOfToday = LocalDate.now().atStartOfDay();
+
+    private final AtomicInteger computations = new AtomicInteger();
+
+    @Test
+    public void shouldCacheByNormalizedUserIdsAndEvictOnlyTheUsersOfSavedExercises() {
+        rank(Arrays.asList(2L, 1L));
+        rank(Arrays.asList(1L, 2L));
+        rank(Arrays.asList(3L));
+        assertEquals(2, computations.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "ranking").tag("result", "hit").functionCounter().count());
+
+        Exercise exercise = new Exercise();
+        exercise.setUserId(1L);
+        rankingCache.onExerciseSaved(new ExerciseSavedEvent(null, exercise));
+
+        rank(Arrays.asList(1L, 2L));
+        rank(Arrays.asList(3L));
+        assertEquals(3, computations.get());
+    }
+
+    @Test
+    public void shouldEvictAPageWrittenWhileItIsComputed() throws Exception {
+        CountDownLatch computing = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        Thread reader = new Thread(() -> rankingCache.get(Arrays.asList(1L, 2L), startOfToday, 0, Integer.MAX_VALUE, () -> {
+            computations.incrementAndGet();
+            computing.countDown();
+            try {
+                written.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Collections.emptyList();
+        }));
+        reader.start();
+        computing.await(10, TimeUnit.SECONDS);
+
+        Exercise exercise = new Exercise();
+        exercise.setUserId(2L);
+        Thread writer = new Thread(() -> rankingCache.onExerciseSaved(new ExerciseSavedEvent(null, exercise)));
+        writer.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (writer.getState() == Thread.State.RUNNABLE && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        written.countDown();
+        reader.join(10_000);
+        writer.join(10_000);
+
+        rank(Arrays.asList(1L, 2L));
+        assertEquals(2, computations.get());
+    }
+
+    private List<RankingUser> rank(final List<Long> userIds) {
+        return rankingCache.get(userIds, startOfToday, 0, Integer.MAX_VALUE, () -> {
+            computations.incrementAndGet();
+            return Collections.emptyList();
+        });
+    }
+}
@@ -0,0 +1,118 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.testfactory.LoadGenerator;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-model load test of the ranking and exercise APIs over HTTP, with the default request
+ * execution and with the {@code tuned} profile, at 1k and 10k concurrent clients. Every client sends
+ * its next request as soon as the previous one completed; 80% of them are rankings of 50 users and
+ * 20% inserts that never overlap.
+ * <p>
+ * Run with {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+class RequestConcurrencyBenchmarkTest {
+
+    private static final int USERS = 1_000;
+
+    private static final int RANKED_USERS = 50;
+
+    private static final Duration WARM_UP = Duration.ofSeconds(10);
+
+    private static final Duration MEASUREMENT = Duration.ofSeconds(30);
+
+    private static final LocalDateTime SEED_START = LocalDateTime.now().minusDays(20);
+
+    // every insert gets a period of its own, after the seeded exercises
+    private final AtomicLong nextInsertHour = new AtomicLong();
+
+    @ParameterizedTest
+    @CsvSource({"default, 1000", "tuned, 1000", "default, 10000", "tuned, 10000"})
+    public void latencyAndThroughput(final String profile, final int clients) throws Exception {
+        try (ConfigurableApplicationContext context = LoadGenerator.boot(profile)) {
+            seed(context.getBean(ExerciseService.class));
+            URI base = LoadGenerator.baseUri(context);
+            HttpClient httpClient = LoadGenerator.httpClient();
+
+            LoadGenerator.Latencies latencies = new LoadGenerator.Latencies();
+            run(httpClient, base, clients, WARM_UP, latencies);
+            latencies.reset();
+            run(httpClient, base, clients, MEASUREMENT, latencies);
+
+            System.out.printf("profile=%s clients=%d %s%n", profile, clients, latencies.summary(MEASUREMENT.getSeconds()));
+        }
+    }
+
+    private void run(final HttpClient httpClient, final URI base, final int clients, final Duration duration,
+            final LoadGenerator.Latencies latencies) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        CountDownLatch finished = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            send(httpClient, base, deadline, latencies, finished);
+        }
+        // the requests in flight at the deadline are waited for, up to the request timeout
+        finished.await(duration.getSeconds() + 60, TimeUnit.SECONDS);
+    }
+
+    private void send(final HttpClient httpClient, final URI base, final long deadline, final LoadGenerator.Latencies latencies,
+            final CountDownLatch finished) {
+        if (System.nanoTime() >= deadline) {
+            finished.countDown();
+            return;
+        }
+        long start = System.nanoTime();
+        httpClient.sendAsync(nextRequest(base), HttpResponse.BodyHandlers.discarding()).whenComplete((response, ex) -> {
+            latencies.record(response, ex, System.nanoTime() - start);
+            send(httpClient, base, deadline, latencies, finished);
+        });
+    }
+
+    private HttpRequest nextRequest(final URI base) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(10) < 8) {
+            StringBuilder userIds = new StringBuilder();
+            long first = 1 + random.nextInt(USERS - RANKED_USERS);
+            for (long userId = first; userId < first + RANKED_USERS; userId++) {
+                userIds.append(userIds.length() == 0 ? "" : ",").append(userId);
+            }
+            return LoadGenerator.request(base.resolve("/ranking?userIds=" + userIds)).GET().build();
+        }
+        LocalDateTime startTime = SEED_START.plusDays(1).plusHours(nextInsertHour.incrementAndGet());
+        String body = LoadGenerator.exerciseJson(1 + random.nextInt(USERS), "load", ExerciseType.RUNNING, startTime, 1800);
+        return LoadGenerator.request(base.resolve("/exercise")).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private static void seed(final ExerciseService exerciseService) {
+        for (long userId = 1; userId <= USERS; userId++) {
+            for (int i = 0; i < 10; i++) {
+                Exercise exercise = new Exercise();
+                exercise.setUserId(userId);
+                exercise.setDescription("seeded");
+                exercise.setType(ExerciseType.values()[i % ExerciseType.values().length]);
+                exercise.setStartTime(SEED_START.plusHours(2L * i));
+                exercise.setDuration(1800L);
+                exercise.setCalories(250.0);
+                exerciseService.insert(exercise);
+            }
+        }
+    }
+}
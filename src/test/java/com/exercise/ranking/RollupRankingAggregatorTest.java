@@ -0,0 +1,309 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.dao.UserDailyPointsRepository;
+import com.exercise.ranking.dao.UserPointsView;
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.model.UserDailyPoints;
+import com.exercise.ranking.model.UserDailyPointsId;
+import com.exercise.ranking.service.event.ExerciseBatchSavedEvent;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
+import com.exercise.ranking.service.lock.UserLockStripes;
+import com.exercise.ranking.service.ranking.RollupRankingAggregator;
+import com.exercise.ranking.service.ranking.ScanRankingAggregator;
+import com.exercise.ranking.service.rollup.DailyPointsRollup;
+import com.exercise.ranking.testfactory.ExerciseFactory;
+import com.exercise.ranking.testfactory.RankingFactory;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Randomized equivalence of the daily rollup with the scan of the window exercises, maintained by
+ * the saved events and repaired from the exercises after missed events.
+ */
+class RollupRankingAggregatorTest {
+
+    private static final int USERS = 40;
+
+    private final List<Exercise> table = new ArrayList<>();
+
+    private final Map<UserDailyPointsId, UserDailyPoints> rollup = new HashMap<>();
+
+    private final Random random = new Random(20210624L);
+
+    private final LocalDateTime windowStart = LocalDate.now().atStartOfDay().minusDays(28);
+
+    private long nextId = 1;
+
+    private ExerciseRepository exerciseRepository;
+
+    private UserDailyPointsRepository userDailyPointsRepository;
+
+    private ScanRankingAggregator scan;
+
+    private RollupRankingAggregator rollupAggregator;
+
+    private DailyPointsRollup dailyPointsRollup;
+
+    @BeforeEach
+    public void setUp() {
+        exerciseRepository = mock(ExerciseRepository.class);
+        when(exerciseRepository.streamPointsByUsersAndStartTime(any(), any())).thenAnswer(invocation -> {
+            Set<Long> userIds = invocation.getArgument(0);
+            LocalDateTime from = invocation.getArgument(1);
+            return ExerciseFactory.toPointsRows(table.stream()
+                    .filter(e -> userIds.contains(e.getUserId()) && !e.getStartTime().isBefore(from))
+                    .collect(Collectors.toList())).stream();
+        });
+        when(exerciseRepository.findByUsersStartedBetween(any(), any(), any())).thenAnswer(invocation -> {
+            Collection<Long> userIds = invocation.getArgument(0);
+            return startedBetween(invocation.getArgument(1), invocation.getArgument(2)).stream()
+                    .filter(e -> userIds.contains(e.getUserId()))
+                    .collect(Collectors.toList());
+        });
+        when(exerciseRepository.findUserIdsStartedBetween(any(), any())).thenAnswer(invocation ->
+                startedBetween(invocation.getArgument(0), invocation.getArgument(1)).stream()
+                        .map(Exercise::getUserId)
+                        .distinct()
+                        .collect(Collectors.toList()));
+        when(exerciseRepository.findLatestStartTime()).thenAnswer(invocation -> table.stream()
+                .map(Exercise::getStartTime)
+                .max(Comparator.naturalOrder())
+                .orElse(null));
+
+        userDailyPointsRepository = mock(UserDailyPointsRepository.class);
+        when(userDailyPointsRepository.sumByUsersSince(any(), any())).thenAnswer(invocation -> {
+            Set<Long> userIds = invocation.getArgument(0);
+            LocalDate firstDay = invocation.getArgument(1);
+            Map<Long, List<UserDailyPoints>> rowsByUser = rollup.values().stream()
+                    .filter(r -> userIds.contains(r.getUserId()) && !r.getExerciseDay().isBefore(firstDay))
+                    .collect(Collectors.groupingBy(UserDailyPoints::getUserId));
+            List<UserPointsView> views = new ArrayList<>();
+            rowsByUser.forEach((userId, rows) -> views.add(view(userId, rows)));
+            return views;
+        });
+        when(userDailyPointsRepository.saveAll(any())).thenAnswer(this::saveRows);
+        when(userDailyPointsRepository.deleteBefore(any())).thenAnswer(invocation -> {
+            LocalDate firstDay = invocation.getArgument(0);
+            int before = rollup.size();
+            rollup.values().removeIf(r -> r.getExerciseDay().isBefore(firstDay));
+            return before - rollup.size();
+        });
+        when(userDailyPointsRepository.findUserIdsByDay(any())).thenAnswer(invocation -> rollup.values().stream()
+                .filter(r -> r.getExerciseDay().equals(invocation.getArgument(0)))
+                .map(UserDailyPoints::getUserId)
+                .collect(Collectors.toList()));
+        when(userDailyPointsRepository.deleteByDayAndUsers(any(), any())).thenAnswer(invocation -> {
+            LocalDate day = invocation.getArgument(0);
+            Collection<Long> userIds = invocation.getArgument(1);
+            int before = rollup.size();
+            rollup.values().removeIf(r -> r.getExerciseDay().equals(day) && userIds.contains(r.getUserId()));
+            return before - rollup.size();
+        });
+
+        scan = ServiceFactory.scanRankingAggregator(exerciseRepository);
+        rollupAggregator = new RollupRankingAggregator(userDailyPointsRepository);
+        dailyPointsRollup = new DailyPointsRollup(exerciseRepository, userDailyPointsRepository, new UserLockStripes(4),
+                mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    public void shouldAggregateLikeTheScanOfTheWindow() {
+        for (int i = 0; i < 200; i++) {
+            table.add(randomExercise(nextId++, 1L + random.nextInt(USERS)));
+        }
+        dailyPointsRollup.repair();
+        assertSameRanking(allUserIds());
+
+        boolean missedEvents = false;
+        for (int i = 0; i < 2_000; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 5) {
+                Exercise inserted = randomExercise(nextId++, 1L + random.nextInt(USERS));
+                table.add(inserted);
+                dailyPointsRollup.onExercisesSaved(saved(null, inserted));
+            } else if (operation < 8) {
+                Exercise existing = table.get(random.nextInt(table.size()));
+                Exercise previous = ExerciseFactory.copyOf(existing);
+                update(existing);
+                dailyPointsRollup.onExercisesSaved(saved(previous, existing));
+            } else if (operation < 9) {
+                // a write whose event was lost, fixed by the next repair
+                update(table.get(random.nextInt(table.size())));
+                missedEvents = true;
+            } else {
+                if (missedEvents) {
+                    dailyPointsRollup.repair();
+                    missedEvents = false;
+                }
+                assertSameRanking(randomUserIds());
+            }
+        }
+        dailyPointsRollup.repair();
+        assertSameRanking(allUserIds());
+    }
+
+    @Test
+    public void shouldDropExpiredAndStaleRowsOnRepair() {
+        Exercise expired = randomExercise(nextId++, 1L);
+        expired.setStartTime(windowStart.minusDays(3));
+        table.add(expired);
+        Exercise moved = randomExercise(nextId++, 2L);
+        moved.setStartTime(windowStart.plusDays(3));
+        table.add(moved);
+        dailyPointsRollup.onExercisesSaved(new ExerciseBatchSavedEvent(List.of(new ExerciseSavedEvent(null, ExerciseFactory.copyOf(expired)),
+                new ExerciseSavedEvent(null, ExerciseFactory.copyOf(moved)))));
+        moved.setStartTime(windowStart.plusDays(5));
+
+        dailyPointsRollup.repair();
+
+        assertEquals(1, rollup.size());
+        assertFalse(rollup.containsKey(new UserDailyPointsId(1L, expired.getStartTime().toLocalDate())));
+        assertEquals(moved.getStartTime().toLocalDate(), rollup.values().iterator().next().getExerciseDay());
+        assertSameRanking(allUserIds());
+    }
+
+    @Test
+    public void shouldRefreshEachUserAndDayOncePerWrite() {
+        LocalDateTime day = windowStart.plusDays(3);
+        List<ExerciseSavedEvent> events = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Exercise inserted = randomExercise(nextId++, 1L + i % 2);
+            inserted.setStartTime(day.plusHours(2L * i));
+            inserted.setDuration(60L);
+            table.add(inserted);
+            events.add(new ExerciseSavedEvent(null, ExerciseFactory.copyOf(inserted)));
+        }
+
+        dailyPointsRollup.onExercisesSaved(new ExerciseBatchSavedEvent(events));
+
+        verify(exerciseRepository, times(1)).findByUsersStartedBetween(any(), any(), any());
+        assertEquals(2, rollup.size());
+        assertSameRanking(allUserIds());
+    }
+
+    @Test
+    public void shouldRetryTheRefreshThatFailedWithoutFailingTheWrite() {
+        Exercise inserted = randomExercise(nextId++, 1L);
+        inserted.setStartTime(windowStart.plusDays(3));
+        table.add(inserted);
+        doThrow(new IllegalStateException("rollup unavailable")).doAnswer(this::saveRows).when(userDailyPointsRepository).saveAll(any());
+
+        dailyPointsRollup.onExercisesSaved(saved(null, inserted));
+        assertTrue(rollup.isEmpty());
+
+        dailyPointsRollup.retryFailedRefreshes();
+        assertEquals(1, rollup.size());
+        assertSameRanking(allUserIds());
+
+        dailyPointsRollup.retryFailedRefreshes();
+        verify(exerciseRepository, times(2)).findByUsersStartedBetween(any(), any(), any());
+    }
+
+    private void assertSameRanking(final Set<Long> userIds) {
+        RankingFactory.assertSameRanking(scan.aggregate(new HashSet<>(userIds), windowStart).getRankedUsers(),
+                rollupAggregator.aggregate(userIds, windowStart).getRankedUsers());
+    }
+
+    private List<UserDailyPoints> saveRows(final InvocationOnMock invocation) {
+        Collection<UserDailyPoints> rows = invocation.getArgument(0);
+        rows.forEach(row -> rollup.put(new UserDailyPointsId(row.getUserId(), row.getExerciseDay()), row));
+        return new ArrayList<>(rows);
+    }
+
+    private static ExerciseBatchSavedEvent saved(final Exercise previous, final Exercise saved) {
+        return new ExerciseBatchSavedEvent(List.of(new ExerciseSavedEvent(previous, ExerciseFactory.copyOf(saved))));
+    }
+
+
+    private List<Exercise> startedBetween(final LocalDateTime from, final LocalDateTime to) {
+        return table.stream()
+                .filter(e -> !e.getStartTime().isBefore(from) && e.getStartTime().isBefore(to))
+                .map(ExerciseFactory::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    private static UserPointsView view(final Long userId, final List<UserDailyPoints> rows) {
+        double points = rows.stream().mapToDouble(UserDailyPoints::getPoints).sum();
+        LocalDateTime latestEnd = rows.stream().map(UserDailyPoints::getLatestEnd).max(Comparator.naturalOrder()).orElse(null);
+        return new UserPointsView() {
+            @Override
+            public Long getUserId() {
+                return userId;
+            }
+
+            @Override
+            public Double getPoints() {
+                return points;
+            }
+
+            @Override
+            public LocalDateTime getLatestExerciseTime() {
+                return latestEnd;
+            }
+        };
+    }
+
+    private static Set<Long> allUserIds() {
+        Set<Long> userIds = new HashSet<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            userIds.add(userId);
+        }
+        return userIds;
+    }
+
+    private Set<Long> randomUserIds() {
+        Set<Long> userIds = new HashSet<>();
+        int size = 1 + random.nextInt(USERS / 2);
+        while (userIds.size() < size) {
+            userIds.add(1L + random.nextInt(USERS));
+        }
+        return userIds;
+    }
+
+    private void update(final Exercise existing) {
+        Exercise updated = randomExercise(existing.getId(), existing.getUserId());
+        existing.setStartTime(updated.getStartTime());
+        existing.setDuration(updated.getDuration());
+        existing.setCalories(updated.getCalories());
+    }
+
+    private Exercise randomExercise(final long id, final long userId) {
+        Exercise exercise = new Exercise();
+        exercise.setId(id);
+        exercise.setUserId(userId);
+        exercise.setDescription("random");
+        exercise.setType(ExerciseType.values()[random.nextInt(ExerciseType.values().length)]);
+        exercise.setStartTime(LocalDate.now().atStartOfDay().minusDays(35).plusSeconds(random.nextInt(40 * 24 * 3600)));
+        exercise.setDuration(60L + random.nextInt(7200));
+        exercise.setCalories(random.nextBoolean() ? null : random.nextInt(100_000) / 100.0);
+        return exercise;
+    }
+}
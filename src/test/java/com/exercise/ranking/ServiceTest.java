@@ -2,24 +2,37 @@ package com.exercise.ranking;
 
 import com.exercise.ranking.dao.ExerciseRepository;
 import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseBatchResult;
 import com.exercise.ranking.model.RankingUser;
 import com.exercise.ranking.service.ExerciseService;
 import com.exercise.ranking.service.exception.ConflictException;
 import com.exercise.ranking.service.exception.NotFoundException;
+import com.exercise.ranking.service.exception.PreconditionFailedException;
 import com.exercise.ranking.service.exception.SecurityException;
 import com.exercise.ranking.testfactory.ExerciseFactory;
+import com.exercise.ranking.testfactory.ServiceFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -31,16 +44,23 @@ class ServiceTest {
     @Mock
     private ExerciseRepository exerciseRepository;
 
-    @InjectMocks
     private ExerciseService exerciseService;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void setUp() {
+        exerciseService = ServiceFactory.exerciseService(exerciseRepository, ServiceFactory.scanRankingAggregator(exerciseRepository),
+                meterRegistry);
+    }
+
 
     @Test
     public void shouldThrowConflictExceptionForOverlappingIntervals() {
 
         List<Exercise> exercises = ExerciseFactory.getExercises();
 
-        when(exerciseRepository.findByUserId(any())).thenReturn(exercises);
+        when(exerciseRepository.findLatestStartingBefore(any(), any(), any())).thenReturn(exercises);
         Exception exception = Assertions.assertThrows(ConflictException.class,
                 () -> exerciseService.insert(exercises.get(0)));
 
@@ -48,6 +68,8 @@ class ServiceTest {
         String actualMessage = exception.getMessage();
 
         assertTrue(actualMessage.contains(expectedMessage));
+        assertEquals(1.0, meterRegistry.get("exercise.conflicts").tag("operation", "insert").counter().count());
+        assertEquals(1L, meterRegistry.get("exercise.insert").timer().count());
     }
 
 
@@ -65,6 +87,7 @@ class ServiceTest {
         String actualMessage = exception.getMessage();
 
         assertTrue(actualMessage.contains(expectedMessage));
+        assertEquals(1.0, meterRegistry.get("exercise.not-found").counter().count());
     }
 
 
@@ -102,12 +125,39 @@ class ServiceTest {
     }
 
 
+    @Test
+    public void shouldThrowPreconditionFailedExceptionIfVersionDoesNotMatchWithUpdateRequest() {
+
+        List<Exercise> exercises = ExerciseFactory.getExercises();
+        exercises.get(0).setVersion(1L);
+
+        when(exerciseRepository.findById(any())).thenReturn(Optional.of(exercises.get(0)));
+        Assertions.assertThrows(PreconditionFailedException.class,
+                () -> exerciseService.update(1l, exercises.get(0), 0L));
+        verify(exerciseRepository, never()).save(any());
+    }
+
+    @Test
+    public void shouldRetryUpdateOnOptimisticLockingFailureUpToThreeTimes() {
+
+        List<Exercise> exercises = ExerciseFactory.getExercises();
+        exercises.get(0).setId(1L);
+        exercises.get(0).setVersion(0L);
+
+        when(exerciseRepository.findById(any())).thenReturn(Optional.of(exercises.get(0)));
+        when(exerciseRepository.save(any())).thenThrow(new ObjectOptimisticLockingFailureException(Exercise.class, 1L));
+        Assertions.assertThrows(PreconditionFailedException.class,
+                () -> exerciseService.update(1l, exercises.get(0)));
+        verify(exerciseRepository, times(3)).save(any());
+    }
+
+
 
     @Test
     public void shouldReturnRankedUsers() {
 
         List<Exercise> exercises = ExerciseFactory.getExercises();
-        when(exerciseRepository.findByUsersAndStartTime(any(), any())).thenReturn(exercises.subList(0,2));
+        when(exerciseRepository.streamPointsByUsersAndStartTime(any(), any())).thenAnswer(invocation -> ExerciseFactory.toPointsRows(exercises.subList(0,2)).stream());
         when(exerciseRepository.findByDistinctUsersAndLatestExerciseTime(any())).thenReturn(Arrays.asList(exercises.get(2)));
 
         Set<Long> inputIds = Stream.of(1l,2l,3l)
@@ -127,4 +177,113 @@ class ServiceTest {
         assertEquals(3, rankList.get(2).getUserId());
     }
 
+
+    @Test
+    public void shouldReturnTopRankedUsersWithoutLookingUpIdleUsers() {
+
+        List<Exercise> exercises = ExerciseFactory.getExercises();
+        when(exerciseRepository.streamPointsByUsersAndStartTime(any(), any())).thenAnswer(invocation -> ExerciseFactory.toPointsRows(exercises.subList(0,2)).stream());
+
+        Set<Long> inputIds = Stream.of(1l,2l,3l)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        List<RankingUser> rankList = exerciseService.ranking(inputIds, 0, 1);
+
+        assertEquals(1, rankList.size());
+        assertEquals(2, rankList.get(0).getUserId());
+        verify(exerciseRepository, never()).findByDistinctUsersAndLatestExerciseTime(any());
+    }
+
+
+    @Test
+    public void shouldPageIdleUsersByTheirLatestExercise() {
+
+        List<Exercise> exercises = ExerciseFactory.getExercises();
+        when(exerciseRepository.streamPointsByUsersAndStartTime(any(), any())).thenAnswer(invocation -> ExerciseFactory.toPointsRows(exercises.subList(1,2)).stream());
+        Exercise oldest = copyOf(exercises.get(0), LocalDateTime.parse("2021-01-01T10:00:00"));
+        oldest.setUserId(3L);
+        Exercise latest = copyOf(exercises.get(0), LocalDateTime.parse("2021-03-01T10:00:00"));
+        latest.setUserId(4L);
+        Exercise middle = copyOf(exercises.get(0), LocalDateTime.parse("2021-02-01T10:00:00"));
+        middle.setUserId(5L);
+        when(exerciseRepository.findByDistinctUsersAndLatestExerciseTime(any())).thenReturn(Arrays.asList(oldest, latest, middle));
+
+        Set<Long> inputIds = Stream.of(2l,3l,4l,5l)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        List<RankingUser> rankList = exerciseService.ranking(inputIds, 1, 2);
+
+        assertEquals(2, rankList.size());
+        assertEquals(4, rankList.get(0).getUserId());
+        assertEquals(5, rankList.get(1).getUserId());
+    }
+
+
+    @Test
+    public void shouldInsertOnlyBatchExercisesWithoutConflicts() {
+
+        List<Exercise> exercises = ExerciseFactory.getExercises();
+        Exercise existing = exercises.get(0);
+        existing.setId(1L);
+
+        Exercise overlappingExisting = copyOf(existing, existing.getStartTime().plusSeconds(30));
+        Exercise first = copyOf(existing, existing.getStartTime().plusSeconds(60));
+        Exercise overlappingFirst = copyOf(existing, existing.getStartTime().plusSeconds(90));
+        Exercise second = copyOf(existing, existing.getStartTime().plusSeconds(120));
+
+        when(exerciseRepository.findLatestStartingBefore(any(), any(), any())).thenReturn(Collections.singletonList(existing));
+        when(exerciseRepository.findByUserIdAndStartTimeGreaterThanEqualAndStartTimeLessThan(any(), any(), any())).thenReturn(Collections.emptyList());
+
+        List<ExerciseBatchResult> results = exerciseService.insertAll(Arrays.asList(overlappingExisting, first, overlappingFirst, second));
+
+        assertEquals(ExerciseBatchResult.Status.CONFLICT, results.get(0).getStatus());
+        assertEquals(ExerciseBatchResult.Status.CREATED, results.get(1).getStatus());
+        assertEquals(ExerciseBatchResult.Status.CONFLICT, results.get(2).getStatus());
+        assertEquals(ExerciseBatchResult.Status.CREATED, results.get(3).getStatus());
+        verify(exerciseRepository).saveAll(Arrays.asList(first, second));
+    }
+
+    @Test
+    public void shouldSerializeConcurrentInsertsOfTheSameUser() throws Exception {
+
+        List<Exercise> saved = Collections.synchronizedList(new ArrayList<>());
+        when(exerciseRepository.findLatestStartingBefore(any(), any(), any())).thenAnswer(invocation -> new ArrayList<>(saved));
+        when(exerciseRepository.save(any())).thenAnswer(invocation -> {
+            // widens the window between the check and the save
+            Thread.sleep(20);
+            saved.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        Exercise exercise = ExerciseFactory.getExercises().get(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Exercise>> inserts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            inserts.add(executor.submit(() -> exerciseService.insert(copyOf(exercise, exercise.getStartTime()))));
+        }
+        int conflicts = 0;
+        for (Future<Exercise> insert : inserts) {
+            try {
+                insert.get();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof ConflictException);
+                conflicts++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(1, saved.size());
+        assertEquals(7, conflicts);
+    }
+
+    private static Exercise copyOf(Exercise exercise, LocalDateTime startTime) {
+        Exercise copy = new Exercise();
+        copy.setUserId(exercise.getUserId());
+        copy.setDescription(exercise.getDescription());
+        copy.setType(exercise.getType());
+        copy.setStartTime(startTime);
+        copy.setDuration(exercise.getDuration());
+        return copy;
+    }
+
 }
@@ -0,0 +1,88 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.service.ranking.UserPointsAccumulator;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Equivalence of the open addressing table with a {@link HashMap} filled in the same order, from an
+ * undersized table that has to grow and with users that collide on the same slots.
+ */
+class UserPointsAccumulatorTest {
+
+    private static final LocalDateTime WINDOW_START = LocalDateTime.parse("2021-05-27T00:00:00");
+
+    private final Random random = new Random(20210708L);
+
+    @Test
+    public void shouldSumLikeAHashMapWhenTheTableGrows() {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            userIds.add(random.nextLong());
+        }
+        userIds.add(0L);
+        userIds.add(-1L);
+        userIds.add(Long.MIN_VALUE);
+        userIds.add(Long.MAX_VALUE);
+
+        assertSameAsHashMap(new UserPointsAccumulator(1), userIds, 50_000);
+    }
+
+    @Test
+    public void shouldKeepTheUsersOfTheSameSlotApart() {
+        // users of the same slot of the initial table of 16 slots, that probe past each other and
+        // are spread again by every growth
+        List<Long> userIds = new ArrayList<>();
+        for (long userId = 1; userIds.size() < 200; userId++) {
+            if ((hash(userId) & 15) == 5) {
+                userIds.add(userId);
+            }
+        }
+
+        assertSameAsHashMap(new UserPointsAccumulator(1), userIds, 5_000);
+    }
+
+    private void assertSameAsHashMap(final UserPointsAccumulator accumulator, final List<Long> userIds, final int exercises) {
+        Map<Long, Double> pointsByUser = new HashMap<>();
+        Map<Long, LocalDateTime> latestEndByUser = new HashMap<>();
+        for (int i = 0; i < exercises; i++) {
+            long userId = userIds.get(random.nextInt(userIds.size()));
+            double points = random.nextInt(100_000) / 100.0 + random.nextDouble();
+            LocalDateTime startTime = WINDOW_START.plusSeconds(random.nextInt(28 * 24 * 3600)).withNano(random.nextInt(1_000_000_000));
+            long duration = random.nextInt(7200);
+
+            accumulator.add(userId, points, startTime, duration);
+            pointsByUser.merge(userId, points, Double::sum);
+            latestEndByUser.merge(userId, startTime.plusSeconds(duration), (a, b) -> a.isBefore(b) ? b : a);
+        }
+
+        List<RankingUser> rankingUsers = accumulator.toRankingUsers();
+        assertEquals(pointsByUser.size(), accumulator.size());
+        assertEquals(pointsByUser.size(), rankingUsers.size());
+        for (RankingUser rankingUser : rankingUsers) {
+            Double points = pointsByUser.remove(rankingUser.getUserId());
+            assertNotNull(points, "unexpected or duplicated user " + rankingUser.getUserId());
+            // added in the same order, so the sums are equal down to the last bit
+            assertEquals(Double.doubleToLongBits(points), Double.doubleToLongBits(rankingUser.getPoints()));
+            assertEquals(latestEndByUser.get(rankingUser.getUserId()), rankingUser.getLatestExerciseTime());
+        }
+    }
+
+    /**
+     * The hash of the accumulator, to pick users of the same slot.
+     */
+    private static int hash(final long userId) {
+        long h = userId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
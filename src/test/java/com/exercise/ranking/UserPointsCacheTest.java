@@ -0,0 +1,126 @@
+package com.exercise.ranking;
+
+import com.exercise.ranking.model.Exercise;
+import com.exercise.ranking.model.ExerciseType;
+import com.exercise.ranking.model.RankingUser;
+import com.exercise.ranking.model.RankingWindow;
+import com.exercise.ranking.service.cache.UserPointsCache;
+import com.exercise.ranking.service.event.ExerciseSavedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserPointsCacheTest {
+
+    private final UserPointsCache userPointsCache = new UserPointsCache(true, 1000, 600, new SimpleMeterRegistry());
+
+    private final LocalDateTime windowStart = LocalDate.now().atStartOfDay().minusDays(28);
+
+    private final List<Set<Long>> loads = new ArrayList<>();
+
+    @Test
+    public void shouldLoadOnlyMissingUsersAndApplyInserts() {
+        aggregate(1L, 2L, 3L);
+        RankingWindow rankingWindow = aggregate(1L, 2L, 3L, 4L);
+
+        assertEquals(Arrays.asList(set(1L, 2L, 3L), set(4L)), loads);
+        assertEquals(1, rankingWindow.getRankedUsers().size());
+        assertEquals(10.0, rankingWindow.getRankedUsers().iterator().next().getPoints());
+        assertEquals(1, rankingWindow.getIdleUsers().size());
+
+        userPointsCache.writeStarted(set(2L));
+        userPointsCache.onExerciseSaved(new ExerciseSavedEvent(null, exercise(2L, windowStart.plusDays(1), 5.0)));
+        userPointsCache.writeFinished(set(2L));
+        rankingWindow = aggregate(1L, 2L);
+
+        assertEquals(2, loads.size());
+        assertEquals(2, rankingWindow.getRankedUsers().size());
+        assertTrue(rankingWindow.getIdleUsers().isEmpty());
+    }
+
+    @Test
+    public void shouldEvictUpdatedUsersAndNotCacheLoadsDuringWrites() {
+        aggregate(1L, 2L);
+        Exercise updated = exercise(1L, windowStart.plusDays(2), 3.0);
+        userPointsCache.onExerciseSaved(new ExerciseSavedEvent(exercise(1L, windowStart.plusDays(1), 10.0), updated));
+        userPointsCache.writeStarted(set(1L));
+        aggregate(1L, 2L);
+        aggregate(1L, 2L);
+        userPointsCache.writeFinished(set(1L));
+        aggregate(1L, 2L);
+        aggregate(1L, 2L);
+
+        assertEquals(Arrays.asList(set(1L, 2L), set(1L), set(1L), set(1L)), loads);
+    }
+
+    @Test
+    public void shouldCacheLoadsDuringWritesOfOtherUsers() {
+        // user 3 is not on the stripe of user 1 nor of user 2
+        userPointsCache.writeStarted(set(3L));
+        aggregate(1L, 2L);
+        aggregate(1L, 2L);
+        userPointsCache.writeFinished(set(3L));
+
+        assertEquals(Collections.singletonList(set(1L, 2L)), loads);
+    }
+
+    @Test
+    public void shouldApplyInsertsUpToTheOrderOfTheAdditions() {
+        userPointsCache.aggregate(set(5L), windowStart, misses ->
+                new RankingWindow(Collections.singletonList(new RankingUser(5L, 0.1, windowStart.plusDays(1))), new ArrayList<>()));
+        for (double calories : new double[] {0.2, 0.3}) {
+            userPointsCache.writeStarted(set(5L));
+            userPointsCache.onExerciseSaved(new ExerciseSavedEvent(null, exercise(5L, windowStart.plusDays(2), calories)));
+            userPointsCache.writeFinished(set(5L));
+        }
+
+        double cached = userPointsCache.aggregate(set(5L), windowStart, misses -> {
+            throw new AssertionError("user 5 is cached");
+        }).getRankedUsers().iterator().next().getPoints();
+        // the query could return the exercises in any order
+        double loaded = 0.3 + 0.2 + 0.1;
+        assertEquals(loaded, cached, 1e-9 * loaded);
+    }
+
+    private RankingWindow aggregate(final Long... userIds) {
+        return userPointsCache.aggregate(set(userIds), windowStart, misses -> {
+            loads.add(new HashSet<>(misses));
+            List<RankingUser> rankedUsers = new ArrayList<>();
+            List<RankingUser> idleUsers = new ArrayList<>();
+            if (misses.contains(1L)) {
+                rankedUsers.add(new RankingUser(1L, 10.0, windowStart.plusDays(1)));
+            }
+            if (misses.contains(2L)) {
+                idleUsers.add(new RankingUser(2L, 0.0, windowStart.minusDays(3)));
+            }
+            return new RankingWindow(rankedUsers, idleUsers);
+        });
+    }
+
+    private static Set<Long> set(final Long... userIds) {
+        Set<Long> set = new HashSet<>();
+        Collections.addAll(set, userIds);
+        return set;
+    }
+
+    private static Exercise exercise(final long userId, final LocalDateTime startTime, final double calories) {
+        Exercise exercise = new Exercise();
+        exercise.setUserId(userId);
+        exercise.setType(ExerciseType.RUNNING);
+        exercise.setStartTime(startTime);
+        exercise.setDuration(600L);
+        exercise.setCalories(calories);
+        return exercise;
+    }
+}
@@ -1,5 +1,6 @@
 package com.exercise.ranking.testfactory;
 
+import com.exercise.ranking.dao.ExercisePointsRow;
 import com.exercise.ranking.facade.dto.ExerciseDTO;
 import com.exercise.ranking.model.Exercise;
 import com.exercise.ranking.model.ExerciseType;
@@ -8,6 +9,7 @@ import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class ExerciseFactory {
 
@@ -79,4 +81,26 @@ public class ExerciseFactory {
 
     }
 
+
+    public static List<ExercisePointsRow> toPointsRows(List<Exercise> exercises) {
+        return exercises.stream()
+                .map(e -> new ExercisePointsRow(e.getUserId(), e.getType(), e.getStartTime(), e.getDuration(), e.getCalories()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return a detached copy of the exercise, as read again from the database.
+     */
+    public static Exercise copyOf(final Exercise exercise) {
+        Exercise copy = new Exercise();
+        copy.setId(exercise.getId());
+        copy.setUserId(exercise.getUserId());
+        copy.setDescription(exercise.getDescription());
+        copy.setType(exercise.getType());
+        copy.setStartTime(exercise.getStartTime());
+        copy.setDuration(exercise.getDuration());
+        copy.setCalories(exercise.getCalories());
+        return copy;
+    }
+
 }
@@ -0,0 +1,140 @@
+package com.exercise.ranking.testfactory;
+
+import com.exercise.ranking.Application;
+import com.exercise.ranking.model.ExerciseType;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the load tests over HTTP share: the application they boot on a random port, the requests
+ * with the credentials of the admin, the JSON of the exercises and the latency histograms.
+ */
+public final class LoadGenerator {
+
+    public static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final String AUTHORIZATION = "Basic "
+            + Base64.getEncoder().encodeToString("admin:adminPassword".getBytes(StandardCharsets.UTF_8));
+
+    private static final DateTimeFormatter START_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSx");
+
+    private LoadGenerator() {
+    }
+
+    /**
+     * Boots the application on a random port, without the SQL log and JMX.
+     *
+     * @param profile    the Spring profiles of the application.
+     * @param properties the other properties, as {@code name=value}.
+     * @return the running application.
+     */
+    public static ConfigurableApplicationContext boot(final String profile, final String... properties) {
+        List<String> all = new ArrayList<>(List.of("server.port=0", "spring.jpa.show-sql=false", "spring.jmx.enabled=false"));
+        all.addAll(List.of(properties));
+        return new SpringApplicationBuilder(Application.class)
+                .profiles(profile)
+                .properties(all.toArray(new String[0]))
+                .run();
+    }
+
+    public static URI baseUri(final ConfigurableApplicationContext context) {
+        return URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+    }
+
+    public static HttpClient httpClient() {
+        return HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+    }
+
+    /**
+     * @param uri the URI of the request.
+     * @return a request to the URI as the admin, that times out after 30 seconds.
+     */
+    public static HttpRequest.Builder request(final URI uri) {
+        return HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).header("Authorization", AUTHORIZATION);
+    }
+
+    /**
+     * @return the JSON of an exercise of 250 calories, for the exercise endpoints.
+     */
+    public static String exerciseJson(final long userId, final String description, final ExerciseType type,
+            final LocalDateTime startTime, final long duration) {
+        return "{\"userId\":" + userId + ",\"description\":\"" + description + "\",\"type\":\"" + type + "\",\"startTime\":\""
+                + START_TIME_FORMAT.format(startTime.atOffset(ZoneOffset.UTC)) + "\",\"duration\":" + duration + ",\"calories\":250.0}";
+    }
+
+    /**
+     * The latencies of the requests of an endpoint, with the failed requests, errors and responses
+     * with a status of 300 or more, in a histogram of their own so that fast failures do not hide
+     * in the latency of the successes.
+     */
+    public static final class Latencies {
+
+        private final Histogram succeeded = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+
+        private final Histogram failed = new ConcurrentHistogram(MAX_LATENCY_NANOS, 3);
+
+        /**
+         * Records a completed request.
+         *
+         * @param response the response, {@code null} if the request failed.
+         * @param ex       the failure of the request, {@code null} if there is a response.
+         * @param nanos    the latency of the request.
+         */
+        public void record(final HttpResponse<?> response, final Throwable ex, final long nanos) {
+            Histogram histogram = ex != null || response.statusCode() >= 300 ? failed : succeeded;
+            histogram.recordValue(Math.min(nanos, MAX_LATENCY_NANOS));
+        }
+
+        public void reset() {
+            succeeded.reset();
+            failed.reset();
+        }
+
+        public Histogram getSucceeded() {
+            return succeeded;
+        }
+
+        public Histogram getFailed() {
+            return failed;
+        }
+
+        /**
+         * @param seconds the duration of the measurement.
+         * @return the throughput and the percentiles of the successes, and the count and percentiles
+         * of the failures.
+         */
+        public String summary(final double seconds) {
+            return String.format("throughput=%.1f req/s p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms failed=%d failed-p50=%.2fms failed-p99=%.2fms",
+                    succeeded.getTotalCount() / seconds, millis(succeeded, 50), millis(succeeded, 99), millis(succeeded, 99.9),
+                    succeeded.getMaxValue() / 1e6, failed.getTotalCount(), millis(failed, 50), millis(failed, 99));
+        }
+
+        /**
+         * Prints the percentile distribution of the successes, in milliseconds.
+         */
+        public void print(final PrintStream out) {
+            succeeded.outputPercentileDistribution(out, 5, 1e6);
+        }
+
+        private static double millis(final Histogram histogram, final double percentile) {
+            return histogram.getTotalCount() == 0 ? Double.NaN : histogram.getValueAtPercentile(percentile) / 1e6;
+        }
+    }
+}
@@ -5,7 +5,12 @@ import com.exercise.ranking.model.RankingUser;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class RankingFactory {
 
@@ -19,4 +24,21 @@ public class RankingFactory {
 
     }
 
+    /**
+     * Asserts that the rankings have the same users with the same points and latest exercise, in any
+     * order. The points are the same up to the order of the additions.
+     */
+    public static void assertSameRanking(final Collection<RankingUser> expected, final Collection<RankingUser> actual) {
+        List<RankingUser> expectedByUser = expected.stream().sorted(Comparator.comparing(RankingUser::getUserId)).collect(Collectors.toList());
+        List<RankingUser> actualByUser = actual.stream().sorted(Comparator.comparing(RankingUser::getUserId)).collect(Collectors.toList());
+        assertEquals(expectedByUser.size(), actualByUser.size());
+        for (int i = 0; i < expectedByUser.size(); i++) {
+            RankingUser e = expectedByUser.get(i);
+            RankingUser a = actualByUser.get(i);
+            assertEquals(e.getUserId(), a.getUserId());
+            assertEquals(e.getPoints(), a.getPoints(), 1e-9 * Math.max(1.0, e.getPoints()));
+            assertEquals(e.getLatestExerciseTime(), a.getLatestExerciseTime());
+        }
+    }
+
 }
@@ -0,0 +1,81 @@
+package com.exercise.ranking.testfactory;
+
+import com.exercise.ranking.dao.ExerciseRepository;
+import com.exercise.ranking.service.ExerciseService;
+import com.exercise.ranking.service.cache.RankingCache;
+import com.exercise.ranking.service.cache.UserPointsCache;
+import com.exercise.ranking.service.index.ExerciseIntervalIndex;
+import com.exercise.ranking.service.lock.UserLockStripes;
+import com.exercise.ranking.service.metrics.ExerciseMetrics;
+import com.exercise.ranking.service.ranking.RankingAggregator;
+import com.exercise.ranking.service.ranking.ScanRankingAggregator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The services of the tests and of the benchmarks, built without the application context. The
+ * exercise services have no cache and no listener of the saved exercises, and no interval index
+ * unless one is given.
+ */
+public final class ServiceFactory {
+
+    private ServiceFactory() {
+    }
+
+    /**
+     * @return the exercise service over the sequential scan strategy.
+     */
+    public static ExerciseService exerciseService(final ExerciseRepository exerciseRepository) {
+        return exerciseService(exerciseRepository, scanRankingAggregator(exerciseRepository));
+    }
+
+    public static ExerciseService exerciseService(final ExerciseRepository exerciseRepository, final RankingAggregator rankingAggregator) {
+        return exerciseService(exerciseRepository, rankingAggregator, new SimpleMeterRegistry());
+    }
+
+    /**
+     * @param meterRegistry the registry of the metrics of the service.
+     */
+    public static ExerciseService exerciseService(final ExerciseRepository exerciseRepository, final RankingAggregator rankingAggregator,
+            final MeterRegistry meterRegistry) {
+        return exerciseService(exerciseRepository, new ExerciseIntervalIndex(exerciseRepository, false, 0), rankingAggregator,
+                new UserLockStripes(16), meterRegistry);
+    }
+
+    /**
+     * @return the exercise service over the given index and locks, shared with the asynchronous
+     * insert, and the sequential scan strategy.
+     */
+    public static ExerciseService exerciseService(final ExerciseRepository exerciseRepository, final ExerciseIntervalIndex exerciseIntervalIndex,
+            final UserLockStripes userLockStripes) {
+        return exerciseService(exerciseRepository, exerciseIntervalIndex, scanRankingAggregator(exerciseRepository), userLockStripes,
+                new SimpleMeterRegistry());
+    }
+
+    private static ExerciseService exerciseService(final ExerciseRepository exerciseRepository, final ExerciseIntervalIndex exerciseIntervalIndex,
+            final RankingAggregator rankingAggregator, final UserLockStripes userLockStripes, final MeterRegistry meterRegistry) {
+        return new ExerciseService(exerciseRepository, exerciseIntervalIndex, rankingAggregator,
+                new RankingCache(false, 0, 0, new SimpleMeterRegistry()), new UserPointsCache(false, 0, 0, new SimpleMeterRegistry()),
+                userLockStripes, event -> { }, new ExerciseMetrics(meterRegistry));
+    }
+
+    /**
+     * @return the scan strategy that always sums up the ranking on the calling thread.
+     */
+    public static ScanRankingAggregator scanRankingAggregator(final ExerciseRepository exerciseRepository) {
+        return scanRankingAggregator(exerciseRepository, Integer.MAX_VALUE, 1);
+    }
+
+    /**
+     * @param parallelThreshold the number of users from which the ranking is summed up in
+     *                          parallel, {@link Integer#MAX_VALUE} to never do it.
+     * @param partitions        the number of partitions of the parallel aggregation, 0 for the number
+     *                          of processors.
+     * @return the scan strategy, that must be {@link ScanRankingAggregator#stop() stopped} if it
+     * has a parallel threshold.
+     */
+    public static ScanRankingAggregator scanRankingAggregator(final ExerciseRepository exerciseRepository, final int parallelThreshold,
+            final int partitions) {
+        return new ScanRankingAggregator(exerciseRepository, parallelThreshold, partitions, new ExerciseMetrics(new SimpleMeterRegistry()));
+    }
+}